@@ -1,11 +1,15 @@
 package csc4500.core.environment.eightpuzzle;
 
+import java.util.Arrays;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 import csc4500.core.agent.Action;
+import csc4500.core.search.framework.problem.ActionRelations;
 import csc4500.core.search.framework.problem.ActionsFunction;
 import csc4500.core.search.framework.problem.ResultFunction;
+import csc4500.core.search.framework.problem.StateCodec;
 
 /**
  * @author Ravi Mohan
@@ -14,6 +18,7 @@ import csc4500.core.search.framework.problem.ResultFunction;
 public class EightPuzzleFunctionFactory {
 	private static ActionsFunction _actionsFunction = null;
 	private static ResultFunction _resultFunction = null;
+	private static StateCodec _stateCodec = null;
 
 	public static ActionsFunction getActionsFunction() {
 		if (null == _actionsFunction) {
@@ -29,7 +34,18 @@ public class EightPuzzleFunctionFactory {
 		return _resultFunction;
 	}
 
-	private static class EPActionsFunction implements ActionsFunction {
+	public static StateCodec getStateCodec() {
+		if (null == _stateCodec) {
+			_stateCodec = new EPStateCodec();
+		}
+		return _stateCodec;
+	}
+
+	/**
+	 * Declares UP/DOWN and LEFT/RIGHT as inverse moves of the gap. Gap moves
+	 * never commute.
+	 */
+	private static class EPActionsFunction implements ActionsFunction, ActionRelations {
 		public Set<Action> actions(Object state) {
 			EightPuzzleBoard board = (EightPuzzleBoard) state;
 
@@ -50,6 +66,22 @@ public class EightPuzzleFunctionFactory {
 
 			return actions;
 		}
+
+		public List<Action> getAllActions() {
+			return Arrays.asList(EightPuzzleBoard.UP, EightPuzzleBoard.DOWN, EightPuzzleBoard.LEFT,
+					EightPuzzleBoard.RIGHT);
+		}
+
+		public boolean isInverse(Action first, Action second) {
+			return EightPuzzleBoard.UP.equals(first) && EightPuzzleBoard.DOWN.equals(second)
+					|| EightPuzzleBoard.DOWN.equals(first) && EightPuzzleBoard.UP.equals(second)
+					|| EightPuzzleBoard.LEFT.equals(first) && EightPuzzleBoard.RIGHT.equals(second)
+					|| EightPuzzleBoard.RIGHT.equals(first) && EightPuzzleBoard.LEFT.equals(second);
+		}
+
+		public boolean commute(Action first, Action second) {
+			return false;
+		}
 	}
 
 	private static class EPResultFunction implements ResultFunction {
@@ -83,4 +115,27 @@ public class EightPuzzleFunctionFactory {
 			return s;
 		}
 	}
+
+	/**
+	 * Packs the nine tile values of a board into 4-bit fields of a long value
+	 * (tile at position 0 in the lowest bits).
+	 */
+	private static class EPStateCodec implements StateCodec {
+		public long encode(Object state) {
+			int[] tiles = ((EightPuzzleBoard) state).getState();
+			long code = 0;
+			for (int i = tiles.length - 1; i >= 0; i--)
+				code = (code << 4) | tiles[i];
+			return code;
+		}
+
+		public Object decode(long code) {
+			int[] tiles = new int[9];
+			for (int i = 0; i < tiles.length; i++) {
+				tiles[i] = (int) (code & 0xF);
+				code >>>= 4;
+			}
+			return new EightPuzzleBoard(tiles);
+		}
+	}
 }
\ No newline at end of file
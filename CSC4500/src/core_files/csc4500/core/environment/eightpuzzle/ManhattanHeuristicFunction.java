@@ -1,13 +1,23 @@
 package csc4500.core.environment.eightpuzzle;
 
-import csc4500.core.search.framework.evalfunc.HeuristicFunction;
+import csc4500.core.search.framework.evalfunc.BatchHeuristicFunction;
 import csc4500.core.util.datastructure.XYLocation;
 
 /**
  * @author Ravi Mohan
  * 
  */
-public class ManhattanHeuristicFunction implements HeuristicFunction {
+public class ManhattanHeuristicFunction implements BatchHeuristicFunction {
+
+	// distance of tile t at board position p from its goal position is stored
+	// at index t * 9 + p (zero for the gap)
+	private static final int[] DISTANCES = new int[81];
+
+	static {
+		for (int t = 1; t < 9; t++)
+			for (int p = 0; p < 9; p++)
+				DISTANCES[t * 9 + p] = Math.abs(p / 3 - t / 3) + Math.abs(p % 3 - t % 3);
+	}
 
 	public double h(Object state) {
 		EightPuzzleBoard board = (EightPuzzleBoard) state;
@@ -20,6 +30,21 @@ public class ManhattanHeuristicFunction implements HeuristicFunction {
 
 	}
 
+	/**
+	 * Evaluates a batch of boards. Distances are looked up in a table indexed
+	 * by tile and position, so the loop neither allocates locations nor
+	 * branches on tile values.
+	 */
+	public void h(Object[] states, int count, double[] results) {
+		for (int i = 0; i < count; i++) {
+			int[] tiles = ((EightPuzzleBoard) states[i]).getState();
+			int sum = 0;
+			for (int p = 0; p < 9; p++)
+				sum += DISTANCES[tiles[p] * 9 + p];
+			results[i] = sum;
+		}
+	}
+
 	public int evaluateManhattanDistanceOf(int i, XYLocation loc) {
 		int retVal = -1;
 		int xpos = loc.getXCoOrdinate();
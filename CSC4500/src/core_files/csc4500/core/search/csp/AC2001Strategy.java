@@ -0,0 +1,301 @@
+package csc4500.core.search.csp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import csc4500.core.search.framework.Metrics;
+import csc4500.core.util.CancelableThread;
+
+/**
+ * Arc consistency for binary constraints in the style of AC-2001/AC-3.1
+ * (Bessiere, Regin, Yap, Zhang 2005). In contrast to {@link AC3Strategy}, the
+ * queue contains arcs instead of variables, and each arc is queued at most once
+ * (membership flags). For every arc (Xi, Xj) and every value x of Di, the last
+ * support found in Dj is remembered. If it is still in Dj, REVISE does not need
+ * any constraint check for x. Otherwise, the search for a new support resumes
+ * behind the old one. Since domains grow again on backtracking, the search
+ * wraps around instead of assuming that the values before the old support are
+ * gone (as the original algorithm does), so the supports need not be restored.
+ * Each support found for (x, y) is also recorded for (y, x) on the reverse arc.
+ * For constraints with compiled relation (see
+ * {@link CSP#getRelation(Constraint)}), supports are searched word by word, and
+ * each search counts as one constraint check.
+ *
+ * <br>
+ * The arc structures are built once per constraint network and shared by
+ * copies of the CSP. The strategy can be used for preprocessing and (with
+ * {@link #reduceDomains(Variable, Object, CSP)}) for maintaining arc
+ * consistency during backtracking search. Non-binary constraints are ignored.
+ */
+public class AC2001Strategy {
+	public static final String METRIC_CONSTRAINT_CHECKS = "constraintChecks";
+	public static final String METRIC_REVISIONS = "revisions";
+
+	private long constraintChecks;
+	private long revisions;
+
+	// arc structures of the last constraint network
+	private List<Constraint> constraints;
+	private int numOfConstraints;
+	private int numOfVars;
+	private Constraint[] arcConstraints;
+	// the arc revises the domain of arcVars against the domain of arcOthers
+	private int[] arcVars;
+	private int[] arcOthers;
+	// index of the reverse arc is arc ^ 1
+	private int[][] arcsTo; // by variable index: arcs whose other variable it is
+	private int[][] supports; // by arc and value index: last support or -1
+
+	// arc queue (ring buffer) with membership flags
+	private int[] queue;
+	private int head;
+	private int tail;
+	private int queueSize;
+	private boolean[] queued;
+
+	private Assignment checkAssignment;
+	private CSP checkCSP;
+
+	/**
+	 * Makes a CSP consisting of binary constraints arc-consistent.
+	 *
+	 * @return An object which indicates success/failure and contains data to
+	 *         undo the operation.
+	 */
+	public DomainRestoreInfo reduceDomains(CSP csp) {
+		DomainRestoreInfo result = new DomainRestoreInfo(csp);
+		init(csp);
+		for (int arc = 0; arc < arcVars.length; arc++)
+			enqueue(arc);
+		if (!propagate(csp))
+			result.setEmptyDomainFound(true);
+		return result.compactify();
+	}
+
+	/**
+	 * Reduces the domain of the specified variable to the specified value and
+	 * reestablishes arc-consistency. It is assumed that the provided CSP is
+	 * arc-consistent before the call.
+	 *
+	 * @return An object which indicates success/failure and contains data to
+	 *         undo the operation.
+	 */
+	public DomainRestoreInfo reduceDomains(Variable var, Object value, CSP csp) {
+		DomainRestoreInfo result = new DomainRestoreInfo(csp);
+		init(csp);
+		int varIndex = csp.indexOf(var);
+		int valueIndex = csp.getValueIndex(varIndex, value);
+		if (valueIndex != -1 && csp.containsValueIndex(varIndex, valueIndex)) {
+			if (csp.getDomainSize(varIndex) > 1) {
+				csp.reduceDomain(varIndex, valueIndex);
+				for (int arc : arcsTo[varIndex])
+					enqueue(arc);
+				if (!propagate(csp))
+					result.setEmptyDomainFound(true);
+			}
+		} else {
+			result.setEmptyDomainFound(true);
+		}
+		return result.compactify();
+	}
+
+	/**
+	 * Returns the number of constraint checks and arc revisions since the last
+	 * counter reset.
+	 */
+	public Metrics getMetrics() {
+		Metrics result = new Metrics();
+		result.set(METRIC_CONSTRAINT_CHECKS, constraintChecks);
+		result.set(METRIC_REVISIONS, revisions);
+		return result;
+	}
+
+	public long getNumOfConstraintChecks() {
+		return constraintChecks;
+	}
+
+	public void resetCounters() {
+		constraintChecks = 0;
+		revisions = 0;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/** Builds the arc structures if the constraint network has changed. */
+	private void init(CSP csp) {
+		if (checkCSP != csp) {
+			checkCSP = csp;
+			checkAssignment = new Assignment(csp);
+		}
+		int n = csp.getVariables().size();
+		if (constraints == csp.getConstraints() && numOfConstraints == constraints.size() && numOfVars == n)
+			return;
+		constraints = csp.getConstraints();
+		numOfConstraints = constraints.size();
+		numOfVars = n;
+		List<Constraint> binary = new ArrayList<Constraint>();
+		for (Constraint constraint : constraints)
+			if (constraint.getScope().size() == 2)
+				binary.add(constraint);
+		int numOfArcs = 2 * binary.size();
+		arcConstraints = new Constraint[numOfArcs];
+		arcVars = new int[numOfArcs];
+		arcOthers = new int[numOfArcs];
+		supports = new int[numOfArcs][];
+		int[] counts = new int[n];
+		for (int c = 0; c < binary.size(); c++) {
+			List<Variable> scope = binary.get(c).getScope();
+			int x = csp.indexOf(scope.get(0));
+			int y = csp.indexOf(scope.get(1));
+			for (int dir = 0; dir < 2; dir++) {
+				int arc = 2 * c + dir;
+				arcConstraints[arc] = binary.get(c);
+				arcVars[arc] = dir == 0 ? x : y;
+				arcOthers[arc] = dir == 0 ? y : x;
+				supports[arc] = new int[csp.getNumOfValues(arcVars[arc])];
+				Arrays.fill(supports[arc], -1);
+				counts[arcOthers[arc]]++;
+			}
+		}
+		arcsTo = new int[n][];
+		for (int i = 0; i < n; i++)
+			arcsTo[i] = new int[counts[i]];
+		for (int arc = 0; arc < numOfArcs; arc++) {
+			int j = arcOthers[arc];
+			arcsTo[j][--counts[j]] = arc;
+		}
+		queue = new int[Math.max(numOfArcs, 1)];
+		queued = new boolean[numOfArcs];
+		head = tail = queueSize = 0;
+	}
+
+	private void enqueue(int arc) {
+		if (!queued[arc]) {
+			queued[arc] = true;
+			queue[tail] = arc;
+			tail = (tail + 1) % queue.length;
+			queueSize++;
+		}
+	}
+
+	/**
+	 * Processes the queue. Returns false if a domain has become empty or the
+	 * current thread has been canceled (the queue is cleared then).
+	 */
+	private boolean propagate(CSP csp) {
+		while (queueSize > 0) {
+			int arc = queue[head];
+			head = (head + 1) % queue.length;
+			queueSize--;
+			queued[arc] = false;
+			if (CancelableThread.currIsCanceled()) {
+				clearQueue();
+				return false;
+			}
+			if (revise(arc, csp)) {
+				int i = arcVars[arc];
+				if (csp.getDomainSize(i) == 0) {
+					clearQueue();
+					return false;
+				}
+				int reverse = arc ^ 1;
+				for (int next : arcsTo[i])
+					if (next != reverse)
+						enqueue(next);
+			}
+		}
+		return true;
+	}
+
+	private void clearQueue() {
+		while (queueSize > 0) {
+			queued[queue[head]] = false;
+			head = (head + 1) % queue.length;
+			queueSize--;
+		}
+	}
+
+	/**
+	 * Removes the values of Xi without support in Dj. Returns true if the
+	 * domain of Xi has been changed.
+	 */
+	private boolean revise(int arc, CSP csp) {
+		revisions++;
+		boolean revised = false;
+		int i = arcVars[arc];
+		int j = arcOthers[arc];
+		int[] last = getSupports(arc, csp);
+		int[] reverseLast = getSupports(arc ^ 1, csp);
+		Constraint constraint = arcConstraints[arc];
+		BinaryRelation relation = csp.getRelation(constraint);
+		for (int vi = csp.getFirstValueIndex(i); vi != -1; vi = csp.getNextValueIndex(i, vi + 1)) {
+			int support = last[vi];
+			if (support != -1 && csp.containsValueIndex(j, support))
+				continue;
+			int found = relation != null ? findSupport(relation, i, vi, support, csp)
+					: findSupport(constraint, i, vi, j, support, csp);
+			if (found != -1) {
+				last[vi] = found;
+				reverseLast[found] = vi;
+			} else {
+				csp.removeValueIndex(i, vi);
+				revised = true;
+			}
+		}
+		return revised;
+	}
+
+	/**
+	 * Searches Dj for a support of value vi, starting behind the last support
+	 * and wrapping around. Returns the value index or -1.
+	 */
+	private int findSupport(Constraint constraint, int i, int vi, int j, int last, CSP csp) {
+		int start = last == -1 ? 0 : last + 1;
+		for (int vj = csp.getNextValueIndex(j, start); vj != -1; vj = csp.getNextValueIndex(j, vj + 1))
+			if (check(constraint, i, vi, j, vj))
+				return vj;
+		if (start > 0)
+			for (int vj = csp.getNextValueIndex(j, 0); vj != -1 && vj < start; vj = csp.getNextValueIndex(j, vj + 1))
+				if (check(constraint, i, vi, j, vj))
+					return vj;
+		return -1;
+	}
+
+	/** Searches a support like the other findSupport method, but on bit sets. */
+	private int findSupport(BinaryRelation relation, int i, int vi, int last, CSP csp) {
+		constraintChecks++;
+		int start = last == -1 ? 0 : last + 1;
+		int result = relation.nextSupport(i, vi, start, csp);
+		if (result == -1 && start > 0) {
+			result = relation.nextSupport(i, vi, 0, csp);
+			if (result >= start)
+				result = -1;
+		}
+		return result;
+	}
+
+	/** Returns the supports of the arc, reset if the value indexes changed. */
+	private int[] getSupports(int arc, CSP csp) {
+		int[] result = supports[arc];
+		int n = csp.getNumOfValues(arcVars[arc]);
+		if (result.length != n) {
+			result = new int[n];
+			Arrays.fill(result, -1);
+			supports[arc] = result;
+		}
+		return result;
+	}
+
+	private boolean check(Constraint constraint, int i, int vi, int j, int vj) {
+		constraintChecks++;
+		checkAssignment.setAssignment(i, vi);
+		checkAssignment.setAssignment(j, vj);
+		boolean result = checkAssignment.satisfies(constraint);
+		checkAssignment.removeAssignment(i);
+		checkAssignment.removeAssignment(j);
+		return result;
+	}
+}
@@ -49,7 +49,7 @@ public class AC3Strategy {
 	 *         undo the operation.
 	 */
 	public DomainRestoreInfo reduceDomains(CSP csp) {
-		DomainRestoreInfo result = new DomainRestoreInfo();
+		DomainRestoreInfo result = new DomainRestoreInfo(csp);
 		Queue<Variable> queue = QueueFactory.<Variable>createLifoQueue();
 		for (Variable var : csp.getVariables())
 			queue.add(var);
@@ -66,14 +66,14 @@ public class AC3Strategy {
 	 *         undo the operation.
 	 */
 	public DomainRestoreInfo reduceDomains(Variable var, Object value, CSP csp) {
-		DomainRestoreInfo result = new DomainRestoreInfo();
-		Domain domain = csp.getDomain(var);
-		if (domain.contains(value)) {
-			if (domain.size() > 1) {
+		DomainRestoreInfo result = new DomainRestoreInfo(csp);
+		int varIndex = csp.indexOf(var);
+		int valueIndex = csp.getValueIndex(varIndex, value);
+		if (valueIndex != -1 && csp.containsValueIndex(varIndex, valueIndex)) {
+			if (csp.getDomainSize(varIndex) > 1) {
 				Queue<Variable> queue = QueueFactory.<Variable>createLifoQueue();
 				queue.add(var);
-				result.storeDomainFor(var, domain);
-				csp.setDomain(var, new Domain(new Object[] { value }));
+				csp.reduceDomain(varIndex, valueIndex);
 				reduceDomains(queue, csp, result);
 			}
 		} else {
@@ -89,8 +89,8 @@ public class AC3Strategy {
 			for (Constraint constraint : csp.getConstraints(var)) {
 				if (constraint.getScope().size() == 2) {
 					Variable neighbor = csp.getNeighbor(var, constraint);
-					if (revise(neighbor, var, constraint, csp, info)) {
-						if (csp.getDomain(neighbor).isEmpty()) {
+					if (revise(neighbor, var, constraint, csp)) {
+						if (csp.getDomainSize(neighbor) == 0) {
 							info.setEmptyDomainFound(true);
 							return;
 						}
@@ -102,22 +102,33 @@ public class AC3Strategy {
 	}
 
 	private boolean revise(Variable xi, Variable xj, Constraint constraint,
-			CSP csp, DomainRestoreInfo info) {
+			CSP csp) {
 		boolean revised = false;
+		int i = csp.indexOf(xi);
+		int j = csp.indexOf(xj);
+		BinaryRelation relation = csp.getRelation(constraint);
+		if (relation != null) {
+			for (int iv = csp.getFirstValueIndex(i); iv != -1; iv = csp.getNextValueIndex(i, iv + 1)) {
+				if (!relation.hasSupport(i, iv, csp)) {
+					csp.removeValueIndex(i, iv);
+					revised = true;
+				}
+			}
+			return revised;
+		}
 		Assignment assignment = new Assignment();
-		for (Object iValue : csp.getDomain(xi)) {
-			assignment.setAssignment(xi, iValue);
+		for (int iv = csp.getFirstValueIndex(i); iv != -1; iv = csp.getNextValueIndex(i, iv + 1)) {
+			assignment.setAssignment(xi, csp.getValue(i, iv));
 			boolean consistentExtensionFound = false;
-			for (Object jValue : csp.getDomain(xj)) {
-				assignment.setAssignment(xj, jValue);
+			for (int jv = csp.getFirstValueIndex(j); jv != -1; jv = csp.getNextValueIndex(j, jv + 1)) {
+				assignment.setAssignment(xj, csp.getValue(j, jv));
 				if (constraint.isSatisfiedWith(assignment)) {
 					consistentExtensionFound = true;
 					break;
 				}
 			}
 			if (!consistentExtensionFound) {
-				info.storeDomainFor(xi, csp.getDomain(xi));
-				csp.removeValueFromDomain(xi, iValue);
+				csp.removeValueIndex(i, iv);
 				revised = true;
 			}
 		}
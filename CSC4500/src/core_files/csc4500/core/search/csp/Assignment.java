@@ -1,70 +1,213 @@
 package csc4500.core.search.csp;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Hashtable;
 import java.util.List;
 
 /**
  * An assignment assigns values to some or all variables of a CSP.
- * 
+ *
+ * <br>
+ * Assignments are stored in arrays indexed by variable indexes. Assignments
+ * created for a CSP use the variable indexes of the CSP (see
+ * {@link CSP#indexOf(Variable)}) and additionally store the value indexes of
+ * the assigned values, which are passed to {@link IndexedConstraint}s. Value
+ * indexes refer to the value tables of the CSP at the time of assignment.
+ * Other assignments number their variables themselves. Setting and removing
+ * values and checking completeness take constant time.
+ *
  * @author Ruediger Lunde
  */
 public class Assignment {
+	/** The CSP which defines the variable indexes, or null. */
+	private final CSP csp;
+	/** Variable indexes of assignments without CSP. */
+	private Hashtable<Variable, Integer> localIndexes;
+	/** Variables by index. */
+	private Variable[] variables;
+	/** Assigned values by variable index, null if unassigned. */
+	private Object[] values;
 	/**
-	 * Contains all assigned variables. Positions reflect the the order in which
-	 * the variables were assigned to values.
+	 * Value indexes by variable index, -1 if unassigned or if the value has no
+	 * index.
 	 */
-	List<Variable> variables;
-	/** Maps variables to their assigned values. */
-	Hashtable<Variable, Object> variableToValue;
+	private int[] valueIndexes;
+	/**
+	 * Doubly linked list of variable indexes, which reflects the order in
+	 * which the variables were assigned to values.
+	 */
+	private int[] prev;
+	private int[] next;
+	private int first = -1;
+	private int last = -1;
+	private int size;
+	// number of assigned values without value index
+	private int unindexed;
 
+	/** Creates an empty assignment, which numbers its variables itself. */
 	public Assignment() {
-		variables = new ArrayList<Variable>();
-		variableToValue = new Hashtable<Variable, Object>();
+		this(null, 8);
+	}
+
+	/**
+	 * Creates an empty assignment for the variables of the specified CSP.
+	 */
+	public Assignment(CSP csp) {
+		this(csp, csp.getVariables().size());
+	}
+
+	private Assignment(CSP csp, int capacity) {
+		this.csp = csp;
+		if (csp == null)
+			localIndexes = new Hashtable<Variable, Integer>();
+		capacity = Math.max(capacity, 1);
+		variables = new Variable[capacity];
+		values = new Object[capacity];
+		valueIndexes = new int[capacity];
+		prev = new int[capacity];
+		next = new int[capacity];
+		Arrays.fill(valueIndexes, -1);
 	}
 
 	public List<Variable> getVariables() {
-		return Collections.unmodifiableList(variables);
+		List<Variable> result = new ArrayList<Variable>(size);
+		for (int i = first; i != -1; i = next[i])
+			result.add(variables[i]);
+		return Collections.unmodifiableList(result);
 	}
 
 	public Object getAssignment(Variable var) {
-		return variableToValue.get(var);
+		int i = lookup(var);
+		return i != -1 ? values[i] : null;
 	}
 
 	public void setAssignment(Variable var, Object value) {
-		if (!variableToValue.containsKey(var))
-			variables.add(var);
-		variableToValue.put(var, value);
+		int i = csp != null ? csp.indexOf(var) : localIndexOf(var);
+		ensureCapacity(i);
+		variables[i] = var;
+		set(i, value, csp != null ? csp.getValueIndex(i, value) : -1);
 	}
 
 	public void removeAssignment(Variable var) {
-		if (hasAssignmentFor(var)) {
-			variables.remove(var);
-			variableToValue.remove(var);
-		}
+		int i = lookup(var);
+		if (i != -1)
+			removeAssignment(i);
 	}
 
 	public boolean hasAssignmentFor(Variable var) {
-		return variableToValue.get(var) != null;
+		int i = lookup(var);
+		return i != -1 && values[i] != null;
+	}
+
+	///////////////////////////////////////////////////////////////////////
+	// access by index (only for assignments created for a CSP)
+
+	public CSP getCSP() {
+		return csp;
+	}
+
+	/** Returns the value of the variable with the specified index, or null. */
+	public Object getAssignment(int varIndex) {
+		return varIndex < values.length ? values[varIndex] : null;
+	}
+
+	/**
+	 * Returns the value index of the value assigned to the variable, or -1 if
+	 * the variable is unassigned.
+	 */
+	public int getValueIndex(int varIndex) {
+		return varIndex < valueIndexes.length ? valueIndexes[varIndex] : -1;
+	}
+
+	/** Assigns the value with the specified index to the variable. */
+	public void setAssignment(int varIndex, int valueIndex) {
+		ensureCapacity(varIndex);
+		if (variables[varIndex] == null)
+			variables[varIndex] = csp.getVariables().get(varIndex);
+		set(varIndex, csp.getValue(varIndex, valueIndex), valueIndex);
+	}
+
+	public void removeAssignment(int varIndex) {
+		if (varIndex >= values.length || values[varIndex] == null)
+			return;
+		int p = prev[varIndex];
+		int n = next[varIndex];
+		if (p != -1)
+			next[p] = n;
+		else
+			first = n;
+		if (n != -1)
+			prev[n] = p;
+		else
+			last = p;
+		if (csp != null && valueIndexes[varIndex] == -1)
+			unindexed--;
+		values[varIndex] = null;
+		valueIndexes[varIndex] = -1;
+		size--;
+	}
+
+	public boolean hasAssignmentFor(int varIndex) {
+		return varIndex < values.length && values[varIndex] != null;
+	}
+
+	/** Returns the number of assigned variables. */
+	public int size() {
+		return size;
 	}
 
+	///////////////////////////////////////////////////////////////////////
+	// consistency and completeness
+
 	/**
 	 * Returns true if this assignment does not violate any constraints of
 	 * <code>constraints</code>.
 	 */
 	public boolean isConsistent(List<Constraint> constraints) {
 		for (Constraint cons : constraints)
-			if (!cons.isSatisfiedWith(this))
+			if (!satisfies(cons))
 				return false;
 		return true;
 	}
 
+	/**
+	 * Checks the constraint, using its compiled relation (see
+	 * {@link CSP#getRelation(Constraint)}) or value indexes if possible.
+	 * Relations are only used if a propagation algorithm has compiled them
+	 * already.
+	 */
+	boolean satisfies(Constraint constraint) {
+		if (csp != null && unindexed == 0) {
+			BinaryRelation relation = csp.getCompiledRelation(constraint);
+			if (relation != null) {
+				int v1 = getValueIndex(relation.getVar1());
+				int v2 = getValueIndex(relation.getVar2());
+				if (v1 != -1 && v2 != -1)
+					return relation.allows(relation.getVar1(), v1, v2, csp);
+			}
+		}
+		return evaluate(constraint);
+	}
+
+	/** Checks the constraint without compiled relation. */
+	boolean evaluate(Constraint constraint) {
+		if (csp != null && unindexed == 0 && constraint instanceof IndexedConstraint)
+			return ((IndexedConstraint) constraint).isSatisfiedWith(csp, valueIndexes);
+		return constraint.isSatisfiedWith(this);
+	}
+
 	/**
 	 * Returns true if this assignment assigns values to every variable of
 	 * <code>vars</code>.
 	 */
 	public boolean isComplete(List<Variable> vars) {
+		if (size < vars.size())
+			return false;
+		// all assigned variables belong to the CSP
+		if (csp != null && vars.size() == csp.getVariables().size())
+			return size == vars.size();
 		for (Variable var : vars) {
 			if (!hasAssignmentFor(var))
 				return false;
@@ -77,11 +220,7 @@ public class Assignment {
 	 * <code>vars</code>.
 	 */
 	public boolean isComplete(Variable[] vars) {
-		for (Variable var : vars) {
-			if (!hasAssignmentFor(var))
-				return false;
-		}
-		return true;
+		return isComplete(Arrays.asList(vars));
 	}
 
 	/**
@@ -89,15 +228,23 @@ public class Assignment {
 	 * respect to the given CSP.
 	 */
 	public boolean isSolution(CSP csp) {
-		return isConsistent(csp.getConstraints())
-				&& isComplete(csp.getVariables());
+		return isComplete(csp.getVariables())
+				&& isConsistent(csp.getConstraints());
 	}
 
 	public Assignment copy() {
-		Assignment copy = new Assignment();
-		for (Variable var : variables) {
-			copy.setAssignment(var, variableToValue.get(var));
-		}
+		Assignment copy = new Assignment(csp, values.length);
+		if (localIndexes != null)
+			copy.localIndexes.putAll(localIndexes);
+		System.arraycopy(variables, 0, copy.variables, 0, variables.length);
+		System.arraycopy(values, 0, copy.values, 0, values.length);
+		System.arraycopy(valueIndexes, 0, copy.valueIndexes, 0, valueIndexes.length);
+		System.arraycopy(prev, 0, copy.prev, 0, prev.length);
+		System.arraycopy(next, 0, copy.next, 0, next.length);
+		copy.first = first;
+		copy.last = last;
+		copy.size = size;
+		copy.unindexed = unindexed;
 		return copy;
 	}
 
@@ -105,13 +252,68 @@ public class Assignment {
 	public String toString() {
 		boolean comma = false;
 		StringBuffer result = new StringBuffer("{");
-		for (Variable var : variables) {
+		for (int i = first; i != -1; i = next[i]) {
 			if (comma)
 				result.append(", ");
-			result.append(var + "=" + variableToValue.get(var));
+			result.append(variables[i] + "=" + values[i]);
 			comma = true;
 		}
 		result.append("}");
 		return result.toString();
 	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	private void set(int i, Object value, int valueIndex) {
+		if (value == null)
+			throw new NullPointerException();
+		if (values[i] == null) {
+			prev[i] = last;
+			next[i] = -1;
+			if (last != -1)
+				next[last] = i;
+			else
+				first = i;
+			last = i;
+			size++;
+		} else if (csp != null && valueIndexes[i] == -1) {
+			unindexed--;
+		}
+		values[i] = value;
+		valueIndexes[i] = valueIndex;
+		if (csp != null && valueIndex == -1)
+			unindexed++;
+	}
+
+	/** Returns the index of the variable, or -1 if it is unknown. */
+	private int lookup(Variable var) {
+		if (csp != null)
+			return csp.lookupIndex(var);
+		Integer i = localIndexes.get(var);
+		return i != null ? i : -1;
+	}
+
+	private int localIndexOf(Variable var) {
+		Integer i = localIndexes.get(var);
+		if (i == null) {
+			i = localIndexes.size();
+			localIndexes.put(var, i);
+		}
+		return i;
+	}
+
+	private void ensureCapacity(int i) {
+		if (i >= values.length) {
+			int length = Math.max(i + 1, 2 * values.length);
+			int oldLength = values.length;
+			variables = Arrays.copyOf(variables, length);
+			values = Arrays.copyOf(values, length);
+			valueIndexes = Arrays.copyOf(valueIndexes, length);
+			Arrays.fill(valueIndexes, oldLength, length, -1);
+			prev = Arrays.copyOf(prev, length);
+			next = Arrays.copyOf(next, length);
+		}
+	}
 }
\ No newline at end of file
@@ -43,36 +43,49 @@ import csc4500.core.util.CancelableThread;
 public class BacktrackingStrategy extends SolutionStrategy {
 
 	public Assignment solve(CSP csp) {
-		return recursiveBackTrackingSearch(csp, new Assignment());
+		return recursiveBackTrackingSearch(csp, new Assignment(csp));
 	}
 
 	/**
 	 * Template method, which can be configured by overriding the three
-	 * primitive operations below.
+	 * primitive operations below. Strategies which learn from failures (e.g.
+	 * conflict-directed backjumping) can additionally override the hooks.
 	 */
-	private Assignment recursiveBackTrackingSearch(CSP csp,
+	protected Assignment recursiveBackTrackingSearch(CSP csp,
 			Assignment assignment) {
 		Assignment result = null;
 		if (assignment.isComplete(csp.getVariables()) || CancelableThread.currIsCanceled()) {
 			result = assignment;
 		} else {
 			Variable var = selectUnassignedVariable(assignment, csp);
+			boolean jumped = false;
+			onVariableSelected(var, assignment, csp);
 			for (Object value : orderDomainValues(var, assignment, csp)) {
 				assignment.setAssignment(var, value);
-				fireStateChanged(assignment, csp);
-				if (assignment.isConsistent(csp.getConstraints(var))) {
+				fireValueChanged(var, null, value, assignment, csp);
+				if (isConsistent(var, assignment, csp)) {
 					DomainRestoreInfo info = inference(var, assignment, csp);
 					if (!info.isEmpty())
-						fireStateChanged(csp);
+						fireStateChanged(info, csp);
 					if (!info.isEmptyDomainFound()) {
 						result = recursiveBackTrackingSearch(csp, assignment);
-						if (result != null)
+						if (result != null) {
+							// the solution keeps the reduced domains
+							info.release();
 							break;
+						}
 					}
 					info.restoreDomains(csp);
 				}
 				assignment.removeAssignment(var);
+				fireValueChanged(var, value, null, assignment, csp);
+				if (isBackjump(var, assignment, csp)) {
+					jumped = true;
+					break;
+				}
 			}
+			if (result == null && !jumped)
+				onAllValuesFailed(var, assignment, csp);
 		}
 		return result;
 	}
@@ -114,4 +127,41 @@ public class BacktrackingStrategy extends SolutionStrategy {
 			CSP csp) {
 		return new DomainRestoreInfo().compactify();
 	}
+
+	/**
+	 * Hook, which is called before the values of the selected variable are
+	 * tried. This default implementation does nothing.
+	 */
+	protected void onVariableSelected(Variable var, Assignment assignment,
+			CSP csp) {
+	}
+
+	/**
+	 * Hook, which checks whether the value just assigned to the variable is
+	 * consistent with the rest of the assignment. This default implementation
+	 * checks the constraints of the variable.
+	 */
+	protected boolean isConsistent(Variable var, Assignment assignment,
+			CSP csp) {
+		return assignment.isConsistent(csp.getConstraints(var));
+	}
+
+	/**
+	 * Hook, which is called after a value of the variable has been removed
+	 * from the assignment. Returning true skips the remaining values and
+	 * returns failure to an earlier variable. This default implementation
+	 * always returns false (chronological backtracking).
+	 */
+	protected boolean isBackjump(Variable var, Assignment assignment,
+			CSP csp) {
+		return false;
+	}
+
+	/**
+	 * Hook, which is called when all values of the variable have failed. This
+	 * default implementation does nothing.
+	 */
+	protected void onAllValuesFailed(Variable var, Assignment assignment,
+			CSP csp) {
+	}
 }
@@ -0,0 +1,210 @@
+package csc4500.core.search.csp;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A binary constraint compiled into bit matrices over the value indexes of its
+ * two variables (see {@link CSP#getRelation(Constraint)}). For each value of
+ * one variable, a row contains the bit set of compatible value indexes of the
+ * other variable. So a pair of values is checked by a bitwise AND, and
+ * supports in the current domain of the other variable are found and counted
+ * word by word. Rows are computed on first access, so search algorithms only
+ * pay for the rows they use. Relations can be shared by concurrent searches.
+ * All methods expect the CSP the relation was obtained from (or a copy with the
+ * same value indexes).
+ */
+public class BinaryRelation {
+	/** Maximal number of value pairs of a compiled constraint. */
+	public static final int MAX_PAIRS = 1 << 20;
+	/**
+	 * Maximal memory in 64-bit words of all relations compiled for a CSP and
+	 * its copies (64 MB). Further constraints are evaluated directly.
+	 */
+	public static final long MAX_TOTAL_WORDS = 1L << 23;
+	// estimated words of a row besides its bits (reference, headers)
+	private static final int ROW_OVERHEAD = 6;
+
+	private final Constraint constraint;
+	private final int var1;
+	private final int var2;
+	// the numbered values the relation was compiled for
+	final Object[] values1;
+	final Object[] values2;
+	// by value index of var1: compatible value indexes of var2, and vice versa
+	private final Row[] rows1;
+	private final Row[] rows2;
+
+	/**
+	 * Creates the relation if the number of value pairs does not exceed
+	 * {@link #MAX_PAIRS}.
+	 */
+	BinaryRelation(Constraint constraint, CSP csp, int var1, int var2, Object[] values1, Object[] values2) {
+		this.constraint = constraint;
+		this.var1 = var1;
+		this.var2 = var2;
+		this.values1 = values1;
+		this.values2 = values2;
+		if (var1 == var2 || (long) values1.length * values2.length > MAX_PAIRS) {
+			rows1 = null;
+			rows2 = null;
+		} else {
+			rows1 = new Row[values1.length];
+			rows2 = new Row[values2.length];
+		}
+	}
+
+	/** Returns the index of the first variable of the constraint scope. */
+	public int getVar1() {
+		return var1;
+	}
+
+	/** Returns the index of the second variable of the constraint scope. */
+	public int getVar2() {
+		return var2;
+	}
+
+	/**
+	 * Returns true if the value of the specified variable is compatible with
+	 * the value of the other variable.
+	 */
+	public boolean allows(int varIndex, int valueIndex, int otherValueIndex, CSP csp) {
+		return (getRow(varIndex, valueIndex, csp)[otherValueIndex >>> 6] & 1L << otherValueIndex) != 0;
+	}
+
+	/**
+	 * Returns true if the current domain of the other variable contains a value
+	 * which is compatible with the specified value.
+	 */
+	public boolean hasSupport(int varIndex, int valueIndex, CSP csp) {
+		long[] row = getRow(varIndex, valueIndex, csp);
+		long[] domain = csp.getDomainBits(varIndex == var1 ? var2 : var1);
+		for (int w = 0; w < row.length; w++)
+			if ((row[w] & domain[w]) != 0)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Returns the number of values in the current domain of the other variable
+	 * which are compatible with the specified value.
+	 */
+	public int countSupports(int varIndex, int valueIndex, CSP csp) {
+		long[] row = getRow(varIndex, valueIndex, csp);
+		long[] domain = csp.getDomainBits(varIndex == var1 ? var2 : var1);
+		int result = 0;
+		for (int w = 0; w < row.length; w++)
+			result += Long.bitCount(row[w] & domain[w]);
+		return result;
+	}
+
+	/**
+	 * Returns the smallest value index greater than or equal to
+	 * <code>fromIndex</code> in the current domain of the other variable which
+	 * is compatible with the specified value, or -1 if there is none.
+	 */
+	public int nextSupport(int varIndex, int valueIndex, int fromIndex, CSP csp) {
+		long[] row = getRow(varIndex, valueIndex, csp);
+		long[] domain = csp.getDomainBits(varIndex == var1 ? var2 : var1);
+		int w = fromIndex >>> 6;
+		if (w >= row.length)
+			return -1;
+		long word = row[w] & domain[w] & (-1L << fromIndex);
+		while (word == 0) {
+			if (++w == row.length)
+				return -1;
+			word = row[w] & domain[w];
+		}
+		return (w << 6) + Long.numberOfTrailingZeros(word);
+	}
+
+	/** Returns false if the domains were too large to compile the constraint. */
+	boolean isCompiled() {
+		return rows1 != null;
+	}
+
+	/**
+	 * Returns the memory in 64-bit words the relation occupies when all rows
+	 * have been computed.
+	 */
+	long getSize() {
+		return isCompiled() ? getSize(values1.length, values2.length) : 0;
+	}
+
+	/** Returns the size of a compiled relation between the specified domains. */
+	static long getSize(int numOfValues1, int numOfValues2) {
+		return (long) numOfValues1 * (((numOfValues2 + 63) >>> 6) + ROW_OVERHEAD)
+				+ (long) numOfValues2 * (((numOfValues1 + 63) >>> 6) + ROW_OVERHEAD);
+	}
+
+	/**
+	 * Returns the compatible value indexes of the other variable (must not be
+	 * modified).
+	 */
+	long[] getRow(int varIndex, int valueIndex, CSP csp) {
+		Row[] rows = varIndex == var1 ? rows1 : rows2;
+		Row row = rows[valueIndex];
+		if (row == null) {
+			row = new Row(varIndex, valueIndex, varIndex == var1 ? var2 : var1, csp);
+			rows[valueIndex] = row;
+		}
+		return row.bits;
+	}
+
+	/**
+	 * The compatible values of the other variable. The final field makes rows
+	 * safe to publish without synchronization; concurrent threads at worst
+	 * compute the same row twice.
+	 */
+	private class Row {
+		final long[] bits;
+
+		Row(int var, int value, int other, CSP csp) {
+			int n = csp.getNumOfValues(other);
+			long[] result = new long[(n + 63) >>> 6];
+			if (constraint instanceof IndexedConstraint) {
+				IndexedConstraint indexed = (IndexedConstraint) constraint;
+				int[] valueIndexes = getScratch(csp.getVariables().size());
+				valueIndexes[var] = value;
+				for (int v = 0; v < n; v++) {
+					valueIndexes[other] = v;
+					if (indexed.isSatisfiedWith(csp, valueIndexes))
+						result[v >>> 6] |= 1L << v;
+				}
+				valueIndexes[var] = -1;
+				valueIndexes[other] = -1;
+			} else {
+				List<Variable> vars = csp.getVariables();
+				Assignment assignment = new Assignment();
+				assignment.setAssignment(vars.get(var), csp.getValue(var, value));
+				for (int v = 0; v < n; v++) {
+					assignment.setAssignment(vars.get(other), csp.getValue(other, v));
+					if (constraint.isSatisfiedWith(assignment))
+						result[v >>> 6] |= 1L << v;
+				}
+			}
+			bits = result;
+		}
+	}
+
+	/**
+	 * Returns a per-thread array of value indexes by variable index, all -1
+	 * (must be reset after use).
+	 */
+	private static int[] getScratch(int numOfVars) {
+		int[] result = SCRATCH.get();
+		if (result.length < numOfVars) {
+			result = new int[Math.max(numOfVars, 2 * result.length)];
+			Arrays.fill(result, -1);
+			SCRATCH.set(result);
+		}
+		return result;
+	}
+
+	private static final ThreadLocal<int[]> SCRATCH = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[0];
+		}
+	};
+}
@@ -1,9 +1,13 @@
 package csc4500.core.search.csp;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Artificial Intelligence A Modern Approach (3rd Ed.): Section 6.1, Page 202.<br>
@@ -15,32 +19,75 @@ import java.util.List;
  * <li>D is a set of domains, {D1, ... ,Dn}, one for each variable.</li>
  * <li>C is a set of constraints that specify allowable combinations of values.</li>
  * </ul>
- * 
+ *
+ * <br>
+ * Domains are represented by integers: the values of the domain which was set
+ * for a variable are numbered in their order (value indexes), and the current
+ * domain is a bit set of value indexes with cached size, first and last index.
+ * Domain reductions are recorded on a trail (undo stack) while a
+ * {@link #checkpoint()} is active, and {@link #restoreDomains(int)} rewinds
+ * all changes made after the checkpoint in time proportional to their number.
+ * Recording stops when all checkpoints have been restored or released.
+ * {@link Domain} objects returned by {@link #getDomain(Variable)} are
+ * immutable snapshots of the current domains.
+ *
  * @author Ruediger Lunde
  */
 public class CSP {
 
 	private List<Variable> variables;
-	private List<Domain> domains;
 	private List<Constraint> constraints;
 
-	/** Lookup, which maps a variable to its index in the list of variables. */
-	private Hashtable<Variable, Integer> varIndexHash;
+	/**
+	 * Lookup, which maps a variable to its index in the list of variables.
+	 * Both lookups are not modified after the variables have been added, so
+	 * copies can share them without locking.
+	 */
+	private HashMap<Variable, Integer> varIndexHash;
+	// fast path of the lookup for the variable objects of this CSP
+	private IdentityIndex identityIndex;
 	/**
 	 * Constraint network. Maps variables to those constraints in which they
 	 * participate.
 	 */
 	private Hashtable<Variable, List<Constraint>> cnet;
+	/** Compiled binary constraints, shared by copies. */
+	private ConcurrentHashMap<Constraint, BinaryRelation> relations;
+	// memory of the compiled relations in 64-bit words
+	private AtomicLong relationWords;
+
+	// value tables of the variables, which define the value indexes
+	private ValueTable[] valueTables;
+	// current domains as bit sets of value indexes
+	private long[][] domainBits;
+	private int[] domainSizes;
+	// smallest and largest value index in the current domain, -1 if empty
+	private int[] firstValues;
+	private int[] lastValues;
+	// cached snapshots of the current domains, null if outdated
+	private Domain[] domainViews;
+	// the value table created last (variables often share domains)
+	private ValueTable lastValueTable = ValueTable.EMPTY;
+	private Trail trail;
 
 	/** Creates a new CSP. */
 	public CSP() {
 		variables = new ArrayList<Variable>();
-		domains = new ArrayList<Domain>();
 		constraints = new ArrayList<Constraint>();
-		varIndexHash = new Hashtable<Variable, Integer>();
+		varIndexHash = new HashMap<Variable, Integer>();
+		identityIndex = new IdentityIndex();
 		cnet = new Hashtable<Variable, List<Constraint>>();
+		relations = new ConcurrentHashMap<Constraint, BinaryRelation>();
+		relationWords = new AtomicLong();
+		valueTables = new ValueTable[8];
+		domainBits = new long[8][];
+		domainSizes = new int[8];
+		firstValues = new int[8];
+		lastValues = new int[8];
+		domainViews = new Domain[8];
+		trail = new Trail();
 	}
-	
+
 	/** Creates a new CSP. */
 	public CSP(List<Variable> vars) {
 		this();
@@ -50,30 +97,81 @@ public class CSP {
 
 	protected void addVariable(Variable var) {
 		if (!varIndexHash.containsKey(var)) {
-			Domain emptyDomain = new Domain(Collections.emptyList());
+			int index = variables.size();
+			if (index == valueTables.length) {
+				int length = 2 * index;
+				valueTables = Arrays.copyOf(valueTables, length);
+				domainBits = Arrays.copyOf(domainBits, length);
+				domainSizes = Arrays.copyOf(domainSizes, length);
+				firstValues = Arrays.copyOf(firstValues, length);
+				lastValues = Arrays.copyOf(lastValues, length);
+				domainViews = Arrays.copyOf(domainViews, length);
+			}
 			variables.add(var);
-			domains.add(emptyDomain);
-			varIndexHash.put(var, variables.size()-1);
+			valueTables[index] = ValueTable.EMPTY;
+			domainBits[index] = new long[0];
+			domainSizes[index] = 0;
+			firstValues[index] = -1;
+			lastValues[index] = -1;
+			domainViews[index] = null;
+			varIndexHash.put(var, index);
+			identityIndex.put(var, index);
 			cnet.put(var, new ArrayList<Constraint>());
 		} else {
 			throw new IllegalArgumentException("Variable with same name already exists.");
 		}
 	}
-	
+
 	public List<Variable> getVariables() {
 		return Collections.unmodifiableList(variables);
 	}
 
 	public int indexOf(Variable var) {
-		return varIndexHash.get(var);
+		int i = identityIndex.get(var);
+		return i != -1 ? i : varIndexHash.get(var);
 	}
 
 	public Domain getDomain(Variable var) {
-		return domains.get(varIndexHash.get(var));
+		int varIndex = indexOf(var);
+		Domain result = domainViews[varIndex];
+		if (result == null) {
+			Object[] values = new Object[domainSizes[varIndex]];
+			int i = 0;
+			for (int v = firstValues[varIndex]; v != -1; v = getNextValueIndex(varIndex, v + 1))
+				values[i++] = valueTables[varIndex].values[v];
+			result = new Domain(values);
+			domainViews[varIndex] = result;
+		}
+		return result;
 	}
 
+	/**
+	 * Sets the domain of the variable. If the new domain is a subset of the
+	 * domain which defined the value indexes of the variable and keeps the
+	 * order of values, only the bit set is changed. Otherwise, the value
+	 * indexes are redefined by the new domain.
+	 */
 	public void setDomain(Variable var, Domain domain) {
-		domains.set(indexOf(var), domain);
+		int varIndex = indexOf(var);
+		long[] bits = valueTables[varIndex].toBits(domain);
+		if (bits != null) {
+			for (int w = 0; w < bits.length; w++)
+				setWord(varIndex, w, bits[w]);
+			updateBounds(varIndex);
+		} else {
+			if (trail.isRecording())
+				trail.pushDomain(varIndex, new SavedDomain(valueTables[varIndex], domainBits[varIndex],
+						domainSizes[varIndex], firstValues[varIndex], lastValues[varIndex]));
+			ValueTable table = lastValueTable.domain == domain ? lastValueTable : new ValueTable(domain);
+			lastValueTable = table;
+			valueTables[varIndex] = table;
+			domainBits[varIndex] = new long[(table.values.length + 63) >>> 6];
+			for (int v = 0; v < table.values.length; v++)
+				domainBits[varIndex][v >>> 6] |= 1L << v;
+			domainSizes[varIndex] = table.values.length;
+			updateBounds(varIndex);
+			domainViews[varIndex] = domain;
+		}
 	}
 
 	/**
@@ -81,20 +179,237 @@ public class CSP {
 	 * contains all values of the old domain except the specified value.
 	 */
 	public void removeValueFromDomain(Variable var, Object value) {
-		Domain currDomain = getDomain(var);
-		List<Object> values = new ArrayList<Object>(currDomain.size());
-		for (Object v : currDomain)
-			if (!v.equals(value))
-				values.add(v);
-		setDomain(var, new Domain(values));
+		int varIndex = indexOf(var);
+		int valueIndex = getValueIndex(varIndex, value);
+		if (valueIndex != -1)
+			removeValueIndex(varIndex, valueIndex);
+	}
+
+	///////////////////////////////////////////////////////////////////////
+	// integer representation of domains
+
+	/**
+	 * Returns the number of values which have been numbered for the variable
+	 * (the size of the domain which defined the value indexes).
+	 */
+	public int getNumOfValues(int varIndex) {
+		return valueTables[varIndex].values.length;
+	}
+
+	/** Returns the value with the specified index. */
+	public Object getValue(int varIndex, int valueIndex) {
+		return valueTables[varIndex].values[valueIndex];
+	}
+
+	/** Returns the index of the value, or -1 if the value is not numbered. */
+	public int getValueIndex(int varIndex, Object value) {
+		return valueTables[varIndex].indexOf(value);
+	}
+
+	/**
+	 * Returns true if the values of both variables are numbered by the same
+	 * table, so equal value indexes mean equal values.
+	 */
+	public boolean hasSameValueIndexes(int varIndex1, int varIndex2) {
+		return valueTables[varIndex1] == valueTables[varIndex2];
+	}
+
+	public int getDomainSize(Variable var) {
+		return domainSizes[indexOf(var)];
+	}
+
+	public int getDomainSize(int varIndex) {
+		return domainSizes[varIndex];
+	}
+
+	/** Returns the smallest value index of the domain, or -1 if it is empty. */
+	public int getFirstValueIndex(int varIndex) {
+		return firstValues[varIndex];
+	}
+
+	/** Returns the largest value index of the domain, or -1 if it is empty. */
+	public int getLastValueIndex(int varIndex) {
+		return lastValues[varIndex];
+	}
+
+	/**
+	 * Returns the smallest value index of the domain which is greater than or
+	 * equal to <code>fromIndex</code>, or -1 if there is none.
+	 */
+	public int getNextValueIndex(int varIndex, int fromIndex) {
+		long[] bits = domainBits[varIndex];
+		int w = fromIndex >>> 6;
+		if (w >= bits.length)
+			return -1;
+		long word = bits[w] & (-1L << fromIndex);
+		while (word == 0) {
+			if (++w == bits.length)
+				return -1;
+			word = bits[w];
+		}
+		return (w << 6) + Long.numberOfTrailingZeros(word);
+	}
+
+	/**
+	 * Reduces the domain of the variable to the values contained in the bit
+	 * set. Returns true if the domain has been changed.
+	 */
+	boolean retainValueIndexes(int varIndex, long[] bits) {
+		long[] domain = domainBits[varIndex];
+		boolean changed = false;
+		for (int w = 0; w < domain.length; w++) {
+			if ((domain[w] & ~bits[w]) != 0) {
+				setWord(varIndex, w, domain[w] & bits[w]);
+				changed = true;
+			}
+		}
+		if (changed)
+			updateBounds(varIndex);
+		return changed;
+	}
+
+	/** Returns the current domain as bit set (must not be modified). */
+	long[] getDomainBits(int varIndex) {
+		return domainBits[varIndex];
+	}
+
+	public boolean containsValueIndex(int varIndex, int valueIndex) {
+		return (domainBits[varIndex][valueIndex >>> 6] & 1L << valueIndex) != 0;
+	}
+
+	/**
+	 * Removes the value from the domain of the variable. Returns true if the
+	 * domain has been changed.
+	 */
+	public boolean removeValueIndex(int varIndex, int valueIndex) {
+		long[] bits = domainBits[varIndex];
+		int w = valueIndex >>> 6;
+		long word = bits[w];
+		long mask = 1L << valueIndex;
+		if ((word & mask) == 0)
+			return false;
+		if (trail.isRecording())
+			trail.pushWord(varIndex, w, word);
+		bits[w] = word & ~mask;
+		domainSizes[varIndex]--;
+		domainViews[varIndex] = null;
+		if (domainSizes[varIndex] == 0) {
+			firstValues[varIndex] = -1;
+			lastValues[varIndex] = -1;
+		} else if (valueIndex == firstValues[varIndex]) {
+			firstValues[varIndex] = getNextValueIndex(varIndex, valueIndex + 1);
+		} else if (valueIndex == lastValues[varIndex]) {
+			lastValues[varIndex] = getPreviousValueIndex(varIndex, valueIndex - 1);
+		}
+		return true;
+	}
+
+	/**
+	 * Reduces the domain of the variable to the specified value, which is
+	 * assumed to be contained in the domain.
+	 */
+	public void reduceDomain(int varIndex, int valueIndex) {
+		long[] bits = domainBits[varIndex];
+		for (int w = 0; w < bits.length; w++)
+			setWord(varIndex, w, w == valueIndex >>> 6 ? 1L << valueIndex : 0L);
+		firstValues[varIndex] = valueIndex;
+		lastValues[varIndex] = valueIndex;
+	}
+
+	/**
+	 * Starts recording domain changes (if not yet done) and returns a
+	 * checkpoint, which can be used to restore the current domains. Each
+	 * checkpoint has to be restored or released (in reverse order of
+	 * creation) to end the recording.
+	 */
+	public int checkpoint() {
+		trail.setRecording(true);
+		trail.numOfCheckpoints++;
+		return trail.size();
+	}
+
+	/**
+	 * Releases the checkpoint and keeps the domain changes made after it. When
+	 * no checkpoint is active anymore, recording stops and the trail is
+	 * cleared.
+	 */
+	public void releaseCheckpoint(int checkpoint) {
+		if (checkpoint > trail.size())
+			throw new IllegalArgumentException("Unknown checkpoint: " + checkpoint);
+		if (trail.numOfCheckpoints > 0 && --trail.numOfCheckpoints == 0) {
+			trail.clear();
+			trail.setRecording(false);
+		}
+	}
+
+	/** Returns true if domains have been changed after the checkpoint. */
+	public boolean hasChangedSince(int checkpoint) {
+		return trail.size() > checkpoint;
+	}
+
+	/**
+	 * Returns the index of the variable whose domain was changed by the
+	 * recorded change at the specified position. The changes made after a
+	 * checkpoint are found at the positions from the checkpoint up to (not
+	 * including) the next checkpoint.
+	 */
+	int getChangedVariable(int position) {
+		return trail.vars[position];
+	}
+
+	/** Returns the number of recorded changes, i.e. the next checkpoint. */
+	int getTrailSize() {
+		return trail.size();
+	}
+
+	/**
+	 * Undoes all domain changes which have been made after the checkpoint and
+	 * releases the checkpoint.
+	 */
+	public void restoreDomains(int checkpoint) {
+		while (trail.size() > checkpoint) {
+			int top = trail.size() - 1;
+			int varIndex = trail.vars[top];
+			int w = trail.words[top];
+			if (w >= 0) {
+				long old = trail.oldWords[top];
+				long current = domainBits[varIndex][w];
+				domainBits[varIndex][w] = old;
+				domainSizes[varIndex] += Long.bitCount(old) - Long.bitCount(current);
+				if ((current & ~old) == 0) {
+					// values have only been added
+					int first = (w << 6) + Long.numberOfTrailingZeros(old);
+					int last = (w << 6) + 63 - Long.numberOfLeadingZeros(old);
+					if (firstValues[varIndex] == -1 || first < firstValues[varIndex])
+						firstValues[varIndex] = first;
+					if (last > lastValues[varIndex])
+						lastValues[varIndex] = last;
+				} else {
+					updateBounds(varIndex);
+				}
+			} else {
+				SavedDomain saved = (SavedDomain) trail.domains[top];
+				valueTables[varIndex] = saved.table;
+				domainBits[varIndex] = saved.bits;
+				domainSizes[varIndex] = saved.size;
+				firstValues[varIndex] = saved.first;
+				lastValues[varIndex] = saved.last;
+			}
+			domainViews[varIndex] = null;
+			trail.pop();
+		}
+		releaseCheckpoint(checkpoint);
 	}
 
+	///////////////////////////////////////////////////////////////////////
+	// constraints
+
 	public void addConstraint(Constraint constraint) {
 		constraints.add(constraint);
 		for (Variable var : constraint.getScope())
 			cnet.get(var).add(constraint);
 	}
-	
+
 	public List<Constraint> getConstraints() {
 		return constraints;
 	}
@@ -106,9 +421,53 @@ public class CSP {
 		return cnet.get(var);
 	}
 
+	/**
+	 * Returns the binary constraint compiled into bit matrices over the value
+	 * indexes of its variables, or null if the constraint is not binary or has
+	 * too many value pairs. Relations are created on first request and shared
+	 * by copies; they are replaced if the value indexes of one of the variables
+	 * have been redefined. If the relations of this CSP would exceed
+	 * {@link BinaryRelation#MAX_TOTAL_WORDS}, null is returned as well.
+	 */
+	public BinaryRelation getRelation(Constraint constraint) {
+		List<Variable> scope = constraint.getScope();
+		if (scope.size() != 2)
+			return null;
+		BinaryRelation result = relations.get(constraint);
+		if (result == null || !isCurrent(result)) {
+			int var1 = indexOf(scope.get(0));
+			int var2 = indexOf(scope.get(1));
+			Object[] values1 = valueTables[var1].values;
+			Object[] values2 = valueTables[var2].values;
+			long size = 0;
+			if (var1 != var2 && (long) values1.length * values2.length <= BinaryRelation.MAX_PAIRS) {
+				size = BinaryRelation.getSize(values1.length, values2.length);
+				if (relationWords.addAndGet(size) > BinaryRelation.MAX_TOTAL_WORDS) {
+					relationWords.addAndGet(-size);
+					return null;
+				}
+			}
+			result = new BinaryRelation(constraint, this, var1, var2, values1, values2);
+			BinaryRelation old = relations.put(constraint, result);
+			if (old != null)
+				relationWords.addAndGet(-old.getSize());
+		}
+		return result.isCompiled() ? result : null;
+	}
+
+	/**
+	 * Returns the compiled relation of the constraint if it has already been
+	 * created (see {@link #getRelation(Constraint)}), and null otherwise.
+	 * Never compiles, so checking a constraint once costs no memory.
+	 */
+	BinaryRelation getCompiledRelation(Constraint constraint) {
+		BinaryRelation result = relations.get(constraint);
+		return result != null && result.isCompiled() && isCurrent(result) ? result : null;
+	}
+
 	/**
 	 * Returns for binary constraints the other variable from the scope.
-	 * 
+	 *
 	 * @return a variable or null for non-binary constraints.
 	 */
 	public Variable getNeighbor(Variable var, Constraint constraint) {
@@ -123,17 +482,253 @@ public class CSP {
 	}
 
 	/**
-	 * Returns a copy which contains a copy of the domains list and is in all
-	 * other aspects a flat copy of this.
+	 * Returns a copy which contains a copy of the domains and is in all other
+	 * aspects a flat copy of this. Domain changes of the copy are not recorded
+	 * until a checkpoint is taken.
 	 */
 	public CSP copyDomains() {
 		CSP result = new CSP();
+		int n = variables.size();
 		result.variables = variables;
-		result.domains = new ArrayList<Domain>(domains.size());
-		result.domains.addAll(domains);
 		result.constraints = constraints;
 		result.varIndexHash = varIndexHash;
+		result.identityIndex = identityIndex;
 		result.cnet = cnet;
+		result.relations = relations;
+		result.relationWords = relationWords;
+		result.valueTables = Arrays.copyOf(valueTables, n);
+		result.domainBits = new long[n][];
+		for (int i = 0; i < n; i++)
+			result.domainBits[i] = domainBits[i].clone();
+		result.domainSizes = Arrays.copyOf(domainSizes, n);
+		result.firstValues = Arrays.copyOf(firstValues, n);
+		result.lastValues = Arrays.copyOf(lastValues, n);
+		result.domainViews = Arrays.copyOf(domainViews, n);
 		return result;
 	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/** Returns the index of the variable, or -1 if it is unknown. */
+	int lookupIndex(Variable var) {
+		int i = identityIndex.get(var);
+		if (i != -1)
+			return i;
+		Integer result = varIndexHash.get(var);
+		return result != null ? result : -1;
+	}
+
+	/** Returns true if the relation was compiled for the current value indexes. */
+	private boolean isCurrent(BinaryRelation relation) {
+		return relation.values1 == valueTables[relation.getVar1()].values
+				&& relation.values2 == valueTables[relation.getVar2()].values;
+	}
+
+	private void setWord(int varIndex, int w, long word) {
+		long old = domainBits[varIndex][w];
+		if (old != word) {
+			if (trail.isRecording())
+				trail.pushWord(varIndex, w, old);
+			domainBits[varIndex][w] = word;
+			domainSizes[varIndex] += Long.bitCount(word) - Long.bitCount(old);
+			domainViews[varIndex] = null;
+		}
+	}
+
+	private int getPreviousValueIndex(int varIndex, int fromIndex) {
+		long[] bits = domainBits[varIndex];
+		if (fromIndex < 0)
+			return -1;
+		int w = fromIndex >>> 6;
+		long word = bits[w] & (-1L >>> (63 - (fromIndex & 63)));
+		while (word == 0) {
+			if (--w < 0)
+				return -1;
+			word = bits[w];
+		}
+		return (w << 6) + 63 - Long.numberOfLeadingZeros(word);
+	}
+
+	private void updateBounds(int varIndex) {
+		if (domainSizes[varIndex] == 0) {
+			firstValues[varIndex] = -1;
+			lastValues[varIndex] = -1;
+		} else {
+			firstValues[varIndex] = getNextValueIndex(varIndex, 0);
+			lastValues[varIndex] = getPreviousValueIndex(varIndex, (domainBits[varIndex].length << 6) - 1);
+		}
+	}
+
+	/**
+	 * Numbers the values of a domain. Value tables are immutable and shared by
+	 * copies of the CSP.
+	 */
+	private static class ValueTable {
+		static final ValueTable EMPTY = new ValueTable(new Domain(new Object[0]));
+
+		final Domain domain;
+		final Object[] values;
+		// only used for larger domains
+		private final HashMap<Object, Integer> indexes;
+
+		ValueTable(Domain domain) {
+			this.domain = domain;
+			values = new Object[domain.size()];
+			for (int i = 0; i < values.length; i++)
+				values[i] = domain.get(i);
+			if (values.length > 8) {
+				indexes = new HashMap<Object, Integer>();
+				for (int i = 0; i < values.length; i++)
+					indexes.put(values[i], i);
+			} else {
+				indexes = null;
+			}
+		}
+
+		int indexOf(Object value) {
+			if (indexes != null) {
+				Integer result = indexes.get(value);
+				return result != null ? result : -1;
+			}
+			for (int i = 0; i < values.length; i++)
+				if (values[i].equals(value))
+					return i;
+			return -1;
+		}
+
+		/**
+		 * Returns the bit set representation of the domain, or null if the
+		 * domain contains other values or another order.
+		 */
+		long[] toBits(Domain domain) {
+			long[] result = new long[(values.length + 63) >>> 6];
+			int last = -1;
+			for (Object value : domain) {
+				int v = indexOf(value);
+				if (v <= last)
+					return null;
+				result[v >>> 6] |= 1L << v;
+				last = v;
+			}
+			return result;
+		}
+	}
+
+	private static class SavedDomain {
+		final ValueTable table;
+		final long[] bits;
+		final int size;
+		final int first;
+		final int last;
+
+		SavedDomain(ValueTable table, long[] bits, int size, int first, int last) {
+			this.table = table;
+			this.bits = bits;
+			this.size = size;
+			this.first = first;
+			this.last = last;
+		}
+	}
+
+	/**
+	 * Open addressing hash table, which maps variable objects (compared by
+	 * identity) to their indexes. Equal variable objects which have not been
+	 * added are found by the hash table lookup.
+	 */
+	private static class IdentityIndex {
+		private Variable[] keys = new Variable[16];
+		private int[] indexes = new int[16];
+		private int size;
+
+		/** Returns the index of the variable object, or -1 if it is unknown. */
+		int get(Variable var) {
+			int mask = keys.length - 1;
+			for (int i = System.identityHashCode(var) & mask; keys[i] != null; i = (i + 1) & mask)
+				if (keys[i] == var)
+					return indexes[i];
+			return -1;
+		}
+
+		void put(Variable var, int index) {
+			if (2 * (size + 1) > keys.length) {
+				Variable[] oldKeys = keys;
+				int[] oldIndexes = indexes;
+				keys = new Variable[2 * oldKeys.length];
+				indexes = new int[2 * oldKeys.length];
+				size = 0;
+				for (int i = 0; i < oldKeys.length; i++)
+					if (oldKeys[i] != null)
+						put(oldKeys[i], oldIndexes[i]);
+			}
+			int mask = keys.length - 1;
+			int i = System.identityHashCode(var) & mask;
+			while (keys[i] != null)
+				i = (i + 1) & mask;
+			keys[i] = var;
+			indexes[i] = index;
+			size++;
+		}
+	}
+
+	/**
+	 * Undo stack of domain changes. An entry holds the old value of a bit set
+	 * word, or (if the word index is -1) a saved domain.
+	 */
+	private static class Trail {
+		int[] vars = new int[64];
+		int[] words = new int[64];
+		long[] oldWords = new long[64];
+		Object[] domains = new Object[64];
+		private int size;
+		private boolean recording;
+		int numOfCheckpoints;
+
+		boolean isRecording() {
+			return recording;
+		}
+
+		void setRecording(boolean recording) {
+			this.recording = recording;
+		}
+
+		int size() {
+			return size;
+		}
+
+		void pushWord(int varIndex, int w, long old) {
+			ensureCapacity();
+			vars[size] = varIndex;
+			words[size] = w;
+			oldWords[size] = old;
+			size++;
+		}
+
+		void pushDomain(int varIndex, Object saved) {
+			ensureCapacity();
+			vars[size] = varIndex;
+			words[size] = -1;
+			domains[size] = saved;
+			size++;
+		}
+
+		void pop() {
+			domains[--size] = null;
+		}
+
+		void clear() {
+			Arrays.fill(domains, 0, size, null);
+			size = 0;
+		}
+
+		private void ensureCapacity() {
+			if (size == vars.length) {
+				vars = Arrays.copyOf(vars, 2 * size);
+				words = Arrays.copyOf(words, 2 * size);
+				oldWords = Arrays.copyOf(oldWords, 2 * size);
+				domains = Arrays.copyOf(domains, 2 * size);
+			}
+		}
+	}
 }
\ No newline at end of file
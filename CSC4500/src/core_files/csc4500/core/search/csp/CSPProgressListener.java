@@ -0,0 +1,20 @@
+package csc4500.core.search.csp;
+
+/**
+ * Listener of a {@link CSPProgressStream}, which is informed about the single
+ * changes made by a solution strategy in addition to the sampled snapshots.
+ * All methods are called in the thread of the stream.
+ */
+public interface CSPProgressListener extends CSPStateListener {
+	/**
+	 * Informs about a changed value of a variable. Null stands for an
+	 * unassigned variable.
+	 */
+	void valueChanged(Variable var, Object oldValue, Object newValue);
+
+	/**
+	 * Informs about the new size of a reduced domain. Reductions are undone
+	 * when the variable whose assignment caused them becomes unassigned.
+	 */
+	void domainChanged(Variable var, int domainSize);
+}
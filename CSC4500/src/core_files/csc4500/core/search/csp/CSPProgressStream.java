@@ -0,0 +1,242 @@
+package csc4500.core.search.csp;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import csc4500.core.util.datastructure.Pair;
+
+/**
+ * Reports the progress of a solution strategy to a listener in a separate
+ * thread (see {@link SolutionStrategy#setProgressStream(CSPProgressStream)}).
+ * In contrast to listeners which are registered at the strategy directly, the
+ * solver is not slowed down by copying assignment and domains at each step.
+ *
+ * <br>
+ * The strategy publishes lightweight events into a bounded queue, which is
+ * emptied by a daemon thread of the stream. Copies of assignment and domains
+ * (snapshots) are made at most once per snapshot interval and passed to
+ * {@link CSPStateListener#stateChanged(Assignment, CSP)}. If the listener is a
+ * {@link CSPProgressListener}, it is additionally informed about each value
+ * and domain change. Events are dropped when the queue is full, so a slow
+ * listener never blocks the solver; the next snapshot brings it up to date
+ * again. When the stream is closed, a final snapshot of the last reported
+ * state is delivered regardless of the snapshot interval, so the listener
+ * always sees the state the solver has ended with. A stream must not be used
+ * by several strategies at the same time.
+ */
+public class CSPProgressStream {
+	public static final int DEFAULT_CAPACITY = 4096;
+	public static final long DEFAULT_SNAPSHOT_INTERVAL = 100;
+
+	private static final int VALUE = 0;
+	private static final int DOMAIN = 1;
+	private static final int SNAPSHOT = 2;
+
+	private final CSPStateListener listener;
+	private final boolean isDeltaListener;
+	private final BlockingQueue<Event> queue;
+	private final long snapshotInterval;
+	private long nextSnapshotTime;
+	// last reported state, copied for the final snapshot
+	private volatile Assignment lastAssignment;
+	private volatile CSP lastCsp;
+	private final AtomicLong numOfDropped = new AtomicLong();
+	private volatile boolean isClosed;
+	private final Thread consumer;
+	// marks of the variables reported by the current domain update
+	private int[] marks = new int[0];
+	private int mark;
+
+	/**
+	 * Creates a stream with default capacity and a snapshot interval of 100
+	 * milliseconds, and starts its thread.
+	 */
+	public CSPProgressStream(CSPStateListener listener) {
+		this(listener, DEFAULT_CAPACITY, DEFAULT_SNAPSHOT_INTERVAL);
+	}
+
+	/**
+	 * Creates a stream and starts its thread.
+	 *
+	 * @param listener
+	 *            the listener which is informed in the thread of the stream
+	 * @param capacity
+	 *            maximal number of events waiting for delivery
+	 * @param snapshotInterval
+	 *            minimal time in milliseconds between two snapshots
+	 */
+	public CSPProgressStream(CSPStateListener listener, int capacity, long snapshotInterval) {
+		this.listener = listener;
+		isDeltaListener = listener instanceof CSPProgressListener;
+		queue = new ArrayBlockingQueue<Event>(capacity);
+		this.snapshotInterval = TimeUnit.MILLISECONDS.toNanos(snapshotInterval);
+		nextSnapshotTime = System.nanoTime();
+		consumer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				deliverEvents();
+			}
+		}, "CSPProgressStream");
+		consumer.setDaemon(true);
+		consumer.start();
+	}
+
+	/** Returns the number of events which were dropped because the queue was full. */
+	public long getNumOfDroppedEvents() {
+		return numOfDropped.get();
+	}
+
+	/**
+	 * Delivers the events which are still queued and a final snapshot, and
+	 * stops the thread of the stream. Must be called after the solve call of
+	 * the strategy has returned. Events published later are ignored.
+	 */
+	public void close() {
+		if (isClosed)
+			return;
+		Event snapshot = null;
+		if (lastAssignment != null) {
+			snapshot = new Event(SNAPSHOT, null, null, null, 0);
+			snapshot.assignment = lastAssignment.copy();
+			snapshot.csp = lastCsp.copyDomains();
+			lastAssignment = null;
+			lastCsp = null;
+		}
+		if (Thread.currentThread() == consumer) {
+			// called by the listener: deliver the rest in order and stop
+			isClosed = true;
+			Event event;
+			while ((event = queue.poll()) != null)
+				deliver(event);
+			if (snapshot != null)
+				deliver(snapshot);
+			return;
+		}
+		try {
+			// waits for space instead of dropping the snapshot
+			if (snapshot != null)
+				queue.put(snapshot);
+			isClosed = true;
+			consumer.join();
+		} catch (InterruptedException e) {
+			isClosed = true;
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Publishes a changed value (null for unassigned) and a snapshot if the
+	 * snapshot interval has elapsed.
+	 */
+	void valueChanged(Variable var, Object oldValue, Object newValue, Assignment assignment, CSP csp) {
+		if (isDeltaListener && oldValue != newValue)
+			publish(new Event(VALUE, var, oldValue, newValue, 0));
+		stateChanged(assignment, csp);
+	}
+
+	/**
+	 * Publishes the sizes of the domains which have been reduced since the
+	 * restore info was created.
+	 */
+	void domainsChanged(DomainRestoreInfo info, CSP csp) {
+		if (!isDeltaListener || isClosed)
+			return;
+		List<Variable> vars = csp.getVariables();
+		if (marks.length < vars.size())
+			marks = new int[vars.size()];
+		if (++mark == Integer.MAX_VALUE) {
+			Arrays.fill(marks, 0);
+			mark = 1;
+		}
+		for (Pair<Variable, Domain> pair : info.getSavedDomains())
+			publishDomain(csp.indexOf(pair.getFirst()), csp);
+		int checkpoint = info.getCheckpoint();
+		if (checkpoint != -1) {
+			int end = csp.getTrailSize();
+			for (int pos = checkpoint; pos < end; pos++)
+				publishDomain(csp.getChangedVariable(pos), csp);
+		}
+	}
+
+	/** Publishes a snapshot if the snapshot interval has elapsed. */
+	void stateChanged(Assignment assignment, CSP csp) {
+		if (isClosed)
+			return;
+		lastAssignment = assignment;
+		lastCsp = csp;
+		long time = System.nanoTime();
+		if (time - nextSnapshotTime >= 0) {
+			nextSnapshotTime = time + snapshotInterval;
+			Event event = new Event(SNAPSHOT, null, null, null, 0);
+			event.assignment = assignment.copy();
+			event.csp = csp.copyDomains();
+			publish(event);
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	private void publishDomain(int varIndex, CSP csp) {
+		if (marks[varIndex] != mark) {
+			marks[varIndex] = mark;
+			publish(new Event(DOMAIN, csp.getVariables().get(varIndex), null, null, csp.getDomainSize(varIndex)));
+		}
+	}
+
+	private void publish(Event event) {
+		if (!isClosed && !queue.offer(event))
+			numOfDropped.incrementAndGet();
+	}
+
+	/** Main loop of the stream thread. */
+	private void deliverEvents() {
+		try {
+			while (true) {
+				Event event = queue.poll(50, TimeUnit.MILLISECONDS);
+				if (event != null)
+					deliver(event);
+				else if (isClosed)
+					break;
+			}
+		} catch (InterruptedException e) {
+			// stop delivering
+		}
+	}
+
+	private void deliver(Event event) {
+		switch (event.kind) {
+		case VALUE:
+			((CSPProgressListener) listener).valueChanged(event.var, event.oldValue, event.newValue);
+			break;
+		case DOMAIN:
+			((CSPProgressListener) listener).domainChanged(event.var, event.domainSize);
+			break;
+		default:
+			listener.stateChanged(event.assignment, event.csp);
+		}
+	}
+
+	private static class Event {
+		final int kind;
+		final Variable var;
+		final Object oldValue;
+		final Object newValue;
+		final int domainSize;
+		Assignment assignment;
+		CSP csp;
+
+		Event(int kind, Variable var, Object oldValue, Object newValue, int domainSize) {
+			this.kind = kind;
+			this.var = var;
+			this.oldValue = oldValue;
+			this.newValue = newValue;
+			this.domainSize = domainSize;
+		}
+	}
+}
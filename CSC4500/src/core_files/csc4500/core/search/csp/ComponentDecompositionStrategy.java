@@ -0,0 +1,283 @@
+package csc4500.core.search.csp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import csc4500.core.search.framework.Metrics;
+import csc4500.core.util.CancelableThread;
+
+/**
+ * Splits a CSP into the connected components of its constraint graph and
+ * solves them independently. Variables which do not share a constraint
+ * (directly or indirectly) can be assigned without regard to each other, so
+ * the solutions of the components are simply merged (like Tasmania in the
+ * map coloring problem).
+ *
+ * <br>
+ * The components are found by union-find over the scopes of all constraints.
+ * Each component becomes a CSP of its own, which shares variables, domain
+ * objects and constraints with the original. A fixed number of
+ * {@link CancelableThread}s take components from a shared counter and solve
+ * them with strategies created by the factory, one per thread. As soon as a
+ * component turns out to have no solution, the other threads are canceled
+ * and the solve call returns null. Exceptions of the component strategies are
+ * rethrown by the solve call. The workers have always terminated when the
+ * call returns. If the constraint graph is connected, the CSP is solved in the
+ * calling thread.
+ */
+public class ComponentDecompositionStrategy extends SolutionStrategy {
+	public static final String METRIC_COMPONENTS = "components";
+	public static final String METRIC_LARGEST_COMPONENT = "largestComponent";
+	public static final String METRIC_SOLVED_COMPONENTS = "solvedComponents";
+
+	private final SolutionStrategyFactory factory;
+	private final int numOfThreads;
+	private Metrics metrics = new Metrics();
+
+	/**
+	 * Creates a strategy which uses one thread per available processor.
+	 */
+	public ComponentDecompositionStrategy(SolutionStrategyFactory factory) {
+		this(factory, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a strategy.
+	 *
+	 * @param factory
+	 *            creates the strategies which solve the components
+	 * @param numOfThreads
+	 *            maximal number of components which are solved at the same
+	 *            time
+	 */
+	public ComponentDecompositionStrategy(SolutionStrategyFactory factory, int numOfThreads) {
+		this.factory = factory;
+		this.numOfThreads = numOfThreads;
+	}
+
+	/**
+	 * Returns the number of components, the number of variables of the
+	 * largest one, and the number of components which were solved.
+	 */
+	public Metrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Returns the connected components of the constraint graph as separate
+	 * CSPs, ordered by their first variable.
+	 */
+	public List<CSP> decompose(CSP csp) {
+		List<Variable> vars = csp.getVariables();
+		int n = vars.size();
+		int[] parents = new int[n];
+		int[] sizes = new int[n];
+		for (int i = 0; i < n; i++) {
+			parents[i] = i;
+			sizes[i] = 1;
+		}
+		for (Constraint constraint : csp.getConstraints()) {
+			List<Variable> scope = constraint.getScope();
+			int x = csp.indexOf(scope.get(0));
+			for (int p = 1; p < scope.size(); p++)
+				x = union(parents, sizes, x, csp.indexOf(scope.get(p)));
+		}
+		int[] componentIndexes = new int[n];
+		List<List<Variable>> componentVars = new ArrayList<List<Variable>>();
+		for (int i = 0; i < n; i++) {
+			int root = find(parents, i);
+			if (root == i) {
+				componentIndexes[i] = componentVars.size();
+				componentVars.add(new ArrayList<Variable>(sizes[i]));
+			}
+		}
+		List<List<Domain>> componentDomains = new ArrayList<List<Domain>>(componentVars.size());
+		for (List<Variable> component : componentVars)
+			componentDomains.add(new ArrayList<Domain>(component.size()));
+		for (int i = 0; i < n; i++) {
+			int c = componentIndexes[find(parents, i)];
+			componentVars.get(c).add(vars.get(i));
+			componentDomains.get(c).add(csp.getDomain(vars.get(i)));
+		}
+		List<Constraint> constraints = csp.getConstraints();
+		int[] constraintComponents = new int[constraints.size()];
+		for (int c = 0; c < constraints.size(); c++) {
+			int x = csp.indexOf(constraints.get(c).getScope().get(0));
+			constraintComponents[c] = componentIndexes[find(parents, x)];
+		}
+		List<CSP> result = new ArrayList<CSP>(componentVars.size());
+		for (int c = 0; c < componentVars.size(); c++) {
+			List<Variable> component = componentVars.get(c);
+			CSP sub = new CSP(component);
+			for (int i = 0; i < component.size(); i++)
+				sub.setDomain(component.get(i), componentDomains.get(c).get(i));
+			result.add(sub);
+		}
+		for (int c = 0; c < constraints.size(); c++)
+			result.get(constraintComponents[c]).addConstraint(constraints.get(c));
+		return result;
+	}
+
+	/**
+	 * Solves the components concurrently and merges their solutions. Returns
+	 * null if one of the components has no solution.
+	 */
+	public Assignment solve(CSP csp) {
+		List<CSP> components = decompose(csp);
+		int largest = 0;
+		for (CSP component : components)
+			largest = Math.max(largest, component.getVariables().size());
+		metrics.set(METRIC_COMPONENTS, components.size());
+		metrics.set(METRIC_LARGEST_COMPONENT, largest);
+		metrics.set(METRIC_SOLVED_COMPONENTS, 0);
+		Assignment result = null;
+		if (components.size() == 1) {
+			SolutionStrategy strategy = factory.createSolutionStrategy();
+			Assignment assignment = strategy.solve(csp);
+			if (assignment != null && !CancelableThread.currIsCanceled() && assignment.isComplete(csp.getVariables())) {
+				result = assignment;
+				metrics.set(METRIC_SOLVED_COMPONENTS, 1);
+			}
+		} else if (!components.isEmpty()) {
+			result = solveConcurrently(components, csp);
+		} else {
+			result = new Assignment(csp);
+		}
+		if (result != null)
+			fireStateChanged(result, csp);
+		return result;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Starts the worker threads, merges the reported solutions and cancels the
+	 * workers after a failure. Waits for the workers before returning, and
+	 * rethrows the first exception reported by them.
+	 */
+	private Assignment solveConcurrently(List<CSP> components, CSP csp) {
+		BlockingQueue<Result> results = new LinkedBlockingQueue<Result>();
+		AtomicInteger nextComponent = new AtomicInteger();
+		List<CancelableThread> threads = new ArrayList<CancelableThread>();
+		for (int i = 0; i < Math.min(numOfThreads, components.size()); i++) {
+			CancelableThread thread = new CancelableThread(
+					new Worker(factory.createSolutionStrategy(), components, nextComponent, results));
+			thread.setName("Component-" + i);
+			thread.setDaemon(true);
+			threads.add(thread);
+		}
+		for (CancelableThread thread : threads)
+			thread.start();
+		Assignment result = new Assignment(csp);
+		Throwable error = null;
+		int solved = 0;
+		try {
+			while (solved < components.size() && !CancelableThread.currIsCanceled()) {
+				Result next = results.poll(50, TimeUnit.MILLISECONDS);
+				if (next == null)
+					continue;
+				if (next.error != null) {
+					error = next.error;
+					break;
+				}
+				if (next.assignment == null)
+					break;
+				for (Variable var : components.get(next.component).getVariables())
+					result.setAssignment(var, next.assignment.getAssignment(var));
+				metrics.set(METRIC_SOLVED_COMPONENTS, ++solved);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			CancelableThread.cancelAndJoin(threads);
+		}
+		// only unchecked exceptions can escape from a worker
+		if (error instanceof Error)
+			throw (Error) error;
+		if (error != null)
+			throw (RuntimeException) error;
+		return solved == components.size() ? result : null;
+	}
+
+	private static int find(int[] parents, int x) {
+		while (parents[x] != x) {
+			parents[x] = parents[parents[x]]; // path halving
+			x = parents[x];
+		}
+		return x;
+	}
+
+	/** Unites the sets of x and y (union by size) and returns the new root. */
+	private static int union(int[] parents, int[] sizes, int x, int y) {
+		x = find(parents, x);
+		y = find(parents, y);
+		if (x == y)
+			return x;
+		if (sizes[x] < sizes[y]) {
+			int tmp = x;
+			x = y;
+			y = tmp;
+		}
+		parents[y] = x;
+		sizes[x] += sizes[y];
+		return x;
+	}
+
+	/**
+	 * Solves components until all have been taken or the thread is canceled.
+	 * Reports each result; a failure or an exception stops the worker.
+	 */
+	private static class Worker implements Runnable {
+		private final SolutionStrategy strategy;
+		private final List<CSP> components;
+		private final AtomicInteger nextComponent;
+		private final BlockingQueue<Result> results;
+
+		Worker(SolutionStrategy strategy, List<CSP> components, AtomicInteger nextComponent,
+				BlockingQueue<Result> results) {
+			this.strategy = strategy;
+			this.components = components;
+			this.nextComponent = nextComponent;
+			this.results = results;
+		}
+
+		@Override
+		public void run() {
+			int c;
+			while (!CancelableThread.currIsCanceled() && (c = nextComponent.getAndIncrement()) < components.size()) {
+				CSP component = components.get(c);
+				Assignment assignment = null;
+				try {
+					assignment = strategy.solve(component);
+					// canceled strategies may return partial assignments
+					if (assignment != null && (CancelableThread.currIsCanceled() || !assignment.isComplete(component.getVariables())))
+						assignment = null;
+				} catch (Throwable e) {
+					results.add(new Result(c, null, e));
+					break;
+				}
+				results.add(new Result(c, assignment, null));
+				if (assignment == null)
+					break;
+			}
+		}
+	}
+
+	private static class Result {
+		final int component;
+		final Assignment assignment;
+		final Throwable error;
+
+		Result(int component, Assignment assignment, Throwable error) {
+			this.component = component;
+			this.assignment = assignment;
+			this.error = error;
+		}
+	}
+}
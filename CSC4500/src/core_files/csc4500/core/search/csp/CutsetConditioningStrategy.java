@@ -0,0 +1,341 @@
+package csc4500.core.search.csp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import csc4500.core.search.framework.Metrics;
+import csc4500.core.util.CancelableThread;
+
+/**
+ * Artificial Intelligence A Modern Approach (3rd Ed.): Section 6.5.1, Page
+ * 225.<br>
+ * <br>
+ * Cutset conditioning: after the variables of a cycle cutset have been
+ * assigned, the remaining constraint graph is a forest, which can be solved
+ * in linear time by the {@link TreeCSPSolver}. The strategy enumerates the
+ * consistent assignments of the cutset and solves the forest for each of them
+ * until a solution has been found. So the runtime is exponential only in the
+ * size of the cutset.
+ *
+ * <br>
+ * The cutset is found greedily: variables with at most one neighbor are
+ * removed from the constraint graph repeatedly, and while the graph is not
+ * empty, a variable of maximal degree is moved to the cutset. Constraints
+ * with more than two variables are treated as cliques, and all but one of
+ * their variables are put into the cutset. Constraints between a forest
+ * variable and cutset variables only restrict the domain of the forest
+ * variable in each branch. Each branch restricts a copy of the domains (see
+ * {@link CSP#copyDomains()}) and solves the forest on it, so the variables
+ * are never added to another CSP.
+ *
+ * <br>
+ * The branches of the first {@link #setSplitDepth(int) splitDepth} cutset
+ * variables are explored in parallel by the workers of a fork/join pool. All
+ * tasks stop as soon as a solution has been found or the calling thread has
+ * been canceled.
+ */
+public class CutsetConditioningStrategy extends SolutionStrategy {
+	public static final String METRIC_CUTSET_SIZE = "cutsetSize";
+	public static final String METRIC_BRANCHES = "branches";
+
+	private static final int DEFAULT_SPLIT_DEPTH = 8;
+	// split only while the current worker has at most this number of queued tasks
+	private static final int MAX_SURPLUS_TASKS = 2;
+
+	private final ForkJoinPool pool;
+	private int splitDepth = DEFAULT_SPLIT_DEPTH;
+	private List<Variable> cutset = new ArrayList<Variable>();
+	private Metrics metrics = new Metrics();
+
+	// state of the current solve call, read-only for the workers
+	private CSP csp;
+	private Thread caller;
+	private int[] cutsetIndexes;
+	private List<List<Constraint>> cutsetConstraints;
+	private List<List<Constraint>> filters;
+	private boolean[] inCutset;
+	private final AtomicReference<Assignment> solution = new AtomicReference<Assignment>();
+	private final LongAdder numOfBranches = new LongAdder();
+
+	/** Creates a strategy which uses the common pool. */
+	public CutsetConditioningStrategy() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/** Creates a strategy which uses the specified pool. */
+	public CutsetConditioningStrategy(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Sets the number of cutset variables whose values are distributed to
+	 * tasks. Default value is 8.
+	 */
+	public void setSplitDepth(int splitDepth) {
+		this.splitDepth = splitDepth;
+	}
+
+	/** Returns the cutset which was used by the last solve call. */
+	public List<Variable> getCutset() {
+		return cutset;
+	}
+
+	/** Returns the size of the cutset and the number of solved forests. */
+	public Metrics getMetrics() {
+		metrics.set(METRIC_BRANCHES, numOfBranches.sum());
+		return metrics;
+	}
+
+	/**
+	 * Computes a cycle cutset and enumerates its assignments in parallel.
+	 */
+	public Assignment solve(CSP csp) {
+		solution.set(null);
+		numOfBranches.reset();
+		this.csp = csp;
+		caller = Thread.currentThread();
+		try {
+			inCutset = findCutset(csp);
+			prepareBranches(csp);
+			metrics.set(METRIC_CUTSET_SIZE, cutsetIndexes.length);
+			pool.invoke(new CutsetSearch(new Assignment(csp), 0));
+		} finally {
+			this.csp = null;
+			caller = null;
+			cutsetConstraints = null;
+			filters = null;
+			inCutset = null;
+		}
+		Assignment result = solution.get();
+		if (result != null)
+			fireStateChanged(result, csp);
+		return result;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Finds a cycle cutset greedily and returns the membership flags by
+	 * variable index.
+	 */
+	private boolean[] findCutset(CSP csp) {
+		int n = csp.getVariables().size();
+		List<List<Integer>> neighbors = new ArrayList<List<Integer>>(n);
+		for (int i = 0; i < n; i++)
+			neighbors.add(new ArrayList<Integer>());
+		for (Constraint constraint : csp.getConstraints()) {
+			List<Variable> scope = constraint.getScope();
+			for (int p = 0; p < scope.size(); p++) {
+				for (int q = p + 1; q < scope.size(); q++) {
+					int x = csp.indexOf(scope.get(p));
+					int y = csp.indexOf(scope.get(q));
+					neighbors.get(x).add(y);
+					neighbors.get(y).add(x);
+				}
+			}
+		}
+		int[] degrees = new int[n];
+		for (int i = 0; i < n; i++)
+			degrees[i] = neighbors.get(i).size();
+		boolean[] removed = new boolean[n];
+		boolean[] result = new boolean[n];
+		cutset = new ArrayList<Variable>();
+		int[] leaves = new int[n];
+		int numOfLeaves = 0;
+		int numOfRemoved = 0;
+		for (int i = 0; i < n; i++)
+			if (degrees[i] <= 1)
+				leaves[numOfLeaves++] = i;
+		while (true) {
+			while (numOfLeaves > 0) {
+				int x = leaves[--numOfLeaves];
+				if (removed[x])
+					continue;
+				removed[x] = true;
+				numOfRemoved++;
+				for (int y : neighbors.get(x)) {
+					if (!removed[y] && --degrees[y] == 1)
+						leaves[numOfLeaves++] = y;
+				}
+			}
+			if (numOfRemoved == n)
+				break;
+			int best = -1;
+			for (int i = 0; i < n; i++)
+				if (!removed[i] && (best == -1 || degrees[i] > degrees[best]))
+					best = i;
+			addToCutset(best, csp, result);
+			removed[best] = true;
+			numOfRemoved++;
+			for (int y : neighbors.get(best)) {
+				if (!removed[y] && --degrees[y] <= 1)
+					leaves[numOfLeaves++] = y;
+			}
+		}
+		// constraints with more than two variables keep at most one of them
+		// outside the cutset
+		for (Constraint constraint : csp.getConstraints()) {
+			List<Variable> scope = constraint.getScope();
+			if (scope.size() > 2) {
+				boolean found = false;
+				for (Variable var : scope) {
+					int x = csp.indexOf(var);
+					if (!result[x]) {
+						if (found)
+							addToCutset(x, csp, result);
+						found = true;
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	private void addToCutset(int x, CSP csp, boolean[] inCutset) {
+		inCutset[x] = true;
+		cutset.add(csp.getVariables().get(x));
+	}
+
+	/**
+	 * Assigns the constraints to the cutset variables which complete them, or
+	 * to the forest variables whose domains they restrict.
+	 */
+	private void prepareBranches(CSP csp) {
+		int n = csp.getVariables().size();
+		cutsetIndexes = new int[cutset.size()];
+		int[] positions = new int[n];
+		Arrays.fill(positions, -1);
+		cutsetConstraints = new ArrayList<List<Constraint>>();
+		for (int i = 0; i < cutsetIndexes.length; i++) {
+			cutsetIndexes[i] = csp.indexOf(cutset.get(i));
+			positions[cutsetIndexes[i]] = i;
+			cutsetConstraints.add(new ArrayList<Constraint>());
+		}
+		filters = new ArrayList<List<Constraint>>(n);
+		for (int i = 0; i < n; i++)
+			filters.add(null);
+		for (Constraint constraint : csp.getConstraints()) {
+			List<Variable> scope = constraint.getScope();
+			int lastPosition = -1;
+			int numOfForestVars = 0;
+			int x = -1;
+			for (Variable var : scope) {
+				int i = csp.indexOf(var);
+				if (inCutset[i]) {
+					lastPosition = Math.max(lastPosition, positions[i]);
+				} else {
+					numOfForestVars++;
+					x = i;
+				}
+			}
+			// constraints between forest variables are left to the tree solver
+			if (numOfForestVars == 0)
+				cutsetConstraints.get(lastPosition).add(constraint);
+			else if (numOfForestVars == 1)
+				addConstraint(filters, x, constraint);
+		}
+	}
+
+	private void addConstraint(List<List<Constraint>> lists, int varIndex, Constraint constraint) {
+		List<Constraint> list = lists.get(varIndex);
+		if (list == null) {
+			list = new ArrayList<Constraint>();
+			lists.set(varIndex, list);
+		}
+		list.add(constraint);
+	}
+
+	/** Returns true if the search has to stop. */
+	private boolean isStopped() {
+		if (solution.get() != null)
+			return true;
+		return caller instanceof CancelableThread && ((CancelableThread) caller).isCanceled();
+	}
+
+	/**
+	 * Enumerates the consistent values of the cutset variable at the specified
+	 * position and searches below. Subtrees are forked while the position is
+	 * smaller than the split depth.
+	 */
+	private void search(Assignment assignment, int depth) {
+		if (isStopped())
+			return;
+		if (depth == cutsetIndexes.length) {
+			numOfBranches.increment();
+			Assignment result = solveForest(assignment);
+			if (result != null)
+				solution.compareAndSet(null, result);
+			return;
+		}
+		int x = cutsetIndexes[depth];
+		List<CutsetSearch> forked = null;
+		for (int v = csp.getFirstValueIndex(x); v != -1 && !isStopped(); v = csp.getNextValueIndex(x, v + 1)) {
+			assignment.setAssignment(x, v);
+			if (assignment.isConsistent(cutsetConstraints.get(depth))) {
+				if (depth < splitDepth && csp.getNextValueIndex(x, v + 1) != -1
+						&& ForkJoinTask.getSurplusQueuedTaskCount() <= MAX_SURPLUS_TASKS) {
+					if (forked == null)
+						forked = new ArrayList<CutsetSearch>();
+					CutsetSearch task = new CutsetSearch(assignment.copy(), depth + 1);
+					task.fork();
+					forked.add(task);
+				} else {
+					search(assignment, depth + 1);
+				}
+			}
+			assignment.removeAssignment(x);
+		}
+		if (forked != null)
+			for (CutsetSearch task : forked)
+				task.join();
+	}
+
+	/**
+	 * Restricts a copy of the domains of the forest variables to the values
+	 * which are consistent with the cutset assignment and solves the forest.
+	 * Returns the completed assignment or null.
+	 */
+	private Assignment solveForest(Assignment cutsetAssignment) {
+		Assignment result = cutsetAssignment.copy();
+		CSP forest = csp.copyDomains();
+		for (int x = 0; x < filters.size(); x++) {
+			List<Constraint> constraints = filters.get(x);
+			if (constraints == null)
+				continue;
+			for (int v = forest.getFirstValueIndex(x); v != -1; v = forest.getNextValueIndex(x, v + 1)) {
+				result.setAssignment(x, v);
+				if (!result.isConsistent(constraints))
+					forest.removeValueIndex(x, v);
+			}
+			result.removeAssignment(x);
+			if (forest.getDomainSize(x) == 0)
+				return null;
+		}
+		return new TreeCSPSolver().solve(forest, inCutset, result) ? result : null;
+	}
+
+	/** Fork/join task which explores the branches below a cutset position. */
+	private class CutsetSearch extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Assignment assignment;
+		private final int depth;
+
+		CutsetSearch(Assignment assignment, int depth) {
+			this.assignment = assignment;
+			this.depth = depth;
+		}
+
+		@Override
+		protected void compute() {
+			search(assignment, depth);
+		}
+	}
+}
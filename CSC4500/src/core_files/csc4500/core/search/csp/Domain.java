@@ -10,8 +10,9 @@ import csc4500.core.util.ArrayIterator;
  * A domain Di consists of a set of allowable values {v1, ... , vk} for the
  * corresponding variable Xi and defines a default order on those values. This
  * implementation guarantees, that domains are never changed after they have
- * been created. Domain reduction is implemented by replacement instead of
- * modification. So previous states can easily and safely be restored.
+ * been created. A {@link CSP} stores the current domains of its variables as
+ * bit sets over the values of the domain which was set; instances of this class
+ * are used to set domains and as snapshots of the current domains.
  * 
  * @author Ruediger Lunde
  */
@@ -13,6 +13,12 @@ import csc4500.core.util.datastructure.Pair;
  * started). Additionally, a flag indicates whether an empty domain has been
  * found during propagation.
  * 
+ * <br>
+ * Objects created with {@link #DomainRestoreInfo(CSP)} take a checkpoint of
+ * the CSP and restore the domains by rewinding its trail, so propagation
+ * algorithms do not need to save domains explicitly. Callers which keep the
+ * reduced domains should {@link #release()} the checkpoint instead.
+ * 
  * @author Ruediger Lunde
  * 
  */
@@ -20,19 +26,38 @@ public class DomainRestoreInfo {
 	private List<Pair<Variable, Domain>> savedDomains;
 	private HashSet<Variable> affectedVariables;
 	private boolean emptyDomainObserved;
+	// CSP whose trail is used, or null
+	private CSP csp;
+	private int checkpoint;
+	private boolean isReleased;
 
 	public DomainRestoreInfo() {
 		savedDomains = new ArrayList<Pair<Variable, Domain>>();
 		affectedVariables = new HashSet<Variable>();
 	}
 
+	/**
+	 * Creates an object which restores the current domains of the CSP by
+	 * rewinding its trail.
+	 */
+	public DomainRestoreInfo(CSP csp) {
+		this();
+		this.csp = csp;
+		checkpoint = csp.checkpoint();
+	}
+
 	public void clear() {
 		savedDomains.clear();
 		affectedVariables.clear();
+		if (csp != null) {
+			release();
+			checkpoint = csp.checkpoint();
+			isReleased = false;
+		}
 	}
 
 	public boolean isEmpty() {
-		return savedDomains.isEmpty();
+		return savedDomains.isEmpty() && (csp == null || !csp.hasChangedSince(checkpoint));
 	}
 
 	/**
@@ -69,13 +94,38 @@ public class DomainRestoreInfo {
 		return savedDomains;
 	}
 
+	/**
+	 * Returns the checkpoint of the CSP trail which is used for restoring, or
+	 * -1 if the domains are saved explicitly.
+	 */
+	int getCheckpoint() {
+		return csp != null ? checkpoint : -1;
+	}
+
 	public void restoreDomains(CSP csp) {
+		if (this.csp != null && !isReleased) {
+			csp.restoreDomains(checkpoint);
+			isReleased = true;
+		}
 		for (Pair<Variable, Domain> pair : getSavedDomains())
 			csp.setDomain(pair.getFirst(), pair.getSecond());
 	}
 
+	/**
+	 * Keeps the current domains and releases the checkpoint of the CSP (if
+	 * any), so that the CSP can stop recording domain changes.
+	 */
+	public void release() {
+		if (csp != null && !isReleased) {
+			csp.releaseCheckpoint(checkpoint);
+			isReleased = true;
+		}
+	}
+
 	public String toString() {
 		StringBuffer result = new StringBuffer();
+		if (csp != null && csp.hasChangedSince(checkpoint))
+			result.append("checkpoint=" + checkpoint + " ");
 		for (Pair<Variable, Domain> pair : savedDomains)
 			result.append(pair.getFirst() + "=" + pair.getSecond() + " ");
 		if (emptyDomainObserved)
@@ -1,16 +1,78 @@
 package csc4500.core.search.csp;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
+import csc4500.core.search.framework.Metrics;
 import csc4500.core.util.datastructure.Pair;
 
+/**
+ * Backtracking search with heuristics for variable selection and value
+ * ordering, inference (forward checking or arc consistency) and optionally
+ * conflict-directed backjumping with nogood recording.
+ *
+ * <br>
+ * With backjumping (Prosser 1993), the search maintains for every variable a
+ * conflict set of earlier variables which are responsible for the failures of
+ * its values: variables of violated constraints, variables whose inference
+ * removed values from its domain or emptied another domain, and the conflict
+ * sets of failed subtrees. When all values of a variable have failed, the
+ * search jumps back to the variable assigned last in the conflict set, and the
+ * values of the conflict set are recorded as nogood, if it is small enough.
+ * Nogoods are checked and propagated with watched literals (see
+ * {@link NogoodStore}), so a conflict is not rediscovered in other subtrees.
+ * Responsibility for domain reductions is tracked exactly for forward checking
+ * on binary constraints. Arc consistency and propagating constraints can
+ * derive reductions from earlier reductions, so all assigned variables are
+ * held responsible then, which makes backjumping chronological but keeps
+ * nogoods of failures detected by constraint checks.
+ */
 public class ImprovedBacktrackingStrategy extends BacktrackingStrategy {
+	public static final String METRIC_CONSTRAINT_CHECKS = AC2001Strategy.METRIC_CONSTRAINT_CHECKS;
+	public static final String METRIC_BACKTRACKS = "backtracks";
+	public static final String METRIC_BACKJUMPS = "backjumps";
+	public static final String METRIC_NOGOODS = "nogoods";
+
+	private static final int DEFAULT_NOGOOD_CAPACITY = 10000;
+	private static final int DEFAULT_MAX_NOGOOD_SIZE = 8;
+
 	protected Selection selectionStrategy = Selection.DEFAULT_ORDER;
 	protected Inference inferenceStrategy = Inference.NONE;
 	protected boolean isLCVHeuristicEnabled;
+	protected boolean isBackjumpingEnabled;
+	private int nogoodCapacity = DEFAULT_NOGOOD_CAPACITY;
+	private int maxNogoodSize = DEFAULT_MAX_NOGOOD_SIZE;
+	// engine for Inference.AC2001
+	private final AC2001Strategy arcConsistency = new AC2001Strategy();
+	// constraints of the current CSP with own propagation algorithm
+	private List<PropagatingConstraint> propagators = new ArrayList<PropagatingConstraint>();
+	private long constraintChecks;
+	private long backtracks;
+	private long backjumps;
+	private int numOfNogoods;
+
+	// state of the search with backjumping, by variable index
+	private BitSet[] conflictSets;
+	// earlier variables responsible for domain reductions
+	private BitSet[] culprits;
+	private BitSet assignedVars;
+	private int[] depths;
+	// number of saved culprit sets when the current value of a variable was assigned
+	private int[] saveMarks;
+	private int[] stamps;
+	private int stamp;
+	// variable the search returns to after a failure, -1 if there is no solution
+	private int jumpTarget;
+	// saved culprit sets for backtracking
+	private int[] savedVars = new int[16];
+	private BitSet[] savedCulprits = new BitSet[16];
+	private int numOfSaved;
+	private NogoodStore nogoods;
+	private final NogoodStore.IntPairs prunings = new NogoodStore.IntPairs();
 
 	/** Creates a strategy which is by default equivalent to plain backtracking. */
 	public ImprovedBacktrackingStrategy() {
@@ -44,20 +106,106 @@ public class ImprovedBacktrackingStrategy extends BacktrackingStrategy {
 		isLCVHeuristicEnabled = state;
 	}
 
+	/** Enables conflict-directed backjumping with nogood recording. */
+	public void enableBackjumping(boolean state) {
+		isBackjumpingEnabled = state;
+	}
+
 	/**
-	 * Starts with a constraint propagation if AC-3 is enabled and then calls
-	 * the super class implementation.
+	 * Sets the maximal number of recorded nogoods (0 disables recording) and
+	 * the maximal number of variables of a nogood. Defaults are 10000 and 8.
+	 */
+	public void setNogoodLimits(int capacity, int maxSize) {
+		nogoodCapacity = capacity;
+		maxNogoodSize = maxSize;
+	}
+
+	/**
+	 * Returns the number of constraint checks of the last solve call (checks
+	 * of arc consistency are only counted for {@link Inference#AC2001}), the
+	 * number of variables whose values have all failed, the number of jumps
+	 * over at least one variable, and the number of recorded nogoods.
+	 */
+	public Metrics getMetrics() {
+		Metrics result = new Metrics();
+		result.set(METRIC_CONSTRAINT_CHECKS, constraintChecks + arcConsistency.getNumOfConstraintChecks());
+		result.set(METRIC_BACKTRACKS, backtracks);
+		result.set(METRIC_BACKJUMPS, backjumps);
+		result.set(METRIC_NOGOODS, numOfNogoods);
+		return result;
+	}
+
+	/**
+	 * Starts with a constraint propagation if AC-3 or AC-2001 is enabled and
+	 * then performs a recursive backtracking search like the super class
+	 * implementation (with backjumping if enabled). Arc consistency is
+	 * combined with the propagation algorithms of
+	 * {@link PropagatingConstraint}s.
 	 */
 	public Assignment solve(CSP csp) {
-		if (inferenceStrategy == Inference.AC3) {
-			DomainRestoreInfo info = new AC3Strategy().reduceDomains(csp);
-			if (!info.isEmpty()) {
-				fireStateChanged(csp);
-				if (info.isEmptyDomainFound())
-					return null;
+		if (!prepareSearch(csp))
+			return null;
+		if (isBackjumpingEnabled) {
+			int n = csp.getVariables().size();
+			conflictSets = new BitSet[n];
+			culprits = new BitSet[n];
+			for (int i = 0; i < n; i++) {
+				conflictSets[i] = new BitSet();
+				culprits[i] = new BitSet();
 			}
+			assignedVars = new BitSet(n);
+			depths = new int[n];
+			saveMarks = new int[n];
+			stamps = new int[n];
+			if (nogoodCapacity > 0)
+				nogoods = new NogoodStore(csp, nogoodCapacity, maxNogoodSize);
+		}
+		try {
+			return recursiveBackTrackingSearch(csp, new Assignment(csp));
+		} finally {
+			conflictSets = culprits = null;
+			assignedVars = null;
+			depths = saveMarks = stamps = null;
+			numOfSaved = 0;
+			prunings.clear();
+			if (nogoods != null)
+				numOfNogoods = nogoods.size();
+			nogoods = null;
 		}
-		return super.solve(csp);
+	}
+
+	/**
+	 * Prepares the search and performs the initial constraint propagation.
+	 * Returns false if the CSP turned out to have no solution.
+	 */
+	boolean prepareSearch(CSP csp) {
+		initSearch(csp);
+		if (inferenceStrategy == Inference.AC3 || inferenceStrategy == Inference.AC2001) {
+			DomainRestoreInfo info = reduceDomains(csp);
+			if (!info.isEmptyDomainFound())
+				propagate(propagators, csp, info);
+			if (!info.isEmpty())
+				fireStateChanged(info, csp);
+			// the search starts from the reduced domains
+			info.release();
+			if (info.isEmptyDomainFound())
+				return false;
+		}
+		return true;
+	}
+
+	/** Resets the counters and collects the propagating constraints. */
+	void initSearch(CSP csp) {
+		arcConsistency.resetCounters();
+		constraintChecks = 0;
+		backtracks = 0;
+		backjumps = 0;
+		numOfNogoods = 0;
+		prunings.clear();
+		propagators.clear();
+		for (Constraint constraint : csp.getConstraints())
+			if (constraint instanceof PropagatingConstraint)
+				propagators.add((PropagatingConstraint) constraint);
 	}
 
 	/**
@@ -97,7 +245,8 @@ public class ImprovedBacktrackingStrategy extends BacktrackingStrategy {
 	/**
 	 * Primitive operation, which tries to prune out values from the CSP which
 	 * are not possible anymore when extending the given assignment to a
-	 * solution.
+	 * solution. With backjumping, the recorded nogoods are propagated first,
+	 * and the variables responsible for the reductions are tracked.
 	 * 
 	 * @return An object which provides informations about (1) whether changes
 	 *         have been performed, (2) possibly inferred empty domains , and
@@ -106,15 +255,292 @@ public class ImprovedBacktrackingStrategy extends BacktrackingStrategy {
 	@Override
 	protected DomainRestoreInfo inference(Variable var, Assignment assignment,
 			CSP csp) {
+		if (!isBackjumpingEnabled)
+			return doInference(var, assignment, csp);
+		int x = csp.indexOf(var);
+		// rewinding to this checkpoint also undoes the nogood prunings
+		DomainRestoreInfo result = new DomainRestoreInfo(csp);
+		if (!propagateNogoods(x, assignment, csp)) {
+			result.setEmptyDomainFound(true);
+			return result;
+		}
+		DomainRestoreInfo info = doInference(var, assignment, csp);
+		info.release();
+		if (!updateCulprits(x, result.getCheckpoint(), info.isEmptyDomainFound(), csp))
+			result.setEmptyDomainFound(true);
+		return result;
+	}
+
+	/** Performs the selected inference and the propagation algorithms. */
+	private DomainRestoreInfo doInference(Variable var, Assignment assignment,
+			CSP csp) {
+		DomainRestoreInfo result;
 		switch (inferenceStrategy) {
 		case FORWARD_CHECKING:
-			return doForwardChecking(var, assignment, csp);
+			result = doForwardChecking(var, assignment, csp);
+			break;
 		case AC3:
-			return new AC3Strategy().reduceDomains(var,
+			result = new AC3Strategy().reduceDomains(var,
+					assignment.getAssignment(var), csp);
+			break;
+		case AC2001:
+			result = arcConsistency.reduceDomains(var,
 					assignment.getAssignment(var), csp);
+			break;
 		default:
 			return new DomainRestoreInfo().compactify();
 		}
+		if (!result.isEmptyDomainFound() && !propagators.isEmpty()) {
+			if (inferenceStrategy == Inference.FORWARD_CHECKING) {
+				// global constraints only see domains, not the assignment
+				int i = csp.indexOf(var);
+				int v = csp.getValueIndex(i, assignment.getAssignment(var));
+				if (v != -1 && csp.containsValueIndex(i, v))
+					csp.reduceDomain(i, v);
+				propagate(getPropagators(var, csp), csp, result);
+			} else {
+				propagate(propagators, csp, result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Calls the propagation algorithms of the specified constraints. With arc
+	 * consistency, both kinds of propagation alternate until no domain changes
+	 * anymore.
+	 */
+	private void propagate(List<PropagatingConstraint> constraints, CSP csp,
+			DomainRestoreInfo info) {
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (PropagatingConstraint constraint : constraints) {
+				int checkpoint = csp.checkpoint();
+				boolean consistent = constraint.reduceDomains(csp);
+				changed = changed || csp.hasChangedSince(checkpoint);
+				csp.releaseCheckpoint(checkpoint);
+				if (!consistent) {
+					info.setEmptyDomainFound(true);
+					return;
+				}
+			}
+			if (!changed || inferenceStrategy == Inference.FORWARD_CHECKING)
+				return;
+			DomainRestoreInfo acInfo = reduceDomains(csp);
+			// the reductions are restored with the domains of the caller
+			changed = !acInfo.isEmpty();
+			acInfo.release();
+			if (acInfo.isEmptyDomainFound()) {
+				info.setEmptyDomainFound(true);
+				return;
+			}
+		}
+	}
+
+	/** Establishes arc consistency with the selected algorithm. */
+	private DomainRestoreInfo reduceDomains(CSP csp) {
+		return inferenceStrategy == Inference.AC3 ? new AC3Strategy().reduceDomains(csp)
+				: arcConsistency.reduceDomains(csp);
+	}
+
+	private List<PropagatingConstraint> getPropagators(Variable var, CSP csp) {
+		List<PropagatingConstraint> result = new ArrayList<PropagatingConstraint>();
+		for (Constraint constraint : csp.getConstraints(var))
+			if (constraint instanceof PropagatingConstraint)
+				result.add((PropagatingConstraint) constraint);
+		return result;
+	}
+
+	// //////////////////////////////////////////////////////////////
+	// hooks and helpers for conflict-directed backjumping
+
+	/**
+	 * Starts a new conflict set for the variable (with backjumping).
+	 */
+	@Override
+	protected void onVariableSelected(Variable var, Assignment assignment,
+			CSP csp) {
+		if (isBackjumpingEnabled) {
+			int x = csp.indexOf(var);
+			conflictSets[x].clear();
+			depths[x] = assignment.size();
+		}
+	}
+
+	/**
+	 * Checks the constraints of the variable and counts the constraint checks.
+	 */
+	@Override
+	protected boolean isConsistent(Variable var, Assignment assignment,
+			CSP csp) {
+		int x = csp.indexOf(var);
+		if (isBackjumpingEnabled) {
+			assignedVars.set(x);
+			saveMarks[x] = numOfSaved;
+			// a failure below this value resets the target
+			jumpTarget = x;
+		}
+		return checkConstraints(x, var, assignment, csp);
+	}
+
+	/**
+	 * Restores the culprit sets saved for the removed value and returns true
+	 * if the failure below it has selected an earlier variable to jump back
+	 * to.
+	 */
+	@Override
+	protected boolean isBackjump(Variable var, Assignment assignment,
+			CSP csp) {
+		if (!isBackjumpingEnabled)
+			return false;
+		int x = csp.indexOf(var);
+		while (numOfSaved > saveMarks[x]) {
+			numOfSaved--;
+			culprits[savedVars[numOfSaved]] = savedCulprits[numOfSaved];
+			savedCulprits[numOfSaved] = null;
+		}
+		assignedVars.clear(x);
+		return jumpTarget != x;
+	}
+
+	/**
+	 * Counts the backtrack and, with backjumping, selects the variable to
+	 * return to.
+	 */
+	@Override
+	protected void onAllValuesFailed(Variable var, Assignment assignment,
+			CSP csp) {
+		backtracks++;
+		if (isBackjumpingEnabled)
+			jumpBack(csp.indexOf(var), assignment);
+	}
+
+	/**
+	 * Checks the constraints of the variable. The other assigned variables of a
+	 * violated constraint are added to the conflict set.
+	 */
+	private boolean checkConstraints(int x, Variable var, Assignment assignment, CSP csp) {
+		for (Constraint constraint : csp.getConstraints(var)) {
+			constraintChecks++;
+			if (!assignment.satisfies(constraint)) {
+				if (!isBackjumpingEnabled)
+					return false;
+				for (Variable other : constraint.getScope()) {
+					int i = csp.indexOf(other);
+					if (i != x && assignedVars.get(i))
+						conflictSets[x].set(i);
+				}
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks the recorded nogoods and removes values which they forbid. The
+	 * variables of a violated nogood are added to the conflict set.
+	 */
+	private boolean propagateNogoods(int x, Assignment assignment, CSP csp) {
+		if (nogoods == null || nogoods.size() == 0)
+			return true;
+		prunings.clear();
+		int slot = nogoods.propagate(x, assignment.getValueIndex(x), assignment, csp, prunings);
+		if (slot != -1) {
+			// the prunings are not explained, as the assignment is undone
+			prunings.clear();
+			for (int i : nogoods.getVariables(slot))
+				if (i != x)
+					conflictSets[x].set(i);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Makes the current variable (or all assigned variables, if reductions
+	 * cannot be explained exactly) responsible for the domain reductions made
+	 * after the checkpoint. If inference has failed or a domain has become
+	 * empty, the variables responsible are added to the conflict set and false
+	 * is returned.
+	 */
+	private boolean updateCulprits(int x, int checkpoint, boolean failed, CSP csp) {
+		if (!isBackjumpingEnabled)
+			return !failed;
+		boolean exact = propagators.isEmpty()
+				&& (inferenceStrategy == Inference.NONE || inferenceStrategy == Inference.FORWARD_CHECKING);
+		stamp++;
+		int emptied = -1;
+		int end = csp.getTrailSize();
+		for (int p = checkpoint; p < end; p++) {
+			int y = csp.getChangedVariable(p);
+			if (assignedVars.get(y))
+				continue;
+			if (stamps[y] != stamp) {
+				stamps[y] = stamp;
+				saveCulprits(y);
+				if (exact)
+					culprits[y].set(x);
+				else
+					culprits[y].or(assignedVars);
+			}
+			if (csp.getDomainSize(y) == 0)
+				emptied = y;
+		}
+		for (int k = 0; k < prunings.size(); k++) {
+			int y = prunings.getFirst(k);
+			for (int i : nogoods.getVariables(prunings.getSecond(k)))
+				if (i != y)
+					culprits[y].set(i);
+		}
+		prunings.clear();
+		if (emptied != -1)
+			conflictSets[x].or(culprits[emptied]);
+		else if (failed)
+			conflictSets[x].or(assignedVars);
+		conflictSets[x].clear(x);
+		return !failed && emptied == -1;
+	}
+
+	/** Saves a copy of the culprit set, which is restored on backtracking. */
+	private void saveCulprits(int y) {
+		if (numOfSaved == savedVars.length) {
+			savedVars = Arrays.copyOf(savedVars, 2 * numOfSaved);
+			savedCulprits = Arrays.copyOf(savedCulprits, 2 * numOfSaved);
+		}
+		savedVars[numOfSaved] = y;
+		savedCulprits[numOfSaved++] = culprits[y];
+		culprits[y] = (BitSet) culprits[y].clone();
+	}
+
+	/**
+	 * Computes the conflict set of the variable whose values have all failed,
+	 * records it as nogood and selects the variable to jump back to.
+	 */
+	private void jumpBack(int x, Assignment assignment) {
+		BitSet conflict = (BitSet) conflictSets[x].clone();
+		conflict.or(culprits[x]);
+		conflict.clear(x);
+		List<Integer> vars = new ArrayList<Integer>();
+		for (int i = conflict.nextSetBit(0); i != -1; i = conflict.nextSetBit(i + 1))
+			vars.add(i);
+		Collections.sort(vars, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i, Integer j) {
+				return depths[i] - depths[j];
+			}
+		});
+		if (nogoods != null)
+			nogoods.add(vars, assignment);
+		if (vars.isEmpty()) {
+			jumpTarget = -1;
+		} else {
+			jumpTarget = vars.get(vars.size() - 1);
+			conflict.clear(jumpTarget);
+			conflictSets[jumpTarget].or(conflict);
+			if (depths[jumpTarget] < depths[x] - 1)
+				backjumps++;
+		}
 	}
 
 	// //////////////////////////////////////////////////////////////
@@ -126,7 +552,7 @@ public class ImprovedBacktrackingStrategy extends BacktrackingStrategy {
 		int mrv = Integer.MAX_VALUE;
 		for (Variable var : csp.getVariables()) {
 			if (!assignment.hasAssignmentFor(var)) {
-				int num = csp.getDomain(var).size();
+				int num = csp.getDomainSize(var);
 				if (num <= mrv) {
 					if (num < mrv) {
 						result.clear();
@@ -147,10 +573,13 @@ public class ImprovedBacktrackingStrategy extends BacktrackingStrategy {
 		for (Variable var : vars) {
 			int degree = 0;
 			for (Constraint constraint : csp.getConstraints(var)) {
-				Variable neighbor = csp.getNeighbor(var, constraint);
-				if (!assignment.hasAssignmentFor(neighbor)
-						&& csp.getDomain(neighbor).size() > 1)
-					++degree;
+				for (Variable neighbor : constraint.getScope()) {
+					if (!neighbor.equals(var) && !assignment.hasAssignmentFor(neighbor)
+							&& csp.getDomainSize(neighbor) > 1) {
+						++degree;
+						break;
+					}
+				}
 			}
 			if (degree >= maxDegree) {
 				if (degree > maxDegree) {
@@ -189,10 +618,21 @@ public class ImprovedBacktrackingStrategy extends BacktrackingStrategy {
 		int result = 0;
 		Assignment assignment = new Assignment();
 		assignment.setAssignment(var, value);
+		int i = csp.indexOf(var);
+		int v = csp.getValueIndex(i, value);
 		for (Constraint constraint : csp.getConstraints(var)) {
 			Variable neighbor = csp.getNeighbor(var, constraint);
-			for (Object nValue : csp.getDomain(neighbor)) {
-				assignment.setAssignment(neighbor, nValue);
+			if (neighbor == null)
+				continue;
+			int n = csp.indexOf(neighbor);
+			BinaryRelation relation = csp.getRelation(constraint);
+			if (relation != null && v != -1) {
+				// popcount of the supports in the neighbor's domain
+				result += csp.getDomainSize(n) - relation.countSupports(i, v, csp);
+				continue;
+			}
+			for (int nv = csp.getFirstValueIndex(n); nv != -1; nv = csp.getNextValueIndex(n, nv + 1)) {
+				assignment.setAssignment(neighbor, csp.getValue(n, nv));
 				if (!constraint.isSatisfiedWith(assignment)) {
 					++result;
 				}
@@ -207,15 +647,14 @@ public class ImprovedBacktrackingStrategy extends BacktrackingStrategy {
 	/** Implements forward checking. */
 	private DomainRestoreInfo doForwardChecking(Variable var,
 			Assignment assignment, CSP csp) {
-		DomainRestoreInfo result = new DomainRestoreInfo();
+		DomainRestoreInfo result = new DomainRestoreInfo(csp);
 		for (Constraint constraint : csp.getConstraints(var)) {
 			List<Variable> scope = constraint.getScope();
 			if (scope.size() == 2) {
 				for (Variable neighbor : constraint.getScope()) {
 					if (!assignment.hasAssignmentFor(neighbor)) {
-						if (revise(neighbor, constraint, assignment, csp,
-								result)) {
-							if (csp.getDomain(neighbor).isEmpty()) {
+						if (revise(neighbor, constraint, assignment, csp)) {
+							if (csp.getDomainSize(neighbor) == 0) {
 								result.setEmptyDomainFound(true);
 								return result;
 							}
@@ -228,14 +667,24 @@ public class ImprovedBacktrackingStrategy extends BacktrackingStrategy {
 	}
 
 	private boolean revise(Variable var, Constraint constraint,
-			Assignment assignment, CSP csp, DomainRestoreInfo info) {
+			Assignment assignment, CSP csp) {
 
 		boolean revised = false;
-		for (Object value : csp.getDomain(var)) {
-			assignment.setAssignment(var, value);
+		int i = csp.indexOf(var);
+		BinaryRelation relation = csp.getRelation(constraint);
+		if (relation != null) {
+			int other = i == relation.getVar1() ? relation.getVar2() : relation.getVar1();
+			int otherValue = assignment.getValueIndex(other);
+			if (otherValue != -1) {
+				constraintChecks++;
+				return csp.retainValueIndexes(i, relation.getRow(other, otherValue, csp));
+			}
+		}
+		for (int v = csp.getFirstValueIndex(i); v != -1; v = csp.getNextValueIndex(i, v + 1)) {
+			constraintChecks++;
+			assignment.setAssignment(var, csp.getValue(i, v));
 			if (!constraint.isSatisfiedWith(assignment)) {
-				info.storeDomainFor(var, csp.getDomain(var));
-				csp.removeValueFromDomain(var, value);
+				csp.removeValueIndex(i, v);
 				revised = true;
 			}
 			assignment.removeAssignment(var);
@@ -251,6 +700,6 @@ public class ImprovedBacktrackingStrategy extends BacktrackingStrategy {
 	}
 
 	public enum Inference {
-		NONE, FORWARD_CHECKING, AC3
+		NONE, FORWARD_CHECKING, AC3, AC2001
 	}
 }
@@ -0,0 +1,19 @@
+package csc4500.core.search.csp;
+
+/**
+ * Constraint which can be checked on value indexes directly, without looking
+ * up variables and values in an {@link Assignment}. Assignments created for a
+ * CSP use this fast path in {@link Assignment#isConsistent(java.util.List)}.
+ */
+public interface IndexedConstraint extends Constraint {
+	/**
+	 * Constrains the values that the variables can take on.
+	 * 
+	 * @param csp
+	 *            the CSP which defines variable and value indexes
+	 * @param valueIndexes
+	 *            the value indexes of the assigned values by variable index, -1
+	 *            for unassigned variables (must not be modified)
+	 */
+	boolean isSatisfiedWith(CSP csp, int[] valueIndexes);
+}
@@ -1,9 +1,10 @@
 package csc4500.core.search.csp;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
-import csc4500.core.util.Util;
+import csc4500.core.util.CancelableThread;
 
 /**
  * Artificial Intelligence A Modern Approach (3rd Ed.): Figure 6.8, Page 221.<br>
@@ -30,11 +31,60 @@ import csc4500.core.util.Util;
  * function counts the number of constraints violated by a particular value,
  * given the rest of the current assignment.
  * 
+ * <br>
+ * This implementation maintains the number of violated binary constraints of
+ * every variable and the set of conflicted variables, from which a variable
+ * is selected in constant time. Variables which have been selected once
+ * additionally keep the conflict counts of all their values. After a
+ * reassignment, only the counts of the neighbors are updated (for compiled
+ * relations, only the values whose compatibility changes), so a step costs
+ * time proportional to the degree of the variable instead of the size of the
+ * CSP. Non-binary constraints are evaluated when needed.
+ * 
  * @author Ruediger Lunde
  * @author Mike Stampone
  */
 public class MinConflictsStrategy extends SolutionStrategy {
+	/**
+	 * Binary constraints are checked by compiled relations (see
+	 * {@link CSP#getRelation(Constraint)}) if the CSP has at most this number of
+	 * constraints. For larger networks, the memory of the relations does not
+	 * pay off.
+	 */
+	public static final int MAX_COMPILED_CONSTRAINTS = 100000;
+	/**
+	 * Maximal number of values of the variables of a compiled constraint. A
+	 * relation row then fits into one word. Rows of larger domains cost more
+	 * checks to compute than the search saves.
+	 */
+	public static final int MAX_COMPILED_VALUES = 64;
+
 	private int maxSteps;
+	private Random random;
+
+	// state of the current solve call
+	private CSP csp;
+	private Assignment assignment;
+	private int[] current; // value index by variable
+	// violated binary constraints by variable
+	private int[] conflictCounts;
+	// the same for all values of a variable, null until the variable is selected
+	private int[][] valueCounts;
+	// binary constraints by variable: other variable and constraint
+	private int[] adjStart;
+	private int[] adjVars;
+	private Constraint[] adjConstraints;
+	private BinaryRelation[] adjRelations;
+	// non-binary constraints by variable, and their state
+	private int[] naryStart;
+	private int[] naryIds;
+	private Constraint[] naryConstraints;
+	private boolean[] naryViolated;
+	private int[] naryViolations; // by variable
+	// set of conflicted variables with positions for O(1) update
+	private int[] conflicted;
+	private int[] positions;
+	private int numOfConflicted;
 
 	/**
 	 * Constructs a min-conflicts strategy with a given number of steps allowed
@@ -44,76 +94,316 @@ public class MinConflictsStrategy extends SolutionStrategy {
 	 *            the number of steps allowed before giving up
 	 */
 	public MinConflictsStrategy(int maxSteps) {
+		this(maxSteps, new Random());
+	}
+
+	/**
+	 * Constructs a min-conflicts strategy which takes its random decisions
+	 * from the specified random number generator.
+	 */
+	public MinConflictsStrategy(int maxSteps, Random random) {
 		this.maxSteps = maxSteps;
+		this.random = random;
 	}
 
 	public Assignment solve(CSP csp) {
-		Assignment assignment = generateRandomAssignment(csp);
-		fireStateChanged(assignment, csp);
-		for (int i = 0; i < maxSteps; i++) {
-			if (assignment.isSolution(csp)) {
-				return assignment;
-			} else {
-				List<Variable> vars = getConflictedVariables(assignment, csp);
-				Variable var = Util.selectRandomlyFromList(vars);
-				Object value = getMinConflictValueFor(var, assignment, csp);
-				assignment.setAssignment(var, value);
+		try {
+			if (!init(csp))
+				return null;
+			if (isObserved())
 				fireStateChanged(assignment, csp);
+			for (int i = 0; i < maxSteps && !CancelableThread.currIsCanceled(); i++) {
+				if (numOfConflicted == 0) {
+					return assignment;
+				} else {
+					int var = conflicted[random.nextInt(numOfConflicted)];
+					int old = current[var];
+					setValue(var, getMinConflictValueFor(var));
+					if (isObserved())
+						fireValueChanged(csp.getVariables().get(var), csp.getValue(var, old),
+								csp.getValue(var, current[var]), assignment, csp);
+				}
 			}
+			return null;
+		} finally {
+			clear();
 		}
-		return null;
 	}
 
-	private Assignment generateRandomAssignment(CSP csp) {
-		Assignment assignment = new Assignment();
-		for (Variable var : csp.getVariables()) {
-			Object randomValue = Util.selectRandomlyFromList(csp.getDomain(var)
-					.asList());
-			assignment.setAssignment(var, randomValue);
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Generates a random assignment and counts the conflicts. Returns false if
+	 * a domain is empty.
+	 */
+	private boolean init(CSP csp) {
+		this.csp = csp;
+		int n = csp.getVariables().size();
+		assignment = new Assignment(csp);
+		current = new int[n];
+		for (int x = 0; x < n; x++) {
+			if (csp.getDomainSize(x) == 0)
+				return false;
+			current[x] = getRandomValue(x);
+			assignment.setAssignment(x, current[x]);
+		}
+		buildConstraintNetwork(n);
+		conflictCounts = new int[n];
+		valueCounts = new int[n][];
+		for (int x = 0; x < n; x++)
+			for (int a = adjStart[x]; a < adjStart[x + 1]; a++)
+				if (isViolated(a))
+					conflictCounts[x]++;
+		naryViolated = new boolean[naryConstraints.length];
+		naryViolations = new int[n];
+		for (int c = 0; c < naryConstraints.length; c++) {
+			if (!assignment.satisfies(naryConstraints[c])) {
+				naryViolated[c] = true;
+				for (Variable var : naryConstraints[c].getScope())
+					naryViolations[csp.indexOf(var)]++;
+			}
 		}
-		return assignment;
+		conflicted = new int[n];
+		positions = new int[n];
+		Arrays.fill(positions, -1);
+		numOfConflicted = 0;
+		for (int x = 0; x < n; x++)
+			updateConflicted(x);
+		return true;
 	}
 
-	private List<Variable> getConflictedVariables(Assignment assignment, CSP csp) {
-		List<Variable> result = new ArrayList<Variable>();
-		for (Constraint constraint : csp.getConstraints()) {
-			if (!constraint.isSatisfiedWith(assignment))
-				for (Variable var : constraint.getScope())
-					if (!result.contains(var))
-						result.add(var);
+	/** Builds the adjacency arrays of binary and non-binary constraints. */
+	private void buildConstraintNetwork(int n) {
+		List<Constraint> constraints = csp.getConstraints();
+		boolean compile = constraints.size() <= MAX_COMPILED_CONSTRAINTS;
+		adjStart = new int[n + 1];
+		naryStart = new int[n + 1];
+		int numOfNary = 0;
+		for (Constraint constraint : constraints) {
+			List<Variable> scope = constraint.getScope();
+			if (isBinary(scope)) {
+				adjStart[csp.indexOf(scope.get(0)) + 1]++;
+				adjStart[csp.indexOf(scope.get(1)) + 1]++;
+			} else {
+				for (Variable var : scope)
+					naryStart[csp.indexOf(var) + 1]++;
+				numOfNary++;
+			}
 		}
-		return result;
+		for (int x = 0; x < n; x++) {
+			adjStart[x + 1] += adjStart[x];
+			naryStart[x + 1] += naryStart[x];
+		}
+		adjVars = new int[adjStart[n]];
+		adjConstraints = new Constraint[adjStart[n]];
+		adjRelations = new BinaryRelation[adjStart[n]];
+		naryIds = new int[naryStart[n]];
+		naryConstraints = new Constraint[numOfNary];
+		int[] adjPos = Arrays.copyOf(adjStart, n);
+		int[] naryPos = Arrays.copyOf(naryStart, n);
+		int c = 0;
+		for (Constraint constraint : constraints) {
+			List<Variable> scope = constraint.getScope();
+			if (isBinary(scope)) {
+				int x = csp.indexOf(scope.get(0));
+				int y = csp.indexOf(scope.get(1));
+				BinaryRelation relation = null;
+				if (compile && csp.getNumOfValues(x) <= MAX_COMPILED_VALUES
+						&& csp.getNumOfValues(y) <= MAX_COMPILED_VALUES)
+					relation = csp.getRelation(constraint);
+				int a = adjPos[x]++;
+				adjVars[a] = y;
+				adjConstraints[a] = constraint;
+				adjRelations[a] = relation;
+				a = adjPos[y]++;
+				adjVars[a] = x;
+				adjConstraints[a] = constraint;
+				adjRelations[a] = relation;
+			} else {
+				for (Variable var : scope)
+					naryIds[naryPos[csp.indexOf(var)]++] = c;
+				naryConstraints[c++] = constraint;
+			}
+		}
+	}
+
+	private boolean isBinary(List<Variable> scope) {
+		return scope.size() == 2 && !scope.get(0).equals(scope.get(1));
+	}
+
+	/** Releases the state of the last solve call (except the result). */
+	private void clear() {
+		csp = null;
+		assignment = null;
+		current = conflictCounts = null;
+		valueCounts = null;
+		adjStart = adjVars = naryStart = naryIds = naryViolations = null;
+		adjConstraints = naryConstraints = null;
+		adjRelations = null;
+		naryViolated = null;
+		conflicted = positions = null;
 	}
 
-	private Object getMinConflictValueFor(Variable var, Assignment assignment,
-			CSP csp) {
-		List<Constraint> constraints = csp.getConstraints(var);
-		Assignment duplicate = assignment.copy();
+	private int getRandomValue(int x) {
+		int k = random.nextInt(csp.getDomainSize(x));
+		if (csp.getDomainSize(x) == csp.getNumOfValues(x))
+			return k;
+		int v = csp.getFirstValueIndex(x);
+		while (k-- > 0)
+			v = csp.getNextValueIndex(x, v + 1);
+		return v;
+	}
+
+	/**
+	 * Returns true if the binary constraint of adjacency entry a is violated
+	 * by the current assignment. The constraint is evaluated directly, so no
+	 * relation rows are computed.
+	 */
+	private boolean isViolated(int a) {
+		return !assignment.evaluate(adjConstraints[a]);
+	}
+
+	/** Returns a value with minimal number of conflicts (ties broken randomly). */
+	private int getMinConflictValueFor(int x) {
+		int[] counts = getValueCounts(x);
 		int minConflict = Integer.MAX_VALUE;
-		List<Object> resultCandidates = new ArrayList<Object>();
-		for (Object value : csp.getDomain(var)) {
-			duplicate.setAssignment(var, value);
-			int currConflict = countConflicts(duplicate, constraints);
-			if (currConflict <= minConflict) {
-				if (currConflict < minConflict) {
-					resultCandidates.clear();
-					minConflict = currConflict;
-				}
-				resultCandidates.add(value);
+		int result = -1;
+		int numOfCandidates = 0;
+		boolean hasNary = naryStart[x + 1] > naryStart[x];
+		for (int v = csp.getFirstValueIndex(x); v != -1; v = csp.getNextValueIndex(x, v + 1)) {
+			int currConflict = counts[v];
+			if (hasNary && currConflict <= minConflict) {
+				assignment.setAssignment(x, v);
+				for (int p = naryStart[x]; p < naryStart[x + 1]; p++)
+					if (!assignment.satisfies(naryConstraints[naryIds[p]]))
+						currConflict++;
+			}
+			if (currConflict < minConflict) {
+				minConflict = currConflict;
+				result = v;
+				numOfCandidates = 1;
+			} else if (currConflict == minConflict && random.nextInt(++numOfCandidates) == 0) {
+				result = v;
 			}
 		}
-		if (!resultCandidates.isEmpty())
-			return Util.selectRandomlyFromList(resultCandidates);
-		else
-			return null;
+		if (hasNary)
+			assignment.setAssignment(x, current[x]);
+		return result;
 	}
 
-	private int countConflicts(Assignment assignment,
-			List<Constraint> constraints) {
-		int result = 0;
-		for (Constraint constraint : constraints)
-			if (!constraint.isSatisfiedWith(assignment))
-				result++;
+	/**
+	 * Returns the numbers of violated binary constraints for all values of x,
+	 * which are computed on first request. For constraints with compiled
+	 * relation, they are updated from then on.
+	 */
+	private int[] getValueCounts(int x) {
+		int[] result = valueCounts[x];
+		if (result == null) {
+			result = new int[csp.getNumOfValues(x)];
+			boolean evaluate = false;
+			for (int a = adjStart[x]; a < adjStart[x + 1]; a++) {
+				BinaryRelation relation = adjRelations[a];
+				if (relation != null) {
+					int y = adjVars[a];
+					// values of x compatible with the current value of y
+					long[] row = relation.getRow(y, current[y], csp);
+					long[] domain = csp.getDomainBits(x);
+					for (int w = 0; w < row.length; w++) {
+						long incompatible = ~row[w] & domain[w];
+						while (incompatible != 0) {
+							result[(w << 6) + Long.numberOfTrailingZeros(incompatible)]++;
+							incompatible &= incompatible - 1;
+						}
+					}
+				} else {
+					evaluate = true;
+				}
+			}
+			if (evaluate) {
+				for (int v = csp.getFirstValueIndex(x); v != -1; v = csp.getNextValueIndex(x, v + 1)) {
+					assignment.setAssignment(x, v);
+					for (int a = adjStart[x]; a < adjStart[x + 1]; a++)
+						if (adjRelations[a] == null && isViolated(a))
+							result[v]++;
+				}
+				assignment.setAssignment(x, current[x]);
+			}
+			valueCounts[x] = result;
+		}
 		return result;
 	}
+
+	/** Reassigns x and updates the conflict counts of x and its neighbors. */
+	private void setValue(int x, int value) {
+		int old = current[x];
+		if (value == old)
+			return;
+		for (int a = adjStart[x]; a < adjStart[x + 1]; a++) {
+			if (isViolated(a)) {
+				conflictCounts[x]--;
+				conflictCounts[adjVars[a]]--;
+			}
+		}
+		current[x] = value;
+		assignment.setAssignment(x, value);
+		for (int a = adjStart[x]; a < adjStart[x + 1]; a++) {
+			int y = adjVars[a];
+			if (isViolated(a)) {
+				conflictCounts[x]++;
+				conflictCounts[y]++;
+			}
+			int[] counts = valueCounts[y];
+			if (counts != null) {
+				BinaryRelation relation = adjRelations[a];
+				if (relation != null) {
+					// values of y compatible with the old and the new value of x,
+					// only values whose compatibility changes are updated
+					long[] oldRow = relation.getRow(x, old, csp);
+					long[] newRow = relation.getRow(x, value, csp);
+					for (int w = 0; w < oldRow.length; w++) {
+						long changed = oldRow[w] ^ newRow[w];
+						while (changed != 0) {
+							int bit = Long.numberOfTrailingZeros(changed);
+							changed &= changed - 1;
+							counts[(w << 6) + bit] += (newRow[w] >>> bit & 1L) == 0 ? 1 : -1;
+						}
+					}
+				} else {
+					// updating would cost two checks per value
+					valueCounts[y] = null;
+				}
+			}
+			updateConflicted(y);
+		}
+		for (int p = naryStart[x]; p < naryStart[x + 1]; p++) {
+			int c = naryIds[p];
+			boolean violated = !assignment.satisfies(naryConstraints[c]);
+			if (violated != naryViolated[c]) {
+				naryViolated[c] = violated;
+				for (Variable var : naryConstraints[c].getScope()) {
+					int z = csp.indexOf(var);
+					naryViolations[z] += violated ? 1 : -1;
+					updateConflicted(z);
+				}
+			}
+		}
+		updateConflicted(x);
+	}
+
+	/** Adds the variable to or removes it from the conflicted set. */
+	private void updateConflicted(int x) {
+		boolean isConflicted = conflictCounts[x] > 0 || naryViolations[x] > 0;
+		int pos = positions[x];
+		if (isConflicted && pos == -1) {
+			positions[x] = numOfConflicted;
+			conflicted[numOfConflicted++] = x;
+		} else if (!isConflicted && pos != -1) {
+			int last = conflicted[--numOfConflicted];
+			conflicted[pos] = last;
+			positions[last] = pos;
+			positions[x] = -1;
+		}
+	}
 }
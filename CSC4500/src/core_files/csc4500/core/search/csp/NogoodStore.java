@@ -0,0 +1,202 @@
+package csc4500.core.search.csp;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bounded store of nogoods, i.e. partial assignments (sets of variable/value
+ * index pairs) which cannot be extended to a solution. The store is a ring
+ * buffer: when it is full, the oldest nogood is replaced.
+ *
+ * <br>
+ * Each nogood watches two of its literals which are not satisfied by the
+ * current assignment (scheme of two watched literals known from SAT solvers).
+ * Only the nogoods watching a literal are visited when the literal becomes
+ * true, and watches need not be restored on backtracking. Watch list entries
+ * of replaced nogoods are removed when they are visited.
+ */
+class NogoodStore {
+	private final int capacity;
+	private final int maxSize;
+	// nogoods by slot: variable and value indexes, positions of the watches
+	private final int[][] vars;
+	private final int[][] values;
+	private final int[] watch1;
+	private final int[] watch2;
+	private int nextSlot;
+	private int size;
+	// watch lists by literal (offset of the variable plus value index)
+	private final int[] offsets;
+	private final int[][] watchLists;
+	private final int[] watchListSizes;
+
+	/**
+	 * Creates a store for the value indexes of the specified CSP.
+	 *
+	 * @param capacity
+	 *            maximal number of nogoods
+	 * @param maxSize
+	 *            maximal number of literals of a nogood
+	 */
+	NogoodStore(CSP csp, int capacity, int maxSize) {
+		this.capacity = capacity;
+		this.maxSize = maxSize;
+		vars = new int[capacity][];
+		values = new int[capacity][];
+		watch1 = new int[capacity];
+		watch2 = new int[capacity];
+		int n = csp.getVariables().size();
+		offsets = new int[n + 1];
+		for (int i = 0; i < n; i++)
+			offsets[i + 1] = offsets[i] + csp.getNumOfValues(i);
+		watchLists = new int[offsets[n]][];
+		watchListSizes = new int[offsets[n]];
+	}
+
+	/** Returns the number of nogoods in the store. */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Records the current values of the specified variables as nogood. The
+	 * variables must be assigned, and the current variable must be the one
+	 * assigned last. Returns false if the nogood is too large.
+	 */
+	boolean add(List<Integer> varIndexes, Assignment assignment) {
+		int k = varIndexes.size();
+		if (k == 0 || k > maxSize || capacity == 0)
+			return false;
+		int slot = nextSlot;
+		nextSlot = (nextSlot + 1) % capacity;
+		if (size < capacity)
+			size++;
+		vars[slot] = new int[k];
+		values[slot] = new int[k];
+		for (int p = 0; p < k; p++) {
+			vars[slot][p] = varIndexes.get(p);
+			values[slot][p] = assignment.getValueIndex(vars[slot][p]);
+		}
+		// after backjumping, the two variables assigned last become unassigned first
+		watch1[slot] = k - 1;
+		watch2[slot] = k > 1 ? k - 2 : k - 1;
+		addWatch(slot, watch1[slot]);
+		if (watch2[slot] != watch1[slot])
+			addWatch(slot, watch2[slot]);
+		return true;
+	}
+
+	/** Returns the variable indexes of the nogood (must not be modified). */
+	int[] getVariables(int slot) {
+		return vars[slot];
+	}
+
+	/**
+	 * Updates the watches after the assignment of the specified value and
+	 * removes the values which are forbidden by nogoods with only one
+	 * unsatisfied literal left from the domains. Returns the slot of a nogood
+	 * which is violated by the assignment, or -1. The slots of the nogoods
+	 * which removed values are added to <code>prunings</code> (with the
+	 * index of the reduced variable).
+	 */
+	int propagate(int varIndex, int valueIndex, Assignment assignment, CSP csp, IntPairs prunings) {
+		int lit = offsets[varIndex] + valueIndex;
+		int[] list = watchLists[lit];
+		int i = 0;
+		while (i < watchListSizes[lit]) {
+			int slot = list[i];
+			int p = getWatch(slot, varIndex, valueIndex);
+			if (p == -1) {
+				list[i] = list[--watchListSizes[lit]]; // stale entry
+				continue;
+			}
+			int q = p == watch1[slot] ? watch2[slot] : watch1[slot];
+			int replacement = -1;
+			for (int r = 0; r < vars[slot].length && replacement == -1; r++)
+				if (r != p && r != q && !isTrue(slot, r, assignment))
+					replacement = r;
+			if (replacement != -1) {
+				if (p == watch1[slot])
+					watch1[slot] = replacement;
+				else
+					watch2[slot] = replacement;
+				addWatch(slot, replacement);
+				list[i] = list[--watchListSizes[lit]];
+				continue;
+			}
+			if (q == p || isTrue(slot, q, assignment))
+				return slot;
+			int y = vars[slot][q];
+			if (!assignment.hasAssignmentFor(y) && csp.removeValueIndex(y, values[slot][q]))
+				prunings.add(y, slot);
+			i++;
+		}
+		return -1;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/** Returns the watched position of the literal in the nogood, or -1. */
+	private int getWatch(int slot, int varIndex, int valueIndex) {
+		if (vars[slot] == null)
+			return -1;
+		int p = watch1[slot];
+		if (vars[slot][p] == varIndex && values[slot][p] == valueIndex)
+			return p;
+		p = watch2[slot];
+		if (vars[slot][p] == varIndex && values[slot][p] == valueIndex)
+			return p;
+		return -1;
+	}
+
+	private boolean isTrue(int slot, int p, Assignment assignment) {
+		return assignment.getValueIndex(vars[slot][p]) == values[slot][p];
+	}
+
+	private void addWatch(int slot, int p) {
+		int lit = offsets[vars[slot][p]] + values[slot][p];
+		int[] list = watchLists[lit];
+		if (list == null) {
+			list = new int[4];
+			watchLists[lit] = list;
+		} else if (watchListSizes[lit] == list.length) {
+			list = Arrays.copyOf(list, 2 * list.length);
+			watchLists[lit] = list;
+		}
+		list[watchListSizes[lit]++] = slot;
+	}
+
+	/** Growable list of pairs of ints. */
+	static class IntPairs {
+		private int[] firsts = new int[8];
+		private int[] seconds = new int[8];
+		private int size;
+
+		void add(int first, int second) {
+			if (size == firsts.length) {
+				firsts = Arrays.copyOf(firsts, 2 * size);
+				seconds = Arrays.copyOf(seconds, 2 * size);
+			}
+			firsts[size] = first;
+			seconds[size++] = second;
+		}
+
+		int size() {
+			return size;
+		}
+
+		int getFirst(int i) {
+			return firsts[i];
+		}
+
+		int getSecond(int i) {
+			return seconds[i];
+		}
+
+		void clear() {
+			size = 0;
+		}
+	}
+}
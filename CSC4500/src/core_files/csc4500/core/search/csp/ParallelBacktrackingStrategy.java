@@ -0,0 +1,245 @@
+package csc4500.core.search.csp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import csc4500.core.search.framework.Metrics;
+import csc4500.core.util.CancelableThread;
+
+/**
+ * Backtracking search which explores the search tree with the workers of a
+ * fork/join pool. Variable selection, value ordering and inference are
+ * configured as for {@link ImprovedBacktrackingStrategy}.
+ *
+ * <br>
+ * A worker searches its subtree depth-first on its own copy of the domains
+ * (see {@link CSP#copyDomains()}) and assignment. At decision points above
+ * {@link #setSplitDepth(int) splitDepth}, values are forked as separate tasks
+ * with copies of the state while the worker has few queued tasks; the other
+ * values are explored by the worker itself. Idle workers
+ * steal the oldest tasks of busy workers, which are the ones closest to the
+ * root and so the largest remaining subtrees. Each worker thread uses its own
+ * strategy object for the primitive operations.
+ *
+ * <br>
+ * In mode {@link Mode#FIND_ONE}, all tasks stop as soon as a solution has been
+ * found. In mode {@link Mode#COUNT_ALL}, the whole tree is searched and the
+ * solutions are counted (see {@link #getNumOfSolutions()}); solve returns one
+ * of them. Listeners and the progress stream are only informed about the
+ * initial propagation. Backjumping is not supported, and backtracks are not
+ * counted.
+ */
+public class ParallelBacktrackingStrategy extends ImprovedBacktrackingStrategy {
+	public static final String METRIC_NODES = "nodes";
+	public static final String METRIC_SOLUTIONS = "solutions";
+	public static final String METRIC_TASKS = "tasks";
+
+	private static final int DEFAULT_SPLIT_DEPTH = 12;
+	// split only while the current worker has at most this number of queued tasks
+	private static final int MAX_SURPLUS_TASKS = 2;
+
+	private final ForkJoinPool pool;
+	private Mode mode = Mode.FIND_ONE;
+	private int splitDepth = DEFAULT_SPLIT_DEPTH;
+
+	// state of the current solve call, shared by all workers
+	private Thread caller;
+	private ThreadLocal<ImprovedBacktrackingStrategy> workers;
+	private final List<ImprovedBacktrackingStrategy> allWorkers = new CopyOnWriteArrayList<ImprovedBacktrackingStrategy>();
+	private final AtomicReference<Assignment> solution = new AtomicReference<Assignment>();
+	private final LongAdder numOfSolutions = new LongAdder();
+	private final LongAdder numOfNodes = new LongAdder();
+	private final LongAdder numOfTasks = new LongAdder();
+
+	/** Creates a strategy which uses the common pool and finds one solution. */
+	public ParallelBacktrackingStrategy() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/** Creates a strategy which uses the specified pool. */
+	public ParallelBacktrackingStrategy(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/** Selects whether one solution is searched or all solutions are counted. */
+	public void setMode(Mode mode) {
+		this.mode = mode;
+	}
+
+	/**
+	 * Sets the maximal depth of decision points whose values are distributed
+	 * to tasks. Default value is 12.
+	 */
+	public void setSplitDepth(int splitDepth) {
+		this.splitDepth = splitDepth;
+	}
+
+	/**
+	 * Returns the number of solutions found by the last solve call (all
+	 * solutions in mode {@link Mode#COUNT_ALL}).
+	 */
+	public long getNumOfSolutions() {
+		return numOfSolutions.sum();
+	}
+
+	/**
+	 * Returns the number of search nodes, solutions, tasks and constraint
+	 * checks of the last solve call.
+	 */
+	@Override
+	public Metrics getMetrics() {
+		Metrics result = super.getMetrics();
+		long checks = result.getLong(METRIC_CONSTRAINT_CHECKS);
+		for (ImprovedBacktrackingStrategy worker : allWorkers)
+			checks += worker.getMetrics().getLong(METRIC_CONSTRAINT_CHECKS);
+		result.set(METRIC_CONSTRAINT_CHECKS, checks);
+		result.set(METRIC_NODES, numOfNodes.sum());
+		result.set(METRIC_SOLUTIONS, numOfSolutions.sum());
+		result.set(METRIC_TASKS, numOfTasks.sum());
+		return result;
+	}
+
+	/**
+	 * Performs the initial propagation and then searches the tree in
+	 * parallel.
+	 */
+	@Override
+	public Assignment solve(final CSP csp) {
+		solution.set(null);
+		numOfSolutions.reset();
+		numOfNodes.reset();
+		numOfTasks.reset();
+		allWorkers.clear();
+		if (!prepareSearch(csp))
+			return null;
+		caller = Thread.currentThread();
+		workers = new ThreadLocal<ImprovedBacktrackingStrategy>() {
+			@Override
+			protected ImprovedBacktrackingStrategy initialValue() {
+				ImprovedBacktrackingStrategy result = new ImprovedBacktrackingStrategy();
+				result.setVariableSelection(selectionStrategy);
+				result.setInference(inferenceStrategy);
+				result.enableLCV(isLCVHeuristicEnabled);
+				result.initSearch(csp);
+				allWorkers.add(result);
+				return result;
+			}
+		};
+		try {
+			pool.invoke(new SubtreeSearch(csp.copyDomains(), new Assignment(csp), null, null, 0));
+		} finally {
+			caller = null;
+			workers = null;
+		}
+		return solution.get();
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/** Returns true if the search has to stop. */
+	private boolean isStopped() {
+		if (mode == Mode.FIND_ONE && solution.get() != null)
+			return true;
+		return caller instanceof CancelableThread && ((CancelableThread) caller).isCanceled();
+	}
+
+	/**
+	 * Assigns the value to the variable and searches below. Returns false if
+	 * the search has to stop.
+	 */
+	private boolean explore(Variable var, Object value, CSP csp, Assignment assignment, int depth) {
+		boolean result = true;
+		assignment.setAssignment(var, value);
+		if (assignment.isConsistent(csp.getConstraints(var))) {
+			DomainRestoreInfo info = workers.get().inference(var, assignment, csp);
+			if (!info.isEmptyDomainFound())
+				result = search(csp, assignment, depth + 1);
+			info.restoreDomains(csp);
+		}
+		assignment.removeAssignment(var);
+		return result;
+	}
+
+	/**
+	 * Depth-first search below the current assignment, which forks subtrees
+	 * at shallow decision points. Returns false if the search has to stop.
+	 */
+	private boolean search(CSP csp, Assignment assignment, int depth) {
+		if (isStopped())
+			return false;
+		if (assignment.isComplete(csp.getVariables())) {
+			numOfSolutions.increment();
+			solution.compareAndSet(null, assignment.copy());
+			return mode == Mode.COUNT_ALL;
+		}
+		numOfNodes.increment();
+		ImprovedBacktrackingStrategy worker = workers.get();
+		Variable var = worker.selectUnassignedVariable(assignment, csp);
+		List<Object> values = new ArrayList<Object>();
+		for (Object value : worker.orderDomainValues(var, assignment, csp))
+			values.add(value);
+		List<SubtreeSearch> forked = null;
+		boolean result = true;
+		for (int i = 0; i < values.size() && result; i++) {
+			if (depth < splitDepth && i < values.size() - 1
+					&& ForkJoinTask.getSurplusQueuedTaskCount() <= MAX_SURPLUS_TASKS) {
+				if (forked == null)
+					forked = new ArrayList<SubtreeSearch>();
+				// the forking worker continues with the next value
+				SubtreeSearch task = new SubtreeSearch(csp.copyDomains(), assignment.copy(), var, values.get(i), depth);
+				task.fork();
+				forked.add(task);
+			} else {
+				result = explore(var, values.get(i), csp, assignment, depth);
+			}
+		}
+		if (forked != null)
+			for (SubtreeSearch task : forked)
+				task.join();
+		return result && !isStopped();
+	}
+
+	/**
+	 * Fork/join task which explores a subtree on its own copies of domains and
+	 * assignment. The root task has no variable.
+	 */
+	private class SubtreeSearch extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final CSP csp;
+		private final Assignment assignment;
+		private final Variable var;
+		private final Object value;
+		private final int depth;
+
+		SubtreeSearch(CSP csp, Assignment assignment, Variable var, Object value, int depth) {
+			this.csp = csp;
+			this.assignment = assignment;
+			this.var = var;
+			this.value = value;
+			this.depth = depth;
+		}
+
+		@Override
+		protected void compute() {
+			numOfTasks.increment();
+			if (isStopped())
+				return;
+			if (var == null)
+				search(csp, assignment, depth);
+			else
+				explore(var, value, csp, assignment, depth);
+		}
+	}
+
+	public enum Mode {
+		FIND_ONE, COUNT_ALL
+	}
+}
@@ -0,0 +1,185 @@
+package csc4500.core.search.csp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import csc4500.core.search.framework.Metrics;
+import csc4500.core.util.CancelableThread;
+
+/**
+ * Runs a portfolio of solution strategies concurrently and returns the first
+ * solution found. Which strategy performs best often depends on the instance,
+ * so running several of them (or the same randomized strategy with different
+ * seeds, see {@link MinConflictsStrategy#MinConflictsStrategy(int, java.util.Random)})
+ * can be much faster than any fixed choice.
+ *
+ * <br>
+ * Each member runs in its own {@link CancelableThread} on a copy of the CSP
+ * (see {@link CSP#copyDomains()}), which shares variables, constraints and
+ * compiled relations with the original. When a member has found a solution,
+ * the other members are canceled, and the solve call waits until they have
+ * stopped at their next cancellation check, so the member objects can be
+ * reused by the next call. If a member throws an exception, the other members
+ * are stopped and the exception is rethrown. Results are verified, so members which stop without a solution (e.g.
+ * canceled backtracking returns its partial assignment) never win. The name
+ * of the winning member is available after the call for logging and tuning.
+ * Each member must be a separate strategy object, and listeners of the
+ * members are notified in their threads.
+ */
+public class PortfolioStrategy extends SolutionStrategy {
+	public static final String METRIC_WINNER = "winner";
+	public static final String METRIC_TIME = "timeInMillis";
+	public static final String METRIC_FINISHED = "finishedMembers";
+
+	private List<String> names = new ArrayList<String>();
+	private List<SolutionStrategy> members = new ArrayList<SolutionStrategy>();
+	private String winner;
+	private Metrics metrics = new Metrics();
+
+	/** Creates an empty portfolio. */
+	public PortfolioStrategy() {
+	}
+
+	/**
+	 * Adds a member to the portfolio.
+	 *
+	 * @param name
+	 *            the name which is reported if the member wins
+	 * @param strategy
+	 *            a strategy object which is not used by other members
+	 */
+	public PortfolioStrategy addStrategy(String name, SolutionStrategy strategy) {
+		if (members.contains(strategy))
+			throw new IllegalArgumentException("Strategy already in portfolio: " + name);
+		names.add(name);
+		members.add(strategy);
+		return this;
+	}
+
+	/** Returns the names of the members in the order of addition. */
+	public List<String> getStrategyNames() {
+		return names;
+	}
+
+	/**
+	 * Returns the name of the member which found the solution of the last
+	 * solve call, or null if no member succeeded.
+	 */
+	public String getWinner() {
+		return winner;
+	}
+
+	/**
+	 * Returns the index of the winning member (-1 if none), the time until the
+	 * solution was found, and the number of members which had finished by
+	 * then.
+	 */
+	public Metrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Starts all members and waits until one of them has found a solution,
+	 * all of them have failed, one of them has thrown an exception, or the
+	 * current thread is canceled.
+	 */
+	public Assignment solve(CSP csp) {
+		winner = null;
+		metrics.set(METRIC_WINNER, -1);
+		metrics.set(METRIC_FINISHED, 0);
+		long startTime = System.currentTimeMillis();
+		BlockingQueue<Result> results = new LinkedBlockingQueue<Result>();
+		List<CancelableThread> threads = new ArrayList<CancelableThread>();
+		for (int i = 0; i < members.size(); i++) {
+			CancelableThread thread = new CancelableThread(new Member(i, csp.copyDomains(), results));
+			thread.setName("Portfolio-" + names.get(i));
+			thread.setDaemon(true);
+			threads.add(thread);
+		}
+		for (CancelableThread thread : threads)
+			thread.start();
+		Assignment result = null;
+		Throwable error = null;
+		try {
+			int finished = 0;
+			while (finished < threads.size() && !CancelableThread.currIsCanceled()) {
+				Result next = results.poll(50, TimeUnit.MILLISECONDS);
+				if (next == null)
+					continue;
+				metrics.set(METRIC_FINISHED, ++finished);
+				if (next.error != null) {
+					error = next.error;
+					break;
+				}
+				if (next.assignment != null) {
+					result = next.assignment;
+					winner = names.get(next.member);
+					metrics.set(METRIC_WINNER, next.member);
+					break;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			CancelableThread.cancelAndJoin(threads);
+		}
+		metrics.set(METRIC_TIME, System.currentTimeMillis() - startTime);
+		// only unchecked exceptions can escape from a member
+		if (error instanceof Error)
+			throw (Error) error;
+		if (error != null)
+			throw (RuntimeException) error;
+		if (result != null)
+			fireStateChanged(result, csp);
+		return result;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Solves a copy of the CSP with one member and reports the result or the
+	 * exception.
+	 */
+	private class Member implements Runnable {
+		private final int index;
+		private final CSP csp;
+		private final BlockingQueue<Result> results;
+
+		Member(int index, CSP csp, BlockingQueue<Result> results) {
+			this.index = index;
+			this.csp = csp;
+			this.results = results;
+		}
+
+		@Override
+		public void run() {
+			Assignment assignment = null;
+			try {
+				assignment = members.get(index).solve(csp);
+				if (assignment != null && (CancelableThread.currIsCanceled() || !assignment.isSolution(csp)))
+					assignment = null;
+			} catch (Throwable e) {
+				results.add(new Result(index, null, e));
+				return;
+			}
+			results.add(new Result(index, assignment, null));
+		}
+	}
+
+	private static class Result {
+		final int member;
+		final Assignment assignment;
+		final Throwable error;
+
+		Result(int member, Assignment assignment, Throwable error) {
+			this.member = member;
+			this.assignment = assignment;
+			this.error = error;
+		}
+	}
+}
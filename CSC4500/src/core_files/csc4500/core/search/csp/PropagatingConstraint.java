@@ -0,0 +1,20 @@
+package csc4500.core.search.csp;
+
+/**
+ * Constraint which comes with its own propagation algorithm. This is useful
+ * for global (n-ary) constraints, which are ignored by the arc consistency
+ * algorithms for binary constraints. {@link ImprovedBacktrackingStrategy}
+ * calls the propagation algorithm during inference.
+ */
+public interface PropagatingConstraint extends Constraint {
+	/**
+	 * Removes values from the domains of the scope variables which cannot be
+	 * part of any assignment satisfying this constraint. Domains must be
+	 * changed by methods of the CSP like
+	 * {@link CSP#removeValueIndex(int, int)}, so that the changes can be undone
+	 * by {@link DomainRestoreInfo}.
+	 * 
+	 * @return false if the constraint cannot be satisfied anymore.
+	 */
+	boolean reduceDomains(CSP csp);
+}
@@ -14,6 +14,7 @@ import java.util.List;
  */
 public abstract class SolutionStrategy {
 	List<CSPStateListener> listeners = new ArrayList<CSPStateListener>();
+	private CSPProgressStream progressStream;
 
 	/**
 	 * Adds a CSP state listener to the solution strategy.
@@ -36,16 +37,57 @@ public abstract class SolutionStrategy {
 		listeners.remove(listener);
 	}
 
+	/**
+	 * Sets a stream which reports the progress of the solution strategy
+	 * asynchronously. In contrast to CSP state listeners, the stream does not
+	 * copy assignment and domains at each step.
+	 * 
+	 * @param stream
+	 *            a progress stream or null
+	 */
+	public void setProgressStream(CSPProgressStream stream) {
+		progressStream = stream;
+	}
+
+	/** Returns true if listeners or a progress stream follow the progress. */
+	protected boolean isObserved() {
+		return !listeners.isEmpty() || progressStream != null;
+	}
+
 	protected void fireStateChanged(CSP csp) {
 		for (CSPStateListener listener : listeners)
 			listener.stateChanged(csp.copyDomains());
 	}
 
 	protected void fireStateChanged(Assignment assignment, CSP csp) {
+		if (progressStream != null)
+			progressStream.stateChanged(assignment, csp);
 		for (CSPStateListener listener : listeners)
 			listener.stateChanged(assignment.copy(), csp.copyDomains());
 	}
 
+	/**
+	 * Informs about the domain reductions which have been made since the
+	 * restore info was created.
+	 */
+	protected void fireStateChanged(DomainRestoreInfo info, CSP csp) {
+		if (progressStream != null)
+			progressStream.domainsChanged(info, csp);
+		fireStateChanged(csp);
+	}
+
+	/**
+	 * Informs about a changed value of a variable (null stands for
+	 * unassigned). Listeners are only informed about new values.
+	 */
+	protected void fireValueChanged(Variable var, Object oldValue, Object newValue, Assignment assignment, CSP csp) {
+		if (progressStream != null)
+			progressStream.valueChanged(var, oldValue, newValue, assignment, csp);
+		if (newValue != null)
+			for (CSPStateListener listener : listeners)
+				listener.stateChanged(assignment.copy(), csp.copyDomains());
+	}
+
 	/**
 	 * Returns a solution to the specified CSP, which specifies values for all
 	 * the variables such that the constraints are satisfied.
@@ -0,0 +1,12 @@
+package csc4500.core.search.csp;
+
+/**
+ * A solution strategy factory creates new strategy objects. Solvers which
+ * work on several sub-problems concurrently need a separate strategy for each
+ * thread.
+ */
+public interface SolutionStrategyFactory {
+
+	SolutionStrategy createSolutionStrategy();
+
+}
@@ -1,11 +1,10 @@
 package csc4500.core.search.csp;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Queue;
-
-import csc4500.core.util.Util;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * 
@@ -36,127 +35,305 @@ import csc4500.core.util.Util;
  * If the CSP has a solution, we will find it in linear time; if not, we will
  * detect a contradiction.
  * 
+ * <br>
+ * This implementation solves forests: the constraint graph is decomposed into
+ * its connected components, each of which is ordered by breadth-first search
+ * from its first variable. Graph and order are stored in index arrays, so
+ * the whole solve takes time linear in the number of variables and
+ * constraints (times the cost of the arc revisions). Directional arc
+ * consistency works on a copy of the domains (see {@link CSP#copyDomains()})
+ * and evaluates indexed constraints (see {@link IndexedConstraint}) on value
+ * indexes without creating assignments. Large forests are split into ranges
+ * of components which are solved in parallel by the workers of a fork/join
+ * pool.
+ * 
+ * <br>
+ * Only unary and binary constraints are supported. If the constraint graph
+ * contains a cycle (including two constraints between the same variables),
+ * an {@link IllegalArgumentException} is thrown.
+ * 
  * @author Anurag Rai
  * 
  */
 public class TreeCSPSolver extends SolutionStrategy {
+	// ranges with more variables are split into separate tasks
+	private static final int MAX_TASK_SIZE = 20000;
+
+	private final ForkJoinPool pool;
+
+	// state of the current solve call
+	private CSP csp;
+	// variables component by component in BFS order, start positions of the
+	// components (followed by the number of variables)
+	private int[] order;
+	private int[] componentStarts;
+	private int numOfComponents;
+	// parent and constraint to the parent by variable index (-1 / null for roots)
+	private int[] parents;
+	private Constraint[] parentConstraints;
+	// value indexes of the solution, also used to evaluate indexed constraints
+	private int[] valueIndexes;
+	private volatile boolean isFailed;
+
+	/** Creates a solver which uses the common pool for large forests. */
+	public TreeCSPSolver() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/** Creates a solver which uses the specified pool for large forests. */
+	public TreeCSPSolver(ForkJoinPool pool) {
+		this.pool = pool;
+	}
 
 	@Override
 	public Assignment solve(CSP csp) {
+		Assignment result = new Assignment(csp);
+		return solve(csp.copyDomains(), null, result) ? result : null;
+	}
 
-		Assignment assignment = new Assignment();
-		// Get the list of Variables from CSP to calculate the size
-		List<Variable> l = csp.getVariables();
-		// Calculate the size
-		int n = l.size();
-		// Select a random root from the List of Vaiables
-		Variable root = Util.selectRandomlyFromList(l);
-		// Sort the variables in topological order
-		l = topologicalSort(csp, l, root);
-
-		DomainRestoreInfo info = new DomainRestoreInfo();
-
-		for (int i = n - 1; i >= 1; i--) {
-			Variable var = l.get(i);
-			// get constraints to find the parent
-			for (Constraint constraint : csp.getConstraints(var)) {
-				if (constraint.getScope().size() == 2) {
-					// if the neighbour is parent
-					if (csp.getNeighbor(var, constraint) == l.get(parent[i])) {
-						// make it Arc Consistent
-						if (makeArcConsistent(l.get(parent[i]), var, constraint, csp, info)) {
-							if (csp.getDomain(l.get(parent[i])).isEmpty()) {
-								info.setEmptyDomainFound(true);
-								assignment = null;
-								return assignment;
-							}
-						}
-					}
-				}
-			}
+	/**
+	 * Solves the forest which remains when the excluded variables and all
+	 * constraints involving them are removed from the CSP, and adds the values
+	 * of the remaining variables to the assignment. The domains of the CSP are
+	 * reduced in place, so callers pass a copy (see {@link CSP#copyDomains()}).
+	 * Variables are not added to another CSP, so several threads can solve
+	 * copies of the same CSP at the same time.
+	 * 
+	 * @param excluded
+	 *            flags by variable index, or null
+	 * @return false if the forest has no solution
+	 */
+	boolean solve(CSP csp, boolean[] excluded, Assignment assignment) {
+		this.csp = csp;
+		isFailed = false;
+		try {
+			int n = csp.getVariables().size();
+			valueIndexes = new int[n];
+			Arrays.fill(valueIndexes, -1);
+			List<Constraint> unaryConstraints = topologicalSort(excluded);
+			if (!applyUnaryConstraints(unaryConstraints))
+				return false;
+			if (order.length <= MAX_TASK_SIZE)
+				solveComponents(0, numOfComponents);
+			else
+				pool.invoke(new ForestSearch(0, numOfComponents));
+			if (isFailed)
+				return false;
+			for (int k = 0; k < order.length; k++)
+				assignment.setAssignment(order[k], valueIndexes[order[k]]);
+			return true;
+		} finally {
+			this.csp = null;
+			order = null;
+			componentStarts = null;
+			parents = null;
+			parentConstraints = null;
+			valueIndexes = null;
 		}
-		boolean assignment_consistent = false;
-		for (int i = 0; i < n; i++) {
-			Variable var = l.get(i);
-			assignment_consistent = false;
-			for (Object value : csp.getDomain(var)) {
-				assignment.setAssignment(var, value);
-				if (assignment.isConsistent(csp.getConstraints(var))) {
-					assignment_consistent = true;
-					break;
-				}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Builds the constraint graph, decomposes it into components and orders
+	 * each of them by breadth-first search. Excluded variables and their
+	 * constraints are left out. Returns the unary constraints.
+	 */
+	private List<Constraint> topologicalSort(boolean[] excluded) {
+		int n = csp.getVariables().size();
+		List<Constraint> unaryConstraints = new ArrayList<Constraint>();
+		// adjacency lists in compressed form: edges of variable i are found
+		// from edgeStarts[i] to edgeStarts[i + 1]
+		int[] edgeStarts = new int[n + 1];
+		List<Constraint> constraints = csp.getConstraints();
+		if (excluded != null) {
+			constraints = new ArrayList<Constraint>();
+			for (Constraint constraint : csp.getConstraints())
+				if (!involvesExcluded(constraint, excluded))
+					constraints.add(constraint);
+		}
+		for (Constraint constraint : constraints) {
+			List<Variable> scope = constraint.getScope();
+			if (scope.size() == 2) {
+				edgeStarts[csp.indexOf(scope.get(0)) + 1]++;
+				edgeStarts[csp.indexOf(scope.get(1)) + 1]++;
+			} else if (scope.size() == 1) {
+				unaryConstraints.add(constraint);
+			} else {
+				throw new IllegalArgumentException("Constraint with more than two variables: " + constraint);
 			}
-			if (!assignment_consistent) {
-				assignment = null;
-				return assignment;
+		}
+		for (int i = 0; i < n; i++)
+			edgeStarts[i + 1] += edgeStarts[i];
+		int[] neighbors = new int[edgeStarts[n]];
+		Constraint[] edgeConstraints = new Constraint[edgeStarts[n]];
+		int[] next = Arrays.copyOf(edgeStarts, n);
+		for (Constraint constraint : constraints) {
+			List<Variable> scope = constraint.getScope();
+			if (scope.size() == 2) {
+				int x = csp.indexOf(scope.get(0));
+				int y = csp.indexOf(scope.get(1));
+				neighbors[next[x]] = y;
+				edgeConstraints[next[x]++] = constraint;
+				neighbors[next[y]] = x;
+				edgeConstraints[next[y]++] = constraint;
 			}
 		}
-		return assignment;
-	}
 
-	//
-	// Supporting Code
-	protected int[] parent;
-
-	// Since the graph is a tree, topologicalSort is:
-	// Level order traversal of the tree OR BFS on tree OR Pre-oder
-	protected List<Variable> topologicalSort(CSP csp, List<Variable> l, Variable root) {
-		// Track the parents
-		parent = new int[l.size()];
-		
-		List<Variable> result = new ArrayList<>();
-		Queue<Variable> q = new LinkedList<>(); // FIFO-Queue
-
-		int i = 1;
-		int parent_index = 0;
-		int node_count = 0;
-		q.add(root);
-
-		while (!q.isEmpty()) {
-
-			node_count = q.size(); // get number of nodes in the level
-
-			while (node_count > 0) {
-
-				Variable var = q.remove();
-				result.add(var);
-				// for each binary constraint of the Variable
-				for (Constraint constraint : csp.getConstraints(var)) {
-					Variable neighbour = csp.getNeighbor(var, constraint);
-					// check if neighbour is root
-					if (result.contains(neighbour))
+		order = new int[n];
+		componentStarts = new int[n + 1];
+		numOfComponents = 0;
+		parents = new int[n];
+		parentConstraints = new Constraint[n];
+		boolean[] visited = new boolean[n];
+		int size = 0;
+		for (int root = 0; root < n; root++) {
+			if (visited[root] || excluded != null && excluded[root])
+				continue;
+			componentStarts[numOfComponents++] = size;
+			visited[root] = true;
+			parents[root] = -1;
+			order[size++] = root;
+			for (int k = size - 1; k < size; k++) {
+				int x = order[k];
+				for (int e = edgeStarts[x]; e < edgeStarts[x + 1]; e++) {
+					if (edgeConstraints[e] == parentConstraints[x])
 						continue;
-					parent[i] = parent_index;
-					i++;
-					q.add(neighbour);
+					int y = neighbors[e];
+					if (visited[y])
+						throw new IllegalArgumentException("Constraint graph is not a forest.");
+					visited[y] = true;
+					parents[y] = x;
+					parentConstraints[y] = edgeConstraints[e];
+					order[size++] = y;
 				}
-				node_count--;
-				parent_index++;
 			}
 		}
-		return result;
+		componentStarts[numOfComponents] = size;
+		if (size < n)
+			order = Arrays.copyOf(order, size);
+		return unaryConstraints;
+	}
+
+	private boolean involvesExcluded(Constraint constraint, boolean[] excluded) {
+		for (Variable var : constraint.getScope())
+			if (excluded[csp.indexOf(var)])
+				return true;
+		return false;
+	}
+
+	/** Removes the values which violate unary constraints from the domains. */
+	private boolean applyUnaryConstraints(List<Constraint> constraints) {
+		Assignment assignment = new Assignment();
+		for (Constraint constraint : constraints) {
+			Variable var = constraint.getScope().get(0);
+			int x = csp.indexOf(var);
+			for (int v = csp.getFirstValueIndex(x); v != -1; v = csp.getNextValueIndex(x, v + 1)) {
+				assignment.setAssignment(var, csp.getValue(x, v));
+				if (!constraint.isSatisfiedWith(assignment))
+					csp.removeValueIndex(x, v);
+			}
+			if (csp.getDomainSize(x) == 0)
+				return false;
+		}
+		return true;
 	}
 
-	protected boolean makeArcConsistent(Variable xi, Variable xj, Constraint constraint, CSP csp,
-			DomainRestoreInfo info) {
-		boolean revised = false;
+	/**
+	 * Solves the components in the specified range. Each component is made
+	 * directionally arc consistent from the leaves to the root, and then
+	 * assigned from the root to the leaves.
+	 */
+	private void solveComponents(int fromComponent, int toComponent) {
+		// for constraints without index support
 		Assignment assignment = new Assignment();
-		for (Object iValue : csp.getDomain(xi)) {
-			assignment.setAssignment(xi, iValue);
-			boolean consistentExtensionFound = false;
-			for (Object jValue : csp.getDomain(xj)) {
-				assignment.setAssignment(xj, jValue);
-				if (constraint.isSatisfiedWith(assignment)) {
-					consistentExtensionFound = true;
-					break;
+		for (int c = fromComponent; c < toComponent && !isFailed; c++) {
+			int start = componentStarts[c];
+			int end = componentStarts[c + 1];
+			for (int k = end - 1; k > start; k--) {
+				int y = order[k];
+				int x = parents[y];
+				if (csp.getDomainSize(y) == 0 || !makeArcConsistent(x, y, parentConstraints[y], assignment)) {
+					isFailed = true;
+					return;
 				}
 			}
-			if (!consistentExtensionFound) {
-				info.storeDomainFor(xi, csp.getDomain(xi));
-				csp.removeValueFromDomain(xi, iValue);
-				revised = true;
+			int root = order[start];
+			if (csp.getDomainSize(root) == 0) {
+				isFailed = true;
+				return;
+			}
+			valueIndexes[root] = csp.getFirstValueIndex(root);
+			for (int k = start + 1; k < end; k++) {
+				int y = order[k];
+				int x = parents[y];
+				int value = -1;
+				for (int v = csp.getFirstValueIndex(y); v != -1 && value == -1; v = csp.getNextValueIndex(y, v + 1))
+					if (allows(x, valueIndexes[x], y, v, parentConstraints[y], assignment))
+						value = v;
+				valueIndexes[y] = value;
+			}
+		}
+	}
+
+	/**
+	 * Removes the values of the parent which are not supported by a value of
+	 * the child. Returns false if the domain of the parent becomes empty.
+	 */
+	private boolean makeArcConsistent(int x, int y, Constraint constraint, Assignment assignment) {
+		for (int xv = csp.getFirstValueIndex(x); xv != -1; xv = csp.getNextValueIndex(x, xv + 1)) {
+			boolean supported = false;
+			for (int yv = csp.getFirstValueIndex(y); yv != -1 && !supported; yv = csp.getNextValueIndex(y, yv + 1))
+				supported = allows(x, xv, y, yv, constraint, assignment);
+			if (!supported)
+				csp.removeValueIndex(x, xv);
+		}
+		return csp.getDomainSize(x) > 0;
+	}
+
+	/** Checks the binary constraint for the specified values. */
+	private boolean allows(int x, int xv, int y, int yv, Constraint constraint, Assignment assignment) {
+		if (constraint instanceof IndexedConstraint) {
+			// entries of variables which are not yet assigned are overwritten later
+			valueIndexes[x] = xv;
+			valueIndexes[y] = yv;
+			return ((IndexedConstraint) constraint).isSatisfiedWith(csp, valueIndexes);
+		}
+		assignment.setAssignment(csp.getVariables().get(x), csp.getValue(x, xv));
+		assignment.setAssignment(csp.getVariables().get(y), csp.getValue(y, yv));
+		return constraint.isSatisfiedWith(assignment);
+	}
+
+	/**
+	 * Fork/join task which solves a range of components, splitting it while it
+	 * contains many variables.
+	 */
+	private class ForestSearch extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int fromComponent;
+		private final int toComponent;
+
+		ForestSearch(int fromComponent, int toComponent) {
+			this.fromComponent = fromComponent;
+			this.toComponent = toComponent;
+		}
+
+		@Override
+		protected void compute() {
+			int size = componentStarts[toComponent] - componentStarts[fromComponent];
+			if (size <= MAX_TASK_SIZE || toComponent - fromComponent == 1) {
+				solveComponents(fromComponent, toComponent);
+			} else {
+				// split at the component which contains the middle variable
+				int middle = componentStarts[fromComponent] + size / 2;
+				int c = Arrays.binarySearch(componentStarts, fromComponent, toComponent, middle);
+				if (c < 0)
+					c = -c - 2;
+				c = Math.max(c, fromComponent + 1);
+				invokeAll(new ForestSearch(fromComponent, c), new ForestSearch(c, toComponent));
 			}
 		}
-		return revised;
 	}
 }
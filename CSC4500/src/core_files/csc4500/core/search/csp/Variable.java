@@ -22,6 +22,8 @@ public class Variable {
 
 	@Override
 	public boolean equals(Object obj) {
+		if (obj == this)
+			return true;
 		if (obj == null)
 			return false;
 		if (obj.getClass() == getClass())
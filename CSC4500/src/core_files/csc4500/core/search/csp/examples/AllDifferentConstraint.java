@@ -0,0 +1,299 @@
+package csc4500.core.search.csp.examples;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import csc4500.core.search.csp.Assignment;
+import csc4500.core.search.csp.CSP;
+import csc4500.core.search.csp.PropagatingConstraint;
+import csc4500.core.search.csp.Variable;
+
+/**
+ * Represents a global constraint which forbids equal values for any two of its
+ * variables. Compared to a clique of binary not-equal constraints, it is one
+ * constraint object, and propagation establishes generalized arc consistency
+ * (Regin 1994): a maximum matching between variables and values is computed,
+ * and a value is removed from a domain if the corresponding edge belongs to no
+ * maximum matching. Such edges are neither part of the matching, nor on an
+ * alternating cycle, nor on an alternating path starting at a free value.
+ * Propagation starts with the matching found last, so after small domain
+ * changes only few augmenting paths have to be searched.
+ */
+public class AllDifferentConstraint implements PropagatingConstraint {
+
+	private List<Variable> scope;
+	// value ids by scope position, used as initial matching
+	private volatile int[] lastMatching;
+
+	public AllDifferentConstraint(List<Variable> vars) {
+		scope = new ArrayList<Variable>(vars);
+	}
+
+	@Override
+	public List<Variable> getScope() {
+		return scope;
+	}
+
+	@Override
+	public boolean isSatisfiedWith(Assignment assignment) {
+		HashSet<Object> values = new HashSet<Object>();
+		for (Variable var : scope) {
+			Object value = assignment.getAssignment(var);
+			if (value != null && !values.add(value))
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean reduceDomains(CSP csp) {
+		ValueGraph graph = new ValueGraph(csp);
+		if (!graph.findMaximumMatching(lastMatching))
+			return false;
+		lastMatching = graph.match;
+		graph.removeInconsistentValues();
+		return true;
+	}
+
+	/**
+	 * Bipartite graph of the scope variables and the values of their domains.
+	 * Values are identified by value index if all variables share the same
+	 * value indexes, and are numbered by the graph otherwise. Vertices 0 to k-1
+	 * are the variables, vertices k to k+m-1 the values.
+	 */
+	private class ValueGraph {
+		final CSP csp;
+		final int k;
+		int m;
+		final int[] vars;
+		// edges by variable (value id and value index)
+		final int[] varStart;
+		int[] edgeIds;
+		int[] edgeValues;
+		// edges by value (variable)
+		int[] valueStart;
+		int[] valueVars;
+		// matched value id by variable and matched variable by value, or -1
+		int[] match;
+		int[] owner;
+		int[] visited;
+		int stamp;
+
+		ValueGraph(CSP csp) {
+			this.csp = csp;
+			k = scope.size();
+			vars = new int[k];
+			boolean shared = true;
+			int numOfEdges = 0;
+			for (int x = 0; x < k; x++) {
+				vars[x] = csp.indexOf(scope.get(x));
+				shared = shared && csp.hasSameValueIndexes(vars[0], vars[x]);
+				numOfEdges += csp.getDomainSize(vars[x]);
+			}
+			HashMap<Object, Integer> ids = shared ? null : new HashMap<Object, Integer>();
+			varStart = new int[k + 1];
+			edgeIds = new int[numOfEdges];
+			edgeValues = new int[numOfEdges];
+			int e = 0;
+			for (int x = 0; x < k; x++) {
+				varStart[x] = e;
+				int i = vars[x];
+				for (int v = csp.getFirstValueIndex(i); v != -1; v = csp.getNextValueIndex(i, v + 1)) {
+					int id = v;
+					if (!shared) {
+						Object value = csp.getValue(i, v);
+						Integer known = ids.get(value);
+						if (known == null) {
+							known = ids.size();
+							ids.put(value, known);
+						}
+						id = known;
+					}
+					edgeIds[e] = id;
+					edgeValues[e++] = v;
+				}
+			}
+			varStart[k] = e;
+			m = shared ? (k > 0 ? csp.getNumOfValues(vars[0]) : 0) : ids.size();
+			valueStart = new int[m + 1];
+			valueVars = new int[numOfEdges];
+			for (e = 0; e < numOfEdges; e++)
+				valueStart[edgeIds[e] + 1]++;
+			for (int id = 0; id < m; id++)
+				valueStart[id + 1] += valueStart[id];
+			int[] pos = Arrays.copyOf(valueStart, m);
+			for (int x = 0; x < k; x++)
+				for (e = varStart[x]; e < varStart[x + 1]; e++)
+					valueVars[pos[edgeIds[e]]++] = x;
+		}
+
+		/**
+		 * Computes a matching which covers all variables, starting with the
+		 * still valid edges of the hint. Returns false if there is none.
+		 */
+		boolean findMaximumMatching(int[] hint) {
+			match = new int[k];
+			owner = new int[m];
+			visited = new int[m];
+			Arrays.fill(match, -1);
+			Arrays.fill(owner, -1);
+			if (hint != null && hint.length == k) {
+				for (int x = 0; x < k; x++) {
+					int id = hint[x];
+					if (id != -1 && id < m && owner[id] == -1 && hasEdge(x, id)) {
+						match[x] = id;
+						owner[id] = x;
+					}
+				}
+			}
+			for (int x = 0; x < k; x++) {
+				if (match[x] == -1) {
+					stamp++;
+					if (!augment(x))
+						return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Removes the values whose edges are not in any maximum matching. In
+		 * the directed graph, matched edges point from the variable to the
+		 * value and all other edges from the value to the variable.
+		 */
+		void removeInconsistentValues() {
+			boolean[] reached = reachFromFreeValues();
+			int[] component = computeComponents();
+			for (int x = 0; x < k; x++) {
+				for (int e = varStart[x]; e < varStart[x + 1]; e++) {
+					int id = edgeIds[e];
+					if (id != match[x] && !reached[id] && component[x] != component[k + id])
+						csp.removeValueIndex(vars[x], edgeValues[e]);
+				}
+			}
+		}
+
+		private boolean hasEdge(int x, int id) {
+			for (int e = varStart[x]; e < varStart[x + 1]; e++)
+				if (edgeIds[e] == id)
+					return true;
+			return false;
+		}
+
+		/** Searches an augmenting path starting at variable x. */
+		private boolean augment(int x) {
+			for (int e = varStart[x]; e < varStart[x + 1]; e++) {
+				int id = edgeIds[e];
+				if (visited[id] != stamp) {
+					visited[id] = stamp;
+					if (owner[id] == -1 || augment(owner[id])) {
+						match[x] = id;
+						owner[id] = x;
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Marks the values which can be reached from a free value on an
+		 * alternating path.
+		 */
+		private boolean[] reachFromFreeValues() {
+			boolean[] result = new boolean[m];
+			int[] queue = new int[m];
+			int head = 0;
+			int tail = 0;
+			for (int id = 0; id < m; id++) {
+				if (owner[id] == -1 && valueStart[id + 1] > valueStart[id]) {
+					result[id] = true;
+					queue[tail++] = id;
+				}
+			}
+			while (head < tail) {
+				int id = queue[head++];
+				for (int p = valueStart[id]; p < valueStart[id + 1]; p++) {
+					int next = match[valueVars[p]];
+					if (next != id && !result[next]) {
+						result[next] = true;
+						queue[tail++] = next;
+					}
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * Computes the strongly connected components of the directed graph
+		 * (Tarjan's algorithm with explicit stacks).
+		 */
+		private int[] computeComponents() {
+			int n = k + m;
+			int[] component = new int[n];
+			int[] index = new int[n];
+			int[] low = new int[n];
+			int[] next = new int[n];
+			boolean[] onStack = new boolean[n];
+			int[] stack = new int[n];
+			int[] calls = new int[n];
+			Arrays.fill(index, -1);
+			int counter = 0;
+			int components = 0;
+			int sp = 0;
+			for (int s = 0; s < n; s++) {
+				if (index[s] != -1)
+					continue;
+				int cp = 0;
+				calls[cp++] = s;
+				index[s] = low[s] = counter++;
+				stack[sp++] = s;
+				onStack[s] = true;
+				while (cp > 0) {
+					int u = calls[cp - 1];
+					int w = nextSuccessor(u, next);
+					if (w != -1) {
+						if (index[w] == -1) {
+							index[w] = low[w] = counter++;
+							stack[sp++] = w;
+							onStack[w] = true;
+							calls[cp++] = w;
+						} else if (onStack[w]) {
+							low[u] = Math.min(low[u], index[w]);
+						}
+					} else {
+						cp--;
+						if (low[u] == index[u]) {
+							int v;
+							do {
+								v = stack[--sp];
+								onStack[v] = false;
+								component[v] = components;
+							} while (v != u);
+							components++;
+						}
+						if (cp > 0)
+							low[calls[cp - 1]] = Math.min(low[calls[cp - 1]], low[u]);
+					}
+				}
+			}
+			return component;
+		}
+
+		/** Returns the next successor of vertex u, or -1. */
+		private int nextSuccessor(int u, int[] next) {
+			if (u < k)
+				return next[u]++ == 0 ? k + match[u] : -1;
+			int id = u - k;
+			while (valueStart[id] + next[u] < valueStart[id + 1]) {
+				int x = valueVars[valueStart[id] + next[u]++];
+				if (match[x] != id)
+					return x;
+			}
+			return -1;
+		}
+	}
+}
@@ -4,7 +4,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 import csc4500.core.search.csp.Assignment;
-import csc4500.core.search.csp.Constraint;
+import csc4500.core.search.csp.CSP;
+import csc4500.core.search.csp.IndexedConstraint;
 import csc4500.core.search.csp.Variable;
 
 /**
@@ -12,7 +13,7 @@ import csc4500.core.search.csp.Variable;
  * 
  * @author Ruediger Lunde
  */
-public class DiffNotEqualConstraint implements Constraint {
+public class DiffNotEqualConstraint implements IndexedConstraint {
 
 	private Variable var1;
 	private Variable var2;
@@ -42,4 +43,20 @@ public class DiffNotEqualConstraint implements Constraint {
 				value2 instanceof Integer &&
 				Math.abs((Integer) value1 - (Integer) value2) != diff);
 	}
+
+	@Override
+	public boolean isSatisfiedWith(CSP csp, int[] valueIndexes) {
+		int i1 = csp.indexOf(var1);
+		int i2 = csp.indexOf(var2);
+		int v1 = valueIndexes[i1];
+		int v2 = valueIndexes[i2];
+		if (v1 == -1 || v2 == -1)
+			return true;
+		if (diff == 0 && csp.hasSameValueIndexes(i1, i2))
+			return v1 != v2;
+		Object value1 = csp.getValue(i1, v1);
+		Object value2 = csp.getValue(i2, v2);
+		return value1 instanceof Integer && value2 instanceof Integer
+				&& Math.abs((Integer) value1 - (Integer) value2) != diff;
+	}
 }
@@ -7,6 +7,15 @@ import csc4500.core.search.csp.Variable;
 public class NQueensCSP extends CSP {
 
 	public NQueensCSP(int size) {
+		this(size, false);
+	}
+
+	/**
+	 * Creates the N-Queens problem. If <code>useAllDifferent</code> is true,
+	 * one {@link AllDifferentConstraint} forbids queens in the same row
+	 * instead of one binary constraint per pair of queens.
+	 */
+	public NQueensCSP(int size, boolean useAllDifferent) {
 		for (int i = 0; i < size; i++)
 			addVariable(new Variable("Q" + (i+1)));
 		
@@ -18,11 +27,14 @@ public class NQueensCSP extends CSP {
 		for (Variable var : getVariables())
 			setDomain(var, positions);
 
+		if (useAllDifferent)
+			addConstraint(new AllDifferentConstraint(getVariables()));
 		for (int i = 0; i < size; i++) {
 			Variable var1 = getVariables().get(i);
 			for (int j = i+1; j < size; j++) {
 				Variable var2 = getVariables().get(j);
-				addConstraint(new DiffNotEqualConstraint(var1, var2, 0));
+				if (!useAllDifferent)
+					addConstraint(new DiffNotEqualConstraint(var1, var2, 0));
 				addConstraint(new DiffNotEqualConstraint(var1, var2, j-i));
 			}
 		}
@@ -4,7 +4,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 import csc4500.core.search.csp.Assignment;
-import csc4500.core.search.csp.Constraint;
+import csc4500.core.search.csp.CSP;
+import csc4500.core.search.csp.IndexedConstraint;
 import csc4500.core.search.csp.Variable;
 
 /**
@@ -12,7 +13,7 @@ import csc4500.core.search.csp.Variable;
  * 
  * @author Ruediger Lunde
  */
-public class NotEqualConstraint implements Constraint {
+public class NotEqualConstraint implements IndexedConstraint {
 
 	private Variable var1;
 	private Variable var2;
@@ -36,4 +37,17 @@ public class NotEqualConstraint implements Constraint {
 		Object value1 = assignment.getAssignment(var1);
 		return value1 == null || !value1.equals(assignment.getAssignment(var2));
 	}
+
+	@Override
+	public boolean isSatisfiedWith(CSP csp, int[] valueIndexes) {
+		int i1 = csp.indexOf(var1);
+		int i2 = csp.indexOf(var2);
+		int v1 = valueIndexes[i1];
+		int v2 = valueIndexes[i2];
+		if (v1 == -1 || v2 == -1)
+			return true;
+		if (csp.hasSameValueIndexes(i1, i2))
+			return v1 != v2;
+		return !csp.getValue(i1, v1).equals(csp.getValue(i2, v2));
+	}
 }
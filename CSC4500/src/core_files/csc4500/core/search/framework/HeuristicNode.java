@@ -0,0 +1,40 @@
+package csc4500.core.search.framework;
+
+import csc4500.core.agent.Action;
+import csc4500.core.search.framework.evalfunc.HeuristicFunction;
+
+/**
+ * Node which additionally stores the value of a heuristic function for its
+ * state. Evaluation functions which use the same heuristic function read the
+ * stored value instead of recomputing it; this matters especially for priority
+ * queue comparators, which evaluate nodes on every comparison.
+ *
+ * @see HeuristicNodeExpander
+ */
+public class HeuristicNode extends Node {
+
+	private HeuristicFunction hf;
+	private double hValue;
+
+	public HeuristicNode(Object state) {
+		super(state);
+	}
+
+	public HeuristicNode(Object state, Node parent, Action action, double pathCost) {
+		super(state, parent, action, pathCost);
+	}
+
+	/**
+	 * Returns the stored value of the specified heuristic function, or NaN if
+	 * no value has been stored for that function.
+	 */
+	public double getHeuristicValue(HeuristicFunction hf) {
+		return hf == this.hf ? hValue : Double.NaN;
+	}
+
+	/** Stores the value of the heuristic function for the node's state. */
+	public void setHeuristicValue(HeuristicFunction hf, double hValue) {
+		this.hf = hf;
+		this.hValue = hValue;
+	}
+}
@@ -0,0 +1,71 @@
+package csc4500.core.search.framework;
+
+import java.util.List;
+
+import csc4500.core.agent.Action;
+import csc4500.core.search.framework.evalfunc.BatchHeuristicFunction;
+import csc4500.core.search.framework.evalfunc.HeuristicFunction;
+import csc4500.core.search.framework.problem.Problem;
+
+/**
+ * Node expander which creates {@link HeuristicNode}s and evaluates the
+ * heuristic for all children of an expanded node in one call (if the heuristic
+ * function implements {@link BatchHeuristicFunction}, otherwise one by one).
+ * Combined with best-first searches using the same heuristic function (e.g.
+ * <code>new AStarSearch(new GraphSearch(new HeuristicNodeExpander(hf)), hf)</code>),
+ * each state is evaluated exactly once.
+ */
+public class HeuristicNodeExpander extends NodeExpander {
+
+	private final HeuristicFunction hf;
+	private Object[] states = new Object[16];
+	private double[] values = new double[16];
+
+	public HeuristicNodeExpander(HeuristicFunction hf) {
+		this.hf = hf;
+	}
+
+	public HeuristicFunction getHeuristicFunction() {
+		return hf;
+	}
+
+	@Override
+	public Node createRootNode(Object state) {
+		HeuristicNode result = new HeuristicNode(state);
+		result.setHeuristicValue(hf, hf.h(state));
+		return result;
+	}
+
+	/**
+	 * Creates a {@link HeuristicNode}. The heuristic value is not computed
+	 * here, but for all children together in {@link #expand(Node, Problem)}.
+	 */
+	@Override
+	public Node createNode(Object state, Node parent, Action action, double stepCost) {
+		Node p = useParentLinks ? parent : null;
+		return new HeuristicNode(state, p, action, parent.getPathCost() + stepCost);
+	}
+
+	@Override
+	public List<Node> expand(Node node, Problem problem) {
+		List<Node> successors = super.expand(node, problem);
+		int count = successors.size();
+		if (hf instanceof BatchHeuristicFunction) {
+			if (states.length < count) {
+				states = new Object[count];
+				values = new double[count];
+			}
+			for (int i = 0; i < count; i++)
+				states[i] = successors.get(i).getState();
+			((BatchHeuristicFunction) hf).h(states, count, values);
+			for (int i = 0; i < count; i++) {
+				((HeuristicNode) successors.get(i)).setHeuristicValue(hf, values[i]);
+				states[i] = null;
+			}
+		} else {
+			for (Node successor : successors)
+				((HeuristicNode) successor).setHeuristicValue(hf, hf.h(successor.getState()));
+		}
+		return successors;
+	}
+}
@@ -0,0 +1,80 @@
+package csc4500.core.search.framework;
+
+import java.util.List;
+
+import csc4500.core.agent.Action;
+import csc4500.core.search.framework.problem.ActionRelations;
+
+/**
+ * Finite-state machine which recognizes redundant action sequences. It is
+ * compiled from the {@link ActionRelations} of a problem. The automaton state
+ * after a sequence of actions is determined by the last action, so it can be
+ * derived from a node without storing extra data (see
+ * {@link #getState(Node)}). In a given automaton state, an action is rejected
+ * if it is the inverse of the last action, or if it commutes with the last
+ * action and precedes it in the canonical order (only one order of two
+ * commuting actions needs to be explored).
+ * <br>
+ * All lookups are array based; no hash tables are involved.
+ */
+public class MovePruningAutomaton {
+	/** Automaton state of root nodes and of nodes with unknown actions. */
+	public static final int START = 0;
+
+	private final Action[] actions;
+	// allowed[state][actionIdx] is true if the action is allowed
+	private final boolean[][] allowed;
+
+	/** Compiles the automaton for the specified relations. */
+	public MovePruningAutomaton(ActionRelations relations) {
+		List<Action> all = relations.getAllActions();
+		actions = all.toArray(new Action[all.size()]);
+		allowed = new boolean[actions.length + 1][actions.length];
+		for (int i = 0; i < actions.length; i++)
+			allowed[START][i] = true;
+		for (int last = 0; last < actions.length; last++) {
+			for (int i = 0; i < actions.length; i++) {
+				boolean redundant = relations.isInverse(actions[last], actions[i])
+						|| i < last && relations.commute(actions[last], actions[i]);
+				allowed[last + 1][i] = !redundant;
+			}
+		}
+	}
+
+	/**
+	 * Returns the automaton state reached by the action sequence leading to the
+	 * specified node.
+	 */
+	public int getState(Node node) {
+		return node.getAction() == null ? START : indexOf(node.getAction()) + 1;
+	}
+
+	/**
+	 * Checks whether the action can be applied in the automaton state without
+	 * producing a redundant sequence. Unknown actions are always allowed.
+	 */
+	public boolean isAllowed(int state, Action action) {
+		int idx = indexOf(action);
+		return idx == -1 || allowed[state][idx];
+	}
+
+	/** Returns the number of automaton states. */
+	public int getNumberOfStates() {
+		return allowed.length;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	private int indexOf(Action action) {
+		// actions are typically constants, so try identity first
+		for (int i = 0; i < actions.length; i++)
+			if (actions[i] == action)
+				return i;
+		for (int i = 0; i < actions.length; i++)
+			if (actions[i].equals(action))
+				return i;
+		return -1;
+	}
+}
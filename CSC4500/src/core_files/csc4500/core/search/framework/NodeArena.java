@@ -0,0 +1,183 @@
+package csc4500.core.search.framework;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import csc4500.core.agent.Action;
+import csc4500.core.search.framework.problem.StateCodec;
+
+/**
+ * Struct-of-arrays storage for search tree nodes. A node is represented by an
+ * int index into parallel primitive arrays holding the parent index, an action
+ * code, the path cost, and the packed state (see {@link StateCodec}). Compared
+ * to a tree of {@link Node} objects, this avoids millions of small heap objects
+ * and parent chains which have to be traced by the garbage collector during
+ * large uninformed searches. {@link Node} objects are only created on demand,
+ * typically for the solution path (see {@link #createNode(int, StateCodec)}).
+ * <br>
+ * Actions are mapped on byte codes in the order of their first appearance.
+ * Up to 255 distinct actions are supported.
+ */
+public class NodeArena {
+	/** Parent index of root nodes. */
+	public static final int NO_PARENT = -1;
+
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final int MAX_ACTIONS = 255;
+
+	private int[] parents;
+	private byte[] actionCodes;
+	private float[] pathCosts;
+	private long[] states;
+	private int size;
+
+	// action code 0 is reserved for "no action" (root nodes)
+	private final List<Action> actions = new ArrayList<Action>();
+	private final Map<Action, Integer> actionCodeLookup = new HashMap<Action, Integer>();
+
+	public NodeArena() {
+		this(INITIAL_CAPACITY);
+	}
+
+	public NodeArena(int initialCapacity) {
+		int capacity = Math.max(initialCapacity, 16);
+		parents = new int[capacity];
+		actionCodes = new byte[capacity];
+		pathCosts = new float[capacity];
+		states = new long[capacity];
+		actions.add(null);
+	}
+
+	/** Adds a root node for the specified packed state and returns its index. */
+	public int createRootNode(long state) {
+		return add(NO_PARENT, 0, 0f, state);
+	}
+
+	/**
+	 * Adds a child of the specified parent node and returns its index.
+	 *
+	 * @param parent
+	 *            index of the parent node
+	 * @param action
+	 *            the action which was applied to the parent to generate the
+	 *            node
+	 * @param stepCost
+	 *            costs of the action (will be added to the parent's path cost)
+	 * @param state
+	 *            packed state of the new node
+	 */
+	public int createNode(int parent, Action action, double stepCost, long state) {
+		return add(parent, getActionCode(action), (float) (pathCosts[parent] + stepCost), state);
+	}
+
+	public int getParent(int node) {
+		return parents[node];
+	}
+
+	public Action getAction(int node) {
+		return actions.get(actionCodes[node] & 0xFF);
+	}
+
+	public double getPathCost(int node) {
+		return pathCosts[node];
+	}
+
+	public long getState(int node) {
+		return states[node];
+	}
+
+	/** Returns the number of nodes in the arena. */
+	public int size() {
+		return size;
+	}
+
+	/** Removes all nodes. The allocated arrays are kept for reuse. */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Returns the number of nodes on the path from the root to the specified
+	 * node minus one.
+	 */
+	public int getDepth(int node) {
+		int depth = 0;
+		while (parents[node] != NO_PARENT) {
+			node = parents[node];
+			depth++;
+		}
+		return depth;
+	}
+
+	/**
+	 * Returns the list of actions leading from the root to the specified node.
+	 * In contrast to {@link SearchUtils#getSequenceOfActions(Node)}, the root
+	 * itself is represented by an empty list.
+	 */
+	public List<Action> getActionsFromRoot(int node) {
+		Action[] result = new Action[getDepth(node)];
+		for (int i = result.length - 1; i >= 0; i--) {
+			result[i] = getAction(node);
+			node = parents[node];
+		}
+		return Arrays.asList(result);
+	}
+
+	/**
+	 * Materializes the path from the root to the specified node as a chain of
+	 * {@link Node} objects and returns the last one. The result can be passed
+	 * to {@link SearchUtils#getSequenceOfActions(Node)}.
+	 */
+	public Node createNode(int node, StateCodec codec) {
+		int[] path = new int[getDepth(node) + 1];
+		for (int i = path.length - 1; i >= 0; i--) {
+			path[i] = node;
+			node = parents[node];
+		}
+		Node result = null;
+		for (int idx : path)
+			result = new Node(codec.decode(states[idx]), result, getAction(idx), pathCosts[idx]);
+		return result;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	private int add(int parent, int actionCode, float pathCost, long state) {
+		if (size == parents.length)
+			grow();
+		parents[size] = parent;
+		actionCodes[size] = (byte) actionCode;
+		pathCosts[size] = pathCost;
+		states[size] = state;
+		return size++;
+	}
+
+	private int getActionCode(Action action) {
+		// actions are typically constants, so try identity first
+		for (int i = 1; i < actions.size(); i++)
+			if (actions.get(i) == action)
+				return i;
+		Integer code = actionCodeLookup.get(action);
+		if (code == null) {
+			if (actions.size() > MAX_ACTIONS)
+				throw new IllegalStateException("Node arena supports at most " + MAX_ACTIONS + " actions.");
+			code = actions.size();
+			actions.add(action);
+			actionCodeLookup.put(action, code);
+		}
+		return code;
+	}
+
+	private void grow() {
+		int capacity = parents.length + (parents.length >> 1);
+		parents = Arrays.copyOf(parents, capacity);
+		actionCodes = Arrays.copyOf(actionCodes, capacity);
+		pathCosts = Arrays.copyOf(pathCosts, capacity);
+		states = Arrays.copyOf(states, capacity);
+	}
+}
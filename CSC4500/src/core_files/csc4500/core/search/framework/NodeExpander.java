@@ -1,10 +1,12 @@
 package csc4500.core.search.framework;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import csc4500.core.agent.Action;
-import csc4500.core.search.framework.problem.ActionsFunction;
 import csc4500.core.search.framework.problem.Problem;
 import csc4500.core.search.framework.problem.ResultFunction;
 import csc4500.core.search.framework.problem.StepCostFunction;
@@ -69,11 +71,10 @@ public class NodeExpander {
 	public List<Node> expand(Node node, Problem problem) {
 		List<Node> successors = new ArrayList<Node>();
 
-		ActionsFunction actionsFunction = problem.getActionsFunction();
 		ResultFunction resultFunction = problem.getResultFunction();
 		StepCostFunction stepCostFunction = problem.getStepCostFunction();
 
-		for (Action action : actionsFunction.actions(node.getState())) {
+		for (Action action : getActions(node, problem)) {
 			Object successorState = resultFunction.result(node.getState(), action);
 
 			double stepCost = stepCostFunction.c(node.getState(), action, successorState);
@@ -84,6 +85,67 @@ public class NodeExpander {
 		return successors;
 	}
 
+	/**
+	 * Expands the specified node like {@link #expand(Node, Problem)}, but
+	 * creates the children one by one when they are requested from the
+	 * returned iterator. Depth-first searches can use it to avoid creating
+	 * children which are never visited. The call is counted as expansion.
+	 */
+	public Successors expandLazily(Node node, Problem problem) {
+		Successors successors = new Successors(node, problem, getActions(node, problem));
+		notifyNodeListeners(node);
+		counter++;
+		return successors;
+	}
+
+	/**
+	 * Primitive operation, which returns the actions to be applied when
+	 * expanding the node. This default implementation returns all actions
+	 * provided by the actions function of the problem.
+	 */
+	protected Collection<Action> getActions(Node node, Problem problem) {
+		return problem.getActionsFunction().actions(node.getState());
+	}
+
+	/**
+	 * Iterator over the children of an expanded node. The children are created
+	 * on demand by {@link NodeExpander#createNode(Object, Node, Action, double)}.
+	 */
+	public class Successors implements Iterator<Node> {
+		private final Node node;
+		private final Problem problem;
+		private final Iterator<Action> actions;
+		private int remaining;
+
+		protected Successors(Node node, Problem problem, Collection<Action> actions) {
+			this.node = node;
+			this.problem = problem;
+			this.actions = actions.iterator();
+			remaining = actions.size();
+		}
+
+		/** Returns the number of children which have not been returned yet. */
+		public int remaining() {
+			return remaining;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return remaining > 0;
+		}
+
+		@Override
+		public Node next() {
+			if (remaining == 0)
+				throw new NoSuchElementException();
+			remaining--;
+			Action action = actions.next();
+			Object successorState = problem.getResultFunction().result(node.getState(), action);
+			double stepCost = problem.getStepCostFunction().c(node.getState(), action, successorState);
+			return createNode(successorState, node, action, stepCost);
+		}
+	}
+
 	///////////////////////////////////////////////////////////////////////
 	// progress tracing
 
@@ -0,0 +1,86 @@
+package csc4500.core.search.framework;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import csc4500.core.agent.Action;
+import csc4500.core.search.framework.problem.ActionRelations;
+import csc4500.core.search.framework.problem.ActionsFunction;
+import csc4500.core.search.framework.problem.Problem;
+
+/**
+ * Node expander which skips actions that would produce redundant action
+ * sequences, e.g. moving the gap of the 8-puzzle up directly after moving it
+ * down. Problems declare the relations between their actions by an actions
+ * function which implements {@link ActionRelations}; they are compiled into a
+ * {@link MovePruningAutomaton}. For other problems, this expander behaves like
+ * its super class. The pruning needs no hash tables and works for all tree-style
+ * searches (TreeSearch, DepthLimitedSearch, IterativeDeepeningSearch,
+ * RecursiveBestFirstSearch, ...).
+ *
+ * @see #getNumOfPrunedActions()
+ */
+public class PruningNodeExpander extends NodeExpander {
+
+	private ActionRelations relations;
+	private MovePruningAutomaton automaton;
+
+	/** Counts the actions which were skipped since the last counter reset. */
+	protected int prunedCounter;
+
+	/**
+	 * Returns the actions which the move pruning automaton allows after the
+	 * actions leading to the node, and counts the others.
+	 */
+	@Override
+	protected Collection<Action> getActions(Node node, Problem problem) {
+		Collection<Action> actions = super.getActions(node, problem);
+		MovePruningAutomaton fsm = getAutomaton(problem);
+		if (fsm == null)
+			return actions;
+
+		List<Action> result = new ArrayList<Action>(actions.size());
+		int fsmState = fsm.getState(node);
+		for (Action action : actions) {
+			if (fsm.isAllowed(fsmState, action))
+				result.add(action);
+			else
+				prunedCounter++;
+		}
+		return result;
+	}
+
+	@Override
+	public void resetCounter() {
+		super.resetCounter();
+		prunedCounter = 0;
+	}
+
+	/**
+	 * Returns the number of actions which were skipped as redundant since the
+	 * last counter reset.
+	 */
+	public int getNumOfPrunedActions() {
+		return prunedCounter;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns the automaton for the problem, or null if the problem does not
+	 * declare action relations. The last automaton is cached.
+	 */
+	private MovePruningAutomaton getAutomaton(Problem problem) {
+		ActionsFunction af = problem.getActionsFunction();
+		if (!(af instanceof ActionRelations))
+			return null;
+		if (af != relations) {
+			relations = (ActionRelations) af;
+			automaton = new MovePruningAutomaton(relations);
+		}
+		return automaton;
+	}
+}
@@ -67,6 +67,31 @@ public class SearchUtils {
 		return isGoal;
 	}
 	
+	/**
+	 * Estimates the effective branching factor b of a search which expanded
+	 * <code>numExpandCalls</code> nodes to find a solution of the specified
+	 * length, so that 1 + b + b^2 + ... + b^length = numExpandCalls.
+	 */
+	public static double getEBF(long numExpandCalls, double solnlength) {
+		double tolerance = 0.01;
+		double delta = 0.01;
+		double error;
+		double lastErrorSign = -1;
+		double branchFactorEst = 1.0;
+		do {
+			double powerSum = 0;
+			for (int i = 0; i <= solnlength; i++)
+				powerSum += Math.pow(branchFactorEst, i);
+			error = powerSum - numExpandCalls;
+			branchFactorEst += error > 0 ? -delta : delta;
+			if (Math.signum(error) != lastErrorSign) {
+				lastErrorSign = Math.signum(error);
+				delta = delta / 2.0;
+			}
+		} while (Math.abs(error) > tolerance);
+		return branchFactorEst;
+	}
+
 	/** Returns the most optimistic heuristic function possible (always returns 0). */
 	public static HeuristicFunction getZeroHeuristic() {
 		return new HeuristicFunction() {
@@ -0,0 +1,91 @@
+package csc4500.core.search.framework;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size table which records for states how deep the search below them has
+ * already been performed without finding a goal. Depth-first searches can use
+ * it to skip transpositions, i.e. states reached again on another path with a
+ * remaining depth not larger than the recorded one. The table is indexed by the
+ * state hash code; states are stored too, so lookups never report false
+ * matches. On collisions, the entry with the larger remaining depth is kept
+ * (replace-by-depth), because it saves more search effort. So memory
+ * consumption is fixed, and the table can be kept across the iterations of
+ * iterative deepening.
+ */
+public class TranspositionTable {
+	/**
+	 * Depth value for states whose subtree has been searched completely.
+	 */
+	public static final int EXHAUSTED = Integer.MAX_VALUE;
+
+	private final Object[] states;
+	private final int[] depths;
+	private final int mask;
+	private int size;
+
+	/**
+	 * Constructs a table with at least the specified number of slots (the
+	 * capacity is rounded up to a power of two).
+	 */
+	public TranspositionTable(int capacity) {
+		int c = 1;
+		while (c < capacity)
+			c <<= 1;
+		states = new Object[c];
+		depths = new int[c];
+		mask = c - 1;
+	}
+
+	/**
+	 * Records that no goal is reachable from the state within
+	 * <code>depth</code> steps. The entry is not stored if the slot holds
+	 * another state with a larger depth.
+	 */
+	public void store(Object state, int depth) {
+		int i = indexFor(state);
+		Object old = states[i];
+		if (old == null || depth >= depths[i] || old.equals(state)) {
+			if (old == null)
+				size++;
+			if (old == null || !old.equals(state) || depth > depths[i]) {
+				states[i] = state;
+				depths[i] = depth;
+			}
+		}
+	}
+
+	/**
+	 * Returns the depth up to which the subtree below the state has already
+	 * been searched without success, or -1 if the state is not in the table.
+	 */
+	public int getDepth(Object state) {
+		int i = indexFor(state);
+		Object stored = states[i];
+		return stored != null && stored.equals(state) ? depths[i] : -1;
+	}
+
+	/** Returns the number of occupied slots. */
+	public int size() {
+		return size;
+	}
+
+	public int capacity() {
+		return states.length;
+	}
+
+	/** Removes all entries. */
+	public void clear() {
+		Arrays.fill(states, null);
+		size = 0;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	private int indexFor(Object state) {
+		int h = state.hashCode() * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+}
@@ -0,0 +1,17 @@
+package csc4500.core.search.framework.evalfunc;
+
+/**
+ * Heuristic function which can evaluate several states in one call. Node
+ * expansion produces all children of a node at once; evaluating them together
+ * avoids a virtual call per state and allows implementations to work on a
+ * batch of packed states in tight, table-driven loops.
+ *
+ * @see csc4500.core.search.framework.HeuristicNodeExpander
+ */
+public interface BatchHeuristicFunction extends HeuristicFunction {
+	/**
+	 * Computes h for the first <code>count</code> states and stores the values
+	 * in <code>results</code> at the same indices.
+	 */
+	void h(Object[] states, int count, double[] results);
+}
@@ -0,0 +1,210 @@
+package csc4500.core.search.framework.evalfunc;
+
+import java.util.Arrays;
+
+import csc4500.core.search.framework.Metrics;
+import csc4500.core.search.framework.problem.StateCodec;
+
+/**
+ * Decorator which memoizes the values of an expensive heuristic function. The
+ * cache has a fixed capacity and is organized in lock-striped segments; each
+ * segment is an open addressing table with a short probe window. If the window
+ * of a new entry is full, a victim is chosen by the second-chance (clock)
+ * strategy: entries which were hit since the last sweep survive once. Lookups
+ * and updates do not allocate objects, and one instance can be shared by
+ * concurrent searches.
+ *
+ * <br>
+ * Entries are keyed by a 64-bit value. If a {@link StateCodec} is provided, the
+ * packed state is used, which identifies states exactly. Otherwise, the key is
+ * derived from the state hash code and the state itself is kept to verify hits.
+ */
+public class CachingHeuristicFunction implements HeuristicFunction {
+	public static final String METRIC_HITS = "hits";
+	public static final String METRIC_MISSES = "misses";
+	public static final String METRIC_EVICTIONS = "evictions";
+	public static final String METRIC_HIT_RATE = "hitRate";
+
+	private static final int PROBE_WINDOW = 8;
+	private static final int DEFAULT_SEGMENTS = 16;
+
+	private final HeuristicFunction hf;
+	private final StateCodec codec;
+	private final Segment[] segments;
+	private final int segmentMask;
+
+	/**
+	 * Constructs a cache for at least <code>capacity</code> entries which
+	 * verifies hits by comparing states.
+	 */
+	public CachingHeuristicFunction(HeuristicFunction hf, int capacity) {
+		this(hf, null, capacity);
+	}
+
+	/**
+	 * Constructs a cache for at least <code>capacity</code> entries.
+	 *
+	 * @param hf
+	 *            the heuristic function to be decorated
+	 * @param codec
+	 *            codec for exact 64-bit state keys, or null
+	 * @param capacity
+	 *            the maximal number of cached values
+	 */
+	public CachingHeuristicFunction(HeuristicFunction hf, StateCodec codec, int capacity) {
+		this.hf = hf;
+		this.codec = codec;
+		int perSegment = PROBE_WINDOW;
+		while (perSegment * DEFAULT_SEGMENTS < capacity)
+			perSegment <<= 1;
+		segments = new Segment[DEFAULT_SEGMENTS];
+		for (int i = 0; i < segments.length; i++)
+			segments[i] = new Segment(perSegment, codec == null);
+		segmentMask = DEFAULT_SEGMENTS - 1;
+	}
+
+	public HeuristicFunction getHeuristicFunction() {
+		return hf;
+	}
+
+	@Override
+	public double h(Object state) {
+		long key = codec != null ? codec.encode(state) : state.hashCode();
+		long hash = mix(key);
+		Segment segment = segments[(int) (hash >>> 32) & segmentMask];
+		int start = (int) hash & segment.mask;
+		synchronized (segment) {
+			for (int i = 0; i < PROBE_WINDOW; i++) {
+				int slot = (start + i) & segment.mask;
+				if (!segment.used[slot])
+					break;
+				if (segment.keys[slot] == key && (codec != null || state.equals(segment.states[slot]))) {
+					segment.referenced[slot] = true;
+					segment.hits++;
+					return segment.values[slot];
+				}
+			}
+			segment.misses++;
+		}
+		// evaluate outside of the lock; concurrent misses for the same state
+		// just compute the same value twice
+		double value = hf.h(state);
+		synchronized (segment) {
+			segment.insert(start, key, codec == null ? state : null, value);
+		}
+		return value;
+	}
+
+	/** Removes all entries and resets the counters. */
+	public void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of hits, misses, and evictions since the last clear,
+	 * and the resulting hit rate.
+	 */
+	public Metrics getMetrics() {
+		long hits = 0;
+		long misses = 0;
+		long evictions = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				hits += segment.hits;
+				misses += segment.misses;
+				evictions += segment.evictions;
+			}
+		}
+		Metrics metrics = new Metrics();
+		metrics.set(METRIC_HITS, hits);
+		metrics.set(METRIC_MISSES, misses);
+		metrics.set(METRIC_EVICTIONS, evictions);
+		metrics.set(METRIC_HIT_RATE, hits + misses > 0 ? (double) hits / (hits + misses) : 0.0);
+		return metrics;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/** MurmurHash3 finalizer. */
+	private static long mix(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return key;
+	}
+
+	/** One lock stripe of the cache. */
+	private static class Segment {
+		final long[] keys;
+		final Object[] states;
+		final double[] values;
+		final boolean[] used;
+		final boolean[] referenced;
+		final int mask;
+		long hits;
+		long misses;
+		long evictions;
+
+		Segment(int capacity, boolean storeStates) {
+			keys = new long[capacity];
+			states = storeStates ? new Object[capacity] : null;
+			values = new double[capacity];
+			used = new boolean[capacity];
+			referenced = new boolean[capacity];
+			mask = capacity - 1;
+		}
+
+		/**
+		 * Stores the value in the probe window starting at the specified slot.
+		 * Free slots and slots with the same key are preferred; otherwise the
+		 * window is swept and the first entry without reference bit is
+		 * replaced.
+		 */
+		void insert(int start, long key, Object state, double value) {
+			int victim = -1;
+			for (int i = 0; i < PROBE_WINDOW; i++) {
+				int slot = (start + i) & mask;
+				if (!used[slot] || keys[slot] == key && (states == null || state.equals(states[slot]))) {
+					victim = slot;
+					break;
+				}
+			}
+			if (victim == -1) {
+				// second chance: clear reference bits until an unreferenced
+				// entry is found (at most two sweeps)
+				for (int i = 0; victim == -1; i = (i + 1) % PROBE_WINDOW) {
+					int slot = (start + i) & mask;
+					if (referenced[slot])
+						referenced[slot] = false;
+					else
+						victim = slot;
+				}
+				evictions++;
+			}
+			used[victim] = true;
+			keys[victim] = key;
+			if (states != null)
+				states[victim] = state;
+			values[victim] = value;
+			referenced[victim] = false;
+		}
+
+		void clear() {
+			Arrays.fill(used, false);
+			Arrays.fill(referenced, false);
+			if (states != null)
+				Arrays.fill(states, null);
+			hits = 0;
+			misses = 0;
+			evictions = 0;
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package csc4500.core.search.framework.problem;
+
+import java.util.List;
+
+import csc4500.core.agent.Action;
+
+/**
+ * Declares algebraic relations between the actions of a problem, which allow
+ * to recognize redundant action sequences without looking at states. Actions
+ * functions can implement this interface in addition to
+ * {@link ActionsFunction}; node expanders with move pruning (see
+ * {@link csc4500.core.search.framework.PruningNodeExpander}) then skip
+ * successors which cannot lead to new states.
+ */
+public interface ActionRelations {
+	/**
+	 * Returns all actions of the problem. The order of the list defines the
+	 * canonical order of commuting actions.
+	 */
+	List<Action> getAllActions();
+
+	/**
+	 * Returns true if applying <code>second</code> directly after
+	 * <code>first</code> always leads back to the state before
+	 * <code>first</code>.
+	 */
+	boolean isInverse(Action first, Action second);
+
+	/**
+	 * Returns true if applying the two actions in either order always leads to
+	 * the same state, and one order is applicable whenever the other one is.
+	 */
+	boolean commute(Action first, Action second);
+}
@@ -0,0 +1,20 @@
+package csc4500.core.search.framework.problem;
+
+/**
+ * Maps the states of a problem one-to-one onto primitive long values. Search
+ * implementations which have to store huge numbers of states can use packed
+ * states instead of state objects, e.g. in primitive hash sets, in arrays, or
+ * on disk.
+ */
+public interface StateCodec {
+	/**
+	 * Returns the packed representation of the specified state. Different
+	 * states must be mapped on different values.
+	 */
+	long encode(Object state);
+
+	/**
+	 * Returns the state which is represented by the specified packed value.
+	 */
+	Object decode(long code);
+}
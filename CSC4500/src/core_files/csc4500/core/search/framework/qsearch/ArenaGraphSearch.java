@@ -0,0 +1,217 @@
+package csc4500.core.search.framework.qsearch;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Queue;
+
+import csc4500.core.agent.Action;
+import csc4500.core.search.framework.Metrics;
+import csc4500.core.search.framework.Node;
+import csc4500.core.search.framework.NodeArena;
+import csc4500.core.search.framework.NodeExpander;
+import csc4500.core.search.framework.SearchUtils;
+import csc4500.core.search.framework.problem.ActionsFunction;
+import csc4500.core.search.framework.problem.Problem;
+import csc4500.core.search.framework.problem.ResultFunction;
+import csc4500.core.search.framework.problem.StateCodec;
+import csc4500.core.search.framework.problem.StepCostFunction;
+import csc4500.core.util.CancelableThread;
+import csc4500.core.util.datastructure.LongHashSet;
+
+/**
+ * Graph search implementation for very large uninformed searches, which keeps
+ * the search tree in a {@link NodeArena} instead of a tree of {@link Node}
+ * objects. Frontier and explored set contain int node indices and packed
+ * states (see {@link StateCodec}), so the memory consumption per generated node
+ * is a few bytes and the garbage collector has no parent chains to trace. Node
+ * objects are only created for the solution path.
+ *
+ * <br>
+ * The kind of frontier passed to {@link #findNode(Problem, Queue)} selects the
+ * exploration order: FIFO queues lead to breadth first search (states are
+ * marked as reached when generated, as in {@link GraphSearchBFS}), priority
+ * queues lead to uniform cost search (states are marked as explored when
+ * expanded, as in {@link GraphSearch}). Note that comparators of priority
+ * queues are not consulted; nodes are always ordered by path cost. So this
+ * implementation can be combined with BreadthFirstSearch and
+ * UniformCostSearch. Node listeners of the node expander are not informed
+ * about expansions.
+ */
+public class ArenaGraphSearch extends QueueSearch {
+
+	private final StateCodec codec;
+	private final NodeArena arena = new NodeArena();
+	private final LongHashSet explored = new LongHashSet();
+	private boolean costOrdered;
+	private Problem problem;
+	private int numExpandCalls;
+	private int maxQueueSize;
+
+	// FIFO: indices between head and tail; cost ordered: binary heap in
+	// [0, tail)
+	private int[] queue = new int[1024];
+	private int head;
+	private int tail;
+
+	public ArenaGraphSearch(StateCodec codec) {
+		this(codec, new NodeExpander());
+	}
+
+	public ArenaGraphSearch(StateCodec codec, NodeExpander nodeExpander) {
+		super(nodeExpander);
+		this.codec = codec;
+	}
+
+	/**
+	 * Searches the problem using the node arena. The provided frontier is only
+	 * used to decide between FIFO and path cost order.
+	 */
+	@Override
+	public Node findNode(Problem problem, Queue<Node> frontier) {
+		this.problem = problem;
+		this.frontier = frontier;
+		costOrdered = frontier instanceof PriorityQueue<?>;
+		clearInstrumentation();
+		numExpandCalls = 0;
+		maxQueueSize = 0;
+		arena.clear();
+		explored.clear();
+		head = tail = 0;
+
+		ActionsFunction actionsFunction = problem.getActionsFunction();
+		ResultFunction resultFunction = problem.getResultFunction();
+		StepCostFunction stepCostFunction = problem.getStepCostFunction();
+
+		Object rootState = problem.getInitialState();
+		int root = arena.createRootNode(codec.encode(rootState));
+		if (earlyGoalTest && isGoalState(rootState, root))
+			return getSolution(root);
+		if (!costOrdered)
+			explored.add(arena.getState(root));
+		push(root);
+
+		while (!isIndexQueueEmpty() && !CancelableThread.currIsCanceled()) {
+			int node = pop();
+			long packedState = arena.getState(node);
+			if (costOrdered) {
+				if (!explored.add(packedState))
+					continue; // state already explored with lower costs
+			}
+			Object state = codec.decode(packedState);
+			if (!earlyGoalTest && isGoalState(state, node))
+				return getSolution(node);
+
+			numExpandCalls++;
+			for (Action action : actionsFunction.actions(state)) {
+				Object successorState = resultFunction.result(state, action);
+				long packedSuccessor = codec.encode(successorState);
+				if (costOrdered ? explored.contains(packedSuccessor) : !explored.add(packedSuccessor))
+					continue;
+				double stepCost = stepCostFunction.c(state, action, successorState);
+				int child = arena.createNode(node, action, stepCost, packedSuccessor);
+				if (earlyGoalTest && isGoalState(successorState, child))
+					return getSolution(child);
+				push(child);
+			}
+		}
+		return null;
+	}
+
+	/** Returns the arena which holds the nodes of the last search. */
+	public NodeArena getNodeArena() {
+		return arena;
+	}
+
+	@Override
+	public Metrics getMetrics() {
+		// queue metrics are maintained in primitive fields while searching
+		metrics.set(METRIC_NODES_EXPANDED, numExpandCalls);
+		metrics.set(METRIC_QUEUE_SIZE, getIndexQueueSize());
+		metrics.set(METRIC_MAX_QUEUE_SIZE, maxQueueSize);
+		return metrics;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	private boolean isGoalState(Object state, int node) {
+		// node objects are created for goal states only (needed by solution
+		// checkers)
+		return problem.isGoalState(state) && SearchUtils.isGoalState(problem, arena.createNode(node, codec));
+	}
+
+	private Node getSolution(int node) {
+		Node result = arena.createNode(node, codec);
+		metrics.set(METRIC_PATH_COST, result.getPathCost());
+		if (result.getPathCost() > 0)
+			metrics.set(METRIC_EFFECTIVE_BRANCH_FACTOR, getEBF(numExpandCalls, result.getPathCost()));
+		return result;
+	}
+
+	private boolean isIndexQueueEmpty() {
+		return getIndexQueueSize() == 0;
+	}
+
+	private int getIndexQueueSize() {
+		return costOrdered ? tail : tail - head;
+	}
+
+	private void push(int node) {
+		if (tail == queue.length) {
+			if (!costOrdered && head > queue.length / 2) {
+				System.arraycopy(queue, head, queue, 0, tail - head);
+				tail -= head;
+				head = 0;
+			} else {
+				queue = Arrays.copyOf(queue, queue.length * 2);
+			}
+		}
+		queue[tail++] = node;
+		if (costOrdered)
+			siftUp(tail - 1);
+		if (getIndexQueueSize() > maxQueueSize)
+			maxQueueSize = getIndexQueueSize();
+	}
+
+	private int pop() {
+		int result;
+		if (costOrdered) {
+			result = queue[0];
+			queue[0] = queue[--tail];
+			siftDown(0);
+		} else {
+			result = queue[head++];
+		}
+		return result;
+	}
+
+	private void siftUp(int i) {
+		int node = queue[i];
+		double cost = arena.getPathCost(node);
+		while (i > 0) {
+			int p = (i - 1) >>> 1;
+			if (arena.getPathCost(queue[p]) <= cost)
+				break;
+			queue[i] = queue[p];
+			i = p;
+		}
+		queue[i] = node;
+	}
+
+	private void siftDown(int i) {
+		int node = queue[i];
+		double cost = arena.getPathCost(node);
+		int half = tail >>> 1;
+		while (i < half) {
+			int c = 2 * i + 1;
+			if (c + 1 < tail && arena.getPathCost(queue[c + 1]) < arena.getPathCost(queue[c]))
+				c++;
+			if (cost <= arena.getPathCost(queue[c]))
+				break;
+			queue[i] = queue[c];
+			i = c;
+		}
+		queue[i] = node;
+	}
+}
@@ -0,0 +1,220 @@
+package csc4500.core.search.framework.qsearch;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+
+import csc4500.core.search.framework.Node;
+import csc4500.core.search.framework.NodeExpander;
+import csc4500.core.search.framework.SearchUtils;
+import csc4500.core.search.framework.problem.Problem;
+import csc4500.core.util.CancelableThread;
+
+/**
+ * Beam search: a layer-wise search which keeps at most W nodes (the beam
+ * width) per depth level. All nodes of the current layer are expanded, and
+ * from the resulting successors only the W best are kept for the next layer.
+ * The best successors are chosen by linear time selection (quickselect), not by
+ * sorting. The ordering is taken from the comparator of the priority queue
+ * passed to {@link #findNode(Problem, Queue)}; so beam search can be combined
+ * with best-first searches, e.g.
+ * <code>new GreedyBestFirstSearch(new BeamSearch(100), hf)</code>. For other
+ * queues, the first W successors are kept.
+ *
+ * <br>
+ * The frontier never contains more than W * b nodes (b the maximal branching
+ * factor), so memory consumption is predictable. The price is completeness and
+ * optimality: the beam can lose all paths to the goal. Optionally, the search
+ * is restarted with a wider beam in that case (see
+ * {@link #setRestarts(int, int)}). States of nodes which were kept in the beam
+ * are not generated again. So at most W * d states are stored in the explored
+ * set (d the search depth), and the search terminates on finite state spaces.
+ */
+public class BeamSearch extends QueueSearch {
+	public static final String METRIC_BEAM_WIDTH = "beamWidth";
+	public static final String METRIC_RESTARTS = "restarts";
+
+	private final int beamWidth;
+	private int maxRestarts;
+	private int wideningFactor = 2;
+
+	private final Set<Object> explored = new HashSet<Object>();
+	private List<Node> currLayer = new ArrayList<Node>();
+	private List<Node> nextLayer = new ArrayList<Node>();
+	private int currIdx;
+
+	public BeamSearch(int beamWidth) {
+		this(beamWidth, new NodeExpander());
+	}
+
+	public BeamSearch(int beamWidth, NodeExpander nodeExpander) {
+		super(nodeExpander);
+		if (beamWidth < 1)
+			throw new IllegalArgumentException("Beam width must be positive.");
+		this.beamWidth = beamWidth;
+	}
+
+	/**
+	 * Enables restarts: if the beam runs empty without reaching a goal, the
+	 * search is repeated up to <code>maxRestarts</code> times, each time with
+	 * the beam width multiplied by <code>wideningFactor</code>.
+	 */
+	public void setRestarts(int maxRestarts, int wideningFactor) {
+		if (wideningFactor < 2)
+			throw new IllegalArgumentException("Widening factor must be at least 2.");
+		this.maxRestarts = maxRestarts;
+		this.wideningFactor = wideningFactor;
+	}
+
+	/**
+	 * Runs beam searches with increasing widths until a goal is found or the
+	 * number of restarts is exhausted.
+	 */
+	@Override
+	public Node findNode(Problem problem, Queue<Node> frontier) {
+		this.frontier = frontier;
+		clearInstrumentation();
+		Comparator<? super Node> comparator = frontier instanceof PriorityQueue<?>
+				? ((PriorityQueue<Node>) frontier).comparator() : null;
+		long width = beamWidth;
+		for (int restart = 0; restart <= maxRestarts && !CancelableThread.currIsCanceled(); restart++) {
+			metrics.set(METRIC_RESTARTS, restart);
+			metrics.set(METRIC_BEAM_WIDTH, (int) Math.min(width, Integer.MAX_VALUE));
+			boolean pruned = false;
+			Node result = null;
+			currLayer.clear();
+			nextLayer.clear();
+			Node root = nodeExpander.createRootNode(problem.getInitialState());
+			if (SearchUtils.isGoalState(problem, root))
+				return getSolution(root);
+			addToFrontier(root);
+			explored.clear();
+			while (!nextLayer.isEmpty() && result == null && !CancelableThread.currIsCanceled()) {
+				if (nextLayer.size() > width) {
+					select(nextLayer, (int) width, comparator);
+					nextLayer.subList((int) width, nextLayer.size()).clear();
+					pruned = true;
+				}
+				for (Node node : nextLayer)
+					explored.add(node.getState());
+				List<Node> tmp = currLayer;
+				currLayer = nextLayer;
+				nextLayer = tmp;
+				nextLayer.clear();
+				currIdx = 0;
+
+				Set<Object> nextStates = new HashSet<Object>();
+				while (!isFrontierEmpty() && result == null) {
+					Node node = removeFromFrontier();
+					for (Node successor : nodeExpander.expand(node, problem)) {
+						Object state = successor.getState();
+						if (explored.contains(state) || !nextStates.add(state))
+							continue;
+						if (SearchUtils.isGoalState(problem, successor)) {
+							result = successor;
+							break;
+						}
+						addToFrontier(successor);
+					}
+				}
+			}
+			if (result != null)
+				return getSolution(result);
+			if (!pruned)
+				break; // nothing was cut off, so a wider beam will not help
+			width *= wideningFactor;
+		}
+		return null;
+	}
+
+	/**
+	 * Adds the node to the candidates for the next layer.
+	 */
+	@Override
+	protected void addToFrontier(Node node) {
+		nextLayer.add(node);
+		updateMetrics(currLayer.size() - currIdx + nextLayer.size());
+	}
+
+	/**
+	 * Returns the next node of the current layer.
+	 */
+	@Override
+	protected Node removeFromFrontier() {
+		Node result = currLayer.get(currIdx);
+		currLayer.set(currIdx++, null);
+		return result;
+	}
+
+	/**
+	 * Checks whether the current layer contains not yet expanded nodes.
+	 */
+	@Override
+	protected boolean isFrontierEmpty() {
+		return currIdx >= currLayer.size();
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	private Node getSolution(Node node) {
+		metrics.set(METRIC_PATH_COST, node.getPathCost());
+		if (node.getPathCost() > 0)
+			metrics.set(METRIC_EFFECTIVE_BRANCH_FACTOR,
+					getEBF(nodeExpander.getNumOfExpandCalls(), node.getPathCost()));
+		return node;
+	}
+
+	/**
+	 * Rearranges the list so that its first k elements are the k smallest
+	 * ones with respect to the comparator (in arbitrary order). Expected
+	 * running time is linear in the size of the list.
+	 */
+	private static void select(List<Node> nodes, int k, Comparator<? super Node> comparator) {
+		if (comparator == null)
+			return;
+		Node[] a = nodes.toArray(new Node[nodes.size()]);
+		int left = 0;
+		int right = a.length - 1;
+		while (left < right) {
+			// median of three pivot
+			int mid = (left + right) >>> 1;
+			if (comparator.compare(a[mid], a[left]) < 0)
+				swap(a, left, mid);
+			if (comparator.compare(a[right], a[left]) < 0)
+				swap(a, left, right);
+			if (comparator.compare(a[right], a[mid]) < 0)
+				swap(a, mid, right);
+			Node pivot = a[mid];
+			int i = left;
+			int j = right;
+			while (i <= j) {
+				while (comparator.compare(a[i], pivot) < 0)
+					i++;
+				while (comparator.compare(a[j], pivot) > 0)
+					j--;
+				if (i <= j)
+					swap(a, i++, j--);
+			}
+			if (k - 1 <= j)
+				right = j;
+			else if (k - 1 >= i)
+				left = i;
+			else
+				break;
+		}
+		for (int i = 0; i < a.length; i++)
+			nodes.set(i, a[i]);
+	}
+
+	private static void swap(Node[] a, int i, int j) {
+		Node tmp = a[i];
+		a[i] = a[j];
+		a[j] = tmp;
+	}
+}
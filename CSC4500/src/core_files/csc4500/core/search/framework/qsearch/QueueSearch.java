@@ -5,6 +5,7 @@ import java.util.Queue;
 import csc4500.core.search.framework.Metrics;
 import csc4500.core.search.framework.Node;
 import csc4500.core.search.framework.NodeExpander;
+import csc4500.core.search.framework.PruningNodeExpander;
 import csc4500.core.search.framework.SearchUtils;
 import csc4500.core.search.framework.problem.Problem;
 import csc4500.core.util.CancelableThread;
@@ -29,6 +30,7 @@ public abstract class QueueSearch {
 	public static final String METRIC_MAX_QUEUE_SIZE = "maxQueueSize";
 	public static final String METRIC_PATH_COST = "pathCost";
 	public static final String METRIC_EFFECTIVE_BRANCH_FACTOR = "effectiveBranchFactor";
+	public static final String METRIC_PRUNED_ACTIONS = "prunedActions";
 
 	final protected NodeExpander nodeExpander;
 	protected Queue<Node> frontier;
@@ -87,8 +89,13 @@ public abstract class QueueSearch {
 
 	/**
 	 * Primitive operation which inserts the node at the tail of the frontier.
+	 * Subclasses which override {@link #findNode(Problem, Queue)} without
+	 * using the frontier can rely on this default implementation.
 	 */
-	protected abstract void addToFrontier(Node node);
+	protected void addToFrontier(Node node) {
+		frontier.add(node);
+		updateMetrics(frontier.size());
+	}
 
 	/**
 	 * Primitive operation which removes and returns the node at the head of the
@@ -96,13 +103,19 @@ public abstract class QueueSearch {
 	 * 
 	 * @return the node at the head of the frontier.
 	 */
-	protected abstract Node removeFromFrontier();
+	protected Node removeFromFrontier() {
+		Node result = frontier.remove();
+		updateMetrics(frontier.size());
+		return result;
+	}
 
 	/**
 	 * Primitive operation which checks whether the frontier contains not yet
 	 * expanded nodes.
 	 */
-	protected abstract boolean isFrontierEmpty();
+	protected boolean isFrontierEmpty() {
+		return frontier.isEmpty();
+	}
 
 	/**
 	 * Enables optimization for FIFO queue based search, especially breadth
@@ -123,6 +136,8 @@ public abstract class QueueSearch {
 	 */
 	public Metrics getMetrics() {
 		metrics.set(METRIC_NODES_EXPANDED, nodeExpander.getNumOfExpandCalls());
+		if (nodeExpander instanceof PruningNodeExpander)
+			metrics.set(METRIC_PRUNED_ACTIONS, ((PruningNodeExpander) nodeExpander).getNumOfPrunedActions());
 		return metrics;
 	}
 
@@ -44,6 +44,6 @@ public class AStarEvaluationFunction extends HeuristicEvaluationFunction {
 	@Override
 	public double f(Node n) {
 		// f(n) = g(n) + h(n)
-		return gf.g(n) + hf.h(n.getState());
+		return gf.g(n) + h(n);
 	}
 }
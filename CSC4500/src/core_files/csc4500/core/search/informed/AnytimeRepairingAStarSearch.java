@@ -0,0 +1,339 @@
+package csc4500.core.search.informed;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+import csc4500.core.agent.Action;
+import csc4500.core.search.framework.Metrics;
+import csc4500.core.search.framework.Node;
+import csc4500.core.search.framework.NodeExpander;
+import csc4500.core.search.framework.QueueFactory;
+import csc4500.core.search.framework.SearchForActions;
+import csc4500.core.search.framework.SearchForStates;
+import csc4500.core.search.framework.SearchUtils;
+import csc4500.core.search.framework.evalfunc.HeuristicFunction;
+import csc4500.core.search.framework.problem.Problem;
+import csc4500.core.util.CancelableThread;
+
+/**
+ * Anytime Repairing A* (ARA*, Likhachev, Gordon, Thrun 2003).<br>
+ * <br>
+ * Runs a series of weighted A* searches with f(n) = g(n) + w * h(n) and
+ * decreasing weights w. The first solution is typically found quickly; each
+ * further iteration improves it. In contrast to restarting weighted A* from
+ * scratch, search effort is reused: an iteration only re-expands the states
+ * whose path costs were improved after their expansion in the previous
+ * iteration (the INCONS list). With an admissible heuristic, the cost of every
+ * published solution is at most the reported suboptimality bound times the
+ * optimal cost.
+ *
+ * <br>
+ * Each new solution is passed together with its suboptimality bound to the
+ * registered {@link SolutionListener}s. The search stops when an iteration with
+ * weight 1 has been completed (the solution is optimal then), when the time
+ * limit is exceeded, or when the current thread is canceled. In each case, the
+ * best solution found so far is returned.
+ */
+public class AnytimeRepairingAStarSearch implements SearchForActions, SearchForStates {
+
+	public static final String METRIC_NODES_EXPANDED = "nodesExpanded";
+	public static final String METRIC_QUEUE_SIZE = "queueSize";
+	public static final String METRIC_MAX_QUEUE_SIZE = "maxQueueSize";
+	public static final String METRIC_PATH_COST = "pathCost";
+	public static final String METRIC_ITERATIONS = "iterations";
+	public static final String METRIC_WEIGHT = "weight";
+	public static final String METRIC_SUBOPTIMALITY_BOUND = "suboptimalityBound";
+
+	private final HeuristicFunction hf;
+	private final double initialWeight;
+	private final double weightDecrement;
+	private final NodeExpander nodeExpander;
+	private final Metrics metrics = new Metrics();
+	private long timeLimit;
+	private final List<SolutionListener> listeners = new ArrayList<SolutionListener>();
+
+	// search state
+	private double weight;
+	private long deadline;
+	private Problem problem;
+	private Queue<Node> open;
+	private final Set<Object> closed = new HashSet<Object>();
+	private final List<Node> incons = new ArrayList<Node>();
+	/** Maps each reached state to the node with the lowest known path cost. */
+	private final Map<Object, Node> reached = new HashMap<Object, Node>();
+	private final Map<Object, Double> hValues = new HashMap<Object, Double>();
+	private Node incumbent;
+
+	/**
+	 * Constructs an ARA* search with initial weight 2.5 and weight decrement
+	 * 0.5.
+	 */
+	public AnytimeRepairingAStarSearch(HeuristicFunction hf) {
+		this(hf, 2.5, 0.5);
+	}
+
+	public AnytimeRepairingAStarSearch(HeuristicFunction hf, double initialWeight, double weightDecrement) {
+		this(hf, initialWeight, weightDecrement, new NodeExpander());
+	}
+
+	/**
+	 * Constructs an ARA* search.
+	 *
+	 * @param hf
+	 *            a heuristic function <em>h(n)</em>. Suboptimality bounds are
+	 *            only valid if it is admissible.
+	 * @param initialWeight
+	 *            weight of the heuristic in the first iteration (&gt;= 1)
+	 * @param weightDecrement
+	 *            value by which the weight is decreased after each iteration
+	 *            (&gt; 0)
+	 * @param nodeExpander
+	 *            the node expander to be used
+	 */
+	public AnytimeRepairingAStarSearch(HeuristicFunction hf, double initialWeight, double weightDecrement,
+			NodeExpander nodeExpander) {
+		if (initialWeight < 1 || weightDecrement <= 0)
+			throw new IllegalArgumentException("Weight must be at least 1 and decrement must be positive.");
+		this.hf = hf;
+		this.initialWeight = initialWeight;
+		this.weightDecrement = weightDecrement;
+		this.nodeExpander = nodeExpander;
+	}
+
+	/**
+	 * Sets a time limit in milliseconds for each search. After the limit has
+	 * been reached, the best solution found so far is returned. Values &lt;= 0
+	 * disable the time limit (default).
+	 */
+	public void setTimeLimit(long timeLimit) {
+		this.timeLimit = timeLimit;
+	}
+
+	/**
+	 * Adds a listener which is informed about each solution found during
+	 * search.
+	 */
+	public void addSolutionListener(SolutionListener listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public List<Action> findActions(Problem p) {
+		nodeExpander.useParentLinks(true);
+		Node node = findNode(p);
+		return node == null ? SearchUtils.failure() : SearchUtils.getSequenceOfActions(node);
+	}
+
+	@Override
+	public Object findState(Problem p) {
+		nodeExpander.useParentLinks(false);
+		Node node = findNode(p);
+		return node == null ? null : node.getState();
+	}
+
+	/**
+	 * Runs weighted A* iterations with decreasing weights and returns the best
+	 * solution node found, or null if no solution was found in time.
+	 */
+	public Node findNode(Problem p) {
+		clearInstrumentation();
+		problem = p;
+		deadline = timeLimit > 0 ? System.currentTimeMillis() + timeLimit : Long.MAX_VALUE;
+		weight = initialWeight;
+		open = createOpenList();
+		closed.clear();
+		incons.clear();
+		reached.clear();
+		hValues.clear();
+		incumbent = null;
+
+		Node root = nodeExpander.createRootNode(p.getInitialState());
+		reached.put(root.getState(), root);
+		if (SearchUtils.isGoalState(p, root)) {
+			incumbent = root;
+			publish(1.0);
+			return root;
+		}
+		open.add(root);
+
+		while (true) {
+			metrics.incrementInt(METRIC_ITERATIONS);
+			metrics.set(METRIC_WEIGHT, weight);
+			Node previous = incumbent;
+			boolean completed = improvePath();
+			// an interrupted iteration may have improved the solution as well
+			if (incumbent != null && (completed || incumbent != previous))
+				publish(getSuboptimalityBound(completed));
+			if (!completed || weight <= 1.0 || open.isEmpty() && incons.isEmpty())
+				break;
+			weight = Math.max(1.0, weight - weightDecrement);
+			// move INCONS into OPEN and update the priorities for the new weight
+			Queue<Node> newOpen = createOpenList();
+			for (Node node : open)
+				if (isCurrent(node))
+					newOpen.add(node);
+			for (Node node : incons)
+				if (isCurrent(node))
+					newOpen.add(node);
+			open = newOpen;
+			incons.clear();
+			closed.clear();
+		}
+		return incumbent;
+	}
+
+	@Override
+	public NodeExpander getNodeExpander() {
+		return nodeExpander;
+	}
+
+	/**
+	 * Returns all the search metrics.
+	 */
+	@Override
+	public Metrics getMetrics() {
+		metrics.set(METRIC_NODES_EXPANDED, nodeExpander.getNumOfExpandCalls());
+		return metrics;
+	}
+
+	/**
+	 * Interface for consumers of intermediate search results.
+	 */
+	public static interface SolutionListener {
+		/**
+		 * Is called whenever an iteration of the search has been completed and
+		 * a solution is known, and when the search is interrupted after it has
+		 * improved the solution.
+		 *
+		 * @param solution
+		 *            the best solution node found so far
+		 * @param suboptimalityBound
+		 *            factor by which the cost of the solution can at most
+		 *            exceed the optimal cost (1 means optimal)
+		 */
+		void onSolutionFound(Node solution, double suboptimalityBound);
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Expands nodes until no node in OPEN has a lower f-value than the cost of
+	 * the incumbent solution. Returns false if the search was interrupted.
+	 */
+	private boolean improvePath() {
+		while (!open.isEmpty()) {
+			Node node = open.peek();
+			if (!isCurrent(node) || closed.contains(node.getState())) {
+				open.remove();
+				continue;
+			}
+			if (incumbent != null && incumbent.getPathCost() <= f(node))
+				return true;
+			if (System.currentTimeMillis() > deadline || CancelableThread.currIsCanceled())
+				return false;
+			open.remove();
+			closed.add(node.getState());
+			for (Node child : nodeExpander.expand(node, problem)) {
+				Object state = child.getState();
+				Node old = reached.get(state);
+				if (old == null || child.getPathCost() < old.getPathCost()) {
+					reached.put(state, child);
+					if ((incumbent == null || child.getPathCost() < incumbent.getPathCost())
+							&& SearchUtils.isGoalState(problem, child))
+						incumbent = child;
+					if (closed.contains(state))
+						incons.add(child);
+					else
+						open.add(child);
+				}
+			}
+			updateMetrics(open.size());
+		}
+		return true;
+	}
+
+	/**
+	 * Returns g(incumbent) / min { g(n) + h(n) | n in OPEN or INCONS }, limited
+	 * to w if the last iteration has been completed.
+	 */
+	private double getSuboptimalityBound(boolean completed) {
+		double minLowerBound = Double.POSITIVE_INFINITY;
+		for (Node node : open)
+			if (isCurrent(node) && !closed.contains(node.getState()))
+				minLowerBound = Math.min(minLowerBound, node.getPathCost() + h(node));
+		for (Node node : incons)
+			if (isCurrent(node))
+				minLowerBound = Math.min(minLowerBound, node.getPathCost() + h(node));
+		if (minLowerBound == Double.POSITIVE_INFINITY || incumbent.getPathCost() <= minLowerBound)
+			return 1.0;
+		double result = incumbent.getPathCost() / minLowerBound;
+		return completed ? Math.min(weight, result) : result;
+	}
+
+	private void publish(double bound) {
+		metrics.set(METRIC_PATH_COST, incumbent.getPathCost());
+		metrics.set(METRIC_SUBOPTIMALITY_BOUND, bound);
+		for (SolutionListener listener : listeners)
+			listener.onSolutionFound(incumbent, bound);
+	}
+
+	/**
+	 * Checks whether the node is still the cheapest known node for its state.
+	 * Entries in OPEN and INCONS are not removed when a cheaper path is found.
+	 */
+	private boolean isCurrent(Node node) {
+		return reached.get(node.getState()) == node;
+	}
+
+	private double f(Node node) {
+		return node.getPathCost() + weight * h(node);
+	}
+
+	private double h(Node node) {
+		Double result = hValues.get(node.getState());
+		if (result == null) {
+			result = hf.h(node.getState());
+			hValues.put(node.getState(), result);
+		}
+		return result;
+	}
+
+	private Queue<Node> createOpenList() {
+		return QueueFactory.createPriorityQueue(new Comparator<Node>() {
+			@Override
+			public int compare(Node n1, Node n2) {
+				return Double.compare(f(n1), f(n2));
+			}
+		});
+	}
+
+	/**
+	 * Sets all metrics to zero.
+	 */
+	private void clearInstrumentation() {
+		nodeExpander.resetCounter();
+		metrics.set(METRIC_NODES_EXPANDED, 0);
+		metrics.set(METRIC_QUEUE_SIZE, 0);
+		metrics.set(METRIC_MAX_QUEUE_SIZE, 0);
+		metrics.set(METRIC_PATH_COST, 0);
+		metrics.set(METRIC_ITERATIONS, 0);
+		metrics.set(METRIC_WEIGHT, initialWeight);
+		metrics.set(METRIC_SUBOPTIMALITY_BOUND, 0);
+	}
+
+	private void updateMetrics(int queueSize) {
+		metrics.set(METRIC_QUEUE_SIZE, queueSize);
+		int maxQSize = metrics.getInt(METRIC_MAX_QUEUE_SIZE);
+		if (queueSize > maxQSize) {
+			metrics.set(METRIC_MAX_QUEUE_SIZE, queueSize);
+		}
+	}
+}
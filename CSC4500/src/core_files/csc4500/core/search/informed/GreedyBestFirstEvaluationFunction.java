@@ -26,6 +26,6 @@ public class GreedyBestFirstEvaluationFunction extends HeuristicEvaluationFuncti
 	@Override
 	public double f(Node n) {
 		// f(n) = h(n)
-		return hf.h(n.getState());
+		return h(n);
 	}
 }
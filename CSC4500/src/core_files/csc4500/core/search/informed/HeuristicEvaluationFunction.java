@@ -1,5 +1,7 @@
 package csc4500.core.search.informed;
 
+import csc4500.core.search.framework.HeuristicNode;
+import csc4500.core.search.framework.Node;
 import csc4500.core.search.framework.SearchUtils;
 import csc4500.core.search.framework.evalfunc.EvaluationFunction;
 import csc4500.core.search.framework.evalfunc.HeuristicFunction;
@@ -24,4 +26,21 @@ public abstract class HeuristicEvaluationFunction implements EvaluationFunction
 	public void setHeuristicFunction(HeuristicFunction hf) {
 		this.hf = hf;
 	}
+
+	/**
+	 * Returns h(n). For {@link HeuristicNode}s, the value is computed only once
+	 * and then stored in the node.
+	 */
+	protected double h(Node n) {
+		if (n instanceof HeuristicNode) {
+			HeuristicNode hn = (HeuristicNode) n;
+			double result = hn.getHeuristicValue(hf);
+			if (Double.isNaN(result)) {
+				result = hf.h(n.getState());
+				hn.setHeuristicValue(hf, result);
+			}
+			return result;
+		}
+		return hf.h(n.getState());
+	}
 }
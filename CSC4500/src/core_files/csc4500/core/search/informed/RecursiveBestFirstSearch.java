@@ -1,8 +1,8 @@
 package csc4500.core.search.informed;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -46,6 +46,14 @@ import csc4500.core.search.framework.problem.Problem;
  * This version additionally provides an option to avoid loops. States on the
  * current path are stored in a hash set if the loop avoidance option is enabled.
  * 
+ * <br>
+ * The recursion is implemented with an explicit stack of frames, so deep
+ * searches cannot overflow the Java stack. Frames and their successor buffers
+ * are reused. If a frame expands the same node again (which happens whenever
+ * RBFS returns to a previously abandoned subtree), the successor nodes and
+ * their evaluation values from the last expansion are kept, so the evaluation
+ * function is not called again for them.
+ * 
  * @author Ciaran O'Reilly
  * @author Mike Stampone
  * @author Ruediger Lunde
@@ -56,7 +64,7 @@ public class RecursiveBestFirstSearch implements SearchForActions {
 	public static final String METRIC_MAX_RECURSIVE_DEPTH = "maxRecursiveDepth";
 	public static final String METRIC_PATH_COST = "pathCost";
 
-	private static final Double INFINITY = Double.MAX_VALUE;
+	private static final double INFINITY = Double.MAX_VALUE;
 
 	private final EvaluationFunction evaluationFunction;
 	private boolean avoidLoops;
@@ -65,6 +73,8 @@ public class RecursiveBestFirstSearch implements SearchForActions {
 	// stores the states on the current path if avoidLoops is true.
 	Set<Object> explored = new HashSet<Object>();
 	private Metrics metrics;
+	// frames of the simulated recursion, indexed by recursive depth
+	private Frame[] frames = new Frame[16];
 
 	public RecursiveBestFirstSearch(EvaluationFunction ef) {
 		this(ef, false);
@@ -94,9 +104,8 @@ public class RecursiveBestFirstSearch implements SearchForActions {
 
 		// RBFS(problem, MAKE-NODE(INITIAL-STATE[problem]), infinity)
 		Node n = nodeExpander.createRootNode(p.getInitialState());
-		SearchResult sr = rbfs(p, n, evaluationFunction.f(n), INFINITY, 0);
-		if (sr.hasSolution()) {
-			Node s = sr.getSolutionNode();
+		Node s = rbfs(p, n, evaluationFunction.f(n));
+		if (s != null) {
 			actions = SearchUtils.getSequenceOfActions(s);
 			metrics.set(METRIC_PATH_COST, s.getPathCost());
 		}
@@ -139,58 +148,75 @@ public class RecursiveBestFirstSearch implements SearchForActions {
 	//
 	// function RBFS(problem, node, f_limit) returns a solution, or failure and
 	// a new f-cost limit
-	private SearchResult rbfs(Problem p, Node node, double node_f, double fLimit, int recursiveDepth) {
-		updateMetrics(recursiveDepth);
-
-		// if problem.GOAL-TEST(node.STATE) then return SOLUTION(node)
-		if (SearchUtils.isGoalState(p, node))
-			return getResult(null, node, fLimit);
-
-		// successors <- []
-		// for each action in problem.ACTION(node.STATE) do
-		// add CHILD-NODE(problem, node, action) into successors
-		List<Node> successors = expandNode(node, p);
-
-		// if successors is empty then return failure, infinity
-		if (successors.isEmpty())
-			return getResult(node, null, INFINITY);
-
-		double[] f = new double[successors.size()];
-		// for each s in successors do
-		// update f with value from previous search, if any
-		int size = successors.size();
-		for (int s = 0; s < size; s++) {
-			// s.f <- max(s.g + s.h, node.f)
-			f[s] = Math.max(evaluationFunction.f(successors.get(s)), node_f);
-		}
-
-		// repeat
-		while (true) {
-			// best <- the lowest f-value node in successors
-			int bestIndex = getBestFValueIndex(f);
-			// if best.f > f_limit then return failure, best.f
-			if (f[bestIndex] > fLimit) {
-				return getResult(node, null, f[bestIndex]);
-			}
-			// if best.f > f_limit then return failure, best.f
-			int altIndex = getNextBestFValueIndex(f, bestIndex);
-			// result, best.f <- RBFS(problem, best, min(f_limit, alternative))
-			SearchResult sr = rbfs(p, successors.get(bestIndex), f[bestIndex], Math.min(fLimit, f[altIndex]),
-					recursiveDepth + 1);
-			f[bestIndex] = sr.getFCostLimit();
-			// if result != failure then return result
-			if (sr.hasSolution()) {
-				return getResult(node, sr.getSolutionNode(), sr.getFCostLimit());
+	private Node rbfs(Problem p, Node root, double rootF) {
+		int depth = 0;
+		Frame frame = getFrame(depth);
+		frame.init(root, rootF, INFINITY);
+		boolean entered = true; // false if a child has returned to the frame
+		// result of the last frame which returned
+		Node solution = null;
+		double fCostLimit = 0;
+		try {
+			while (true) {
+				boolean done = false;
+				boolean goal = false;
+				if (entered) {
+					updateMetrics(depth);
+					// if problem.GOAL-TEST(node.STATE) then return SOLUTION(node)
+					if (SearchUtils.isGoalState(p, frame.node)) {
+						solution = frame.node;
+						fCostLimit = frame.fLimit;
+						done = goal = true;
+					} else if (expandNode(frame, p) == 0) {
+						// if successors is empty then return failure, infinity
+						fCostLimit = INFINITY;
+						done = true;
+					}
+				} else {
+					// result, best.f <- RBFS(problem, best, min(f_limit, alternative))
+					frame.f[frame.bestIndex] = fCostLimit;
+					// if result != failure then return result
+					done = solution != null;
+				}
+				if (!done) {
+					// best <- the lowest f-value node in successors
+					int bestIndex = getBestFValueIndex(frame.f, frame.size);
+					if (frame.f[bestIndex] > frame.fLimit) {
+						// if best.f > f_limit then return failure, best.f
+						fCostLimit = frame.f[bestIndex];
+					} else {
+						// alternative <- the second-lowest f-value among successors
+						int altIndex = getNextBestFValueIndex(frame.f, frame.size, bestIndex);
+						frame.bestIndex = bestIndex;
+						Frame child = getFrame(++depth);
+						child.init(frame.successors[bestIndex], frame.f[bestIndex],
+								Math.min(frame.fLimit, frame.f[altIndex]));
+						frame = child;
+						entered = true;
+						continue;
+					}
+				}
+				// return result to the parent frame
+				if (avoidLoops && !goal)
+					explored.remove(frame.node.getState());
+				if (depth == 0)
+					return solution;
+				frame = frames[--depth];
+				entered = false;
 			}
+		} finally {
+			for (Frame f : frames)
+				if (f != null)
+					f.release();
 		}
 	}
 
 	// the lowest f-value node
-	private int getBestFValueIndex(double[] f) {
+	private int getBestFValueIndex(double[] f, int size) {
 		int lidx = 0;
-		Double lowestSoFar = INFINITY;
+		double lowestSoFar = INFINITY;
 
-		for (int i = 0; i < f.length; i++) {
+		for (int i = 0; i < size; i++) {
 			if (f[i] < lowestSoFar) {
 				lowestSoFar = f[i];
 				lidx = i;
@@ -201,13 +227,13 @@ public class RecursiveBestFirstSearch implements SearchForActions {
 	}
 
 	// the second-lowest f-value
-	private int getNextBestFValueIndex(double[] f, int bestIndex) {
+	private int getNextBestFValueIndex(double[] f, int size, int bestIndex) {
 		// Array may only contain 1 item (i.e. no alternative),
 		// therefore default to bestIndex initially
 		int lidx = bestIndex;
-		Double lowestSoFar = INFINITY;
+		double lowestSoFar = INFINITY;
 
-		for (int i = 0; i < f.length; i++) {
+		for (int i = 0; i < size; i++) {
 			if (i != bestIndex && f[i] < lowestSoFar) {
 				lowestSoFar = f[i];
 				lidx = i;
@@ -217,22 +243,53 @@ public class RecursiveBestFirstSearch implements SearchForActions {
 		return lidx;
 	}
 
-	private List<Node> expandNode(Node node, Problem problem) {
+	/**
+	 * Expands the node of the frame, stores the successors in the frame and
+	 * initializes their f-values. Returns the number of successors.
+	 */
+	private int expandNode(Frame frame, Problem problem) {
+		Node node = frame.node;
 		List<Node> result = nodeExpander.expand(node, problem);
-		if (avoidLoops) {
+		if (avoidLoops)
 			explored.add(node.getState());
-			for (Iterator<Node> ni = result.iterator(); ni.hasNext();)
-				if (explored.contains(ni.next().getState())) {
-					ni.remove();
-				}
+		// successors of the last expansion of the same node are kept
+		boolean reuse = frame.expandedNode == node;
+		int firstNew = 0;
+		int size = 0;
+		for (Node s : result) {
+			if (avoidLoops && explored.contains(s.getState()))
+				continue;
+			if (reuse && (size >= frame.size || !s.getState().equals(frame.successors[size].getState())))
+				reuse = false;
+			if (reuse) {
+				firstNew++;
+			} else {
+				frame.ensureCapacity(size + 1);
+				frame.successors[size] = s;
+			}
+			size++;
+		}
+		for (int i = size; i < frame.size; i++)
+			frame.successors[i] = null;
+		frame.expandedNode = node;
+		frame.size = size;
+		// for each s in successors do
+		// update f with value from previous search, if any
+		for (int s = 0; s < size; s++) {
+			if (s >= firstNew)
+				frame.values[s] = evaluationFunction.f(frame.successors[s]);
+			// s.f <- max(s.g + s.h, node.f)
+			frame.f[s] = Math.max(frame.values[s], frame.nodeF);
 		}
-		return result;
+		return size;
 	}
 
-	private SearchResult getResult(Node currNode, Node solutionNode, double fCostLimit) {
-		if (avoidLoops && currNode != null)
-			explored.remove(currNode.getState());
-		return new SearchResult(solutionNode, fCostLimit);
+	private Frame getFrame(int depth) {
+		if (depth == frames.length)
+			frames = Arrays.copyOf(frames, 2 * depth);
+		if (frames[depth] == null)
+			frames[depth] = new Frame();
+		return frames[depth];
 	}
 
 	/**
@@ -249,26 +306,43 @@ public class RecursiveBestFirstSearch implements SearchForActions {
 		}
 	}
 
-	static class SearchResult {
-
-		private Node solNode;
-		private final double fCostLimit;
-
-		public SearchResult(Node solutionNode, double fCostLimit) {
-			this.solNode = solutionNode;
-			this.fCostLimit = fCostLimit;
-		}
-
-		public boolean hasSolution() {
-			return solNode != null;
+	/**
+	 * Local state of one RBFS call: the node, its f-value and f-limit, and the
+	 * successors with their evaluation values and current f-values.
+	 */
+	private static class Frame {
+		Node node;
+		double nodeF;
+		double fLimit;
+		// the node whose successors are stored
+		Node expandedNode;
+		Node[] successors = new Node[4];
+		// evaluation function values of the successors
+		double[] values = new double[4];
+		double[] f = new double[4];
+		int size;
+		int bestIndex;
+
+		void init(Node node, double nodeF, double fLimit) {
+			this.node = node;
+			this.nodeF = nodeF;
+			this.fLimit = fLimit;
 		}
 
-		public Node getSolutionNode() {
-			return solNode;
+		void ensureCapacity(int capacity) {
+			if (capacity > successors.length) {
+				int newLength = Math.max(capacity, 2 * successors.length);
+				successors = Arrays.copyOf(successors, newLength);
+				values = Arrays.copyOf(values, newLength);
+				f = Arrays.copyOf(f, newLength);
+			}
 		}
 
-		public Double getFCostLimit() {
-			return fCostLimit;
+		void release() {
+			node = null;
+			expandedNode = null;
+			Arrays.fill(successors, null);
+			size = 0;
 		}
 	}
 }
@@ -0,0 +1,243 @@
+package csc4500.core.search.uninformed;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import csc4500.core.agent.Action;
+import csc4500.core.search.framework.Metrics;
+import csc4500.core.search.framework.Node;
+import csc4500.core.search.framework.NodeExpander;
+import csc4500.core.search.framework.SearchForActions;
+import csc4500.core.search.framework.SearchForStates;
+import csc4500.core.search.framework.SearchUtils;
+import csc4500.core.search.framework.problem.BidirectionalProblem;
+import csc4500.core.search.framework.problem.Problem;
+import csc4500.core.util.CancelableThread;
+import csc4500.core.util.datastructure.LongHashSet;
+
+/**
+ * Artificial Intelligence A Modern Approach (3rd Edition): page 90.<br>
+ * <br>
+ * Direction-balanced bidirectional breadth-first search.<br>
+ * <br>
+ * In contrast to {@link csc4500.core.search.framework.qsearch.BidirectionalSearch},
+ * which interleaves both directions in one shared frontier, this
+ * implementation maintains a separate frontier for each direction and always
+ * expands a complete layer of the smaller one. On state spaces where one
+ * direction branches much stronger than the other, this keeps the total number
+ * of expansions and the memory consumption close to the minimum. Generated
+ * states are tested for intersection with the opposite direction by probing a
+ * primitive set of state hash codes first; only on a hash hit the state itself
+ * is looked up. The intersection test is performed for all children of a layer,
+ * so for problems with uniform step costs the returned path is optimal.
+ *
+ * <br>
+ * The problem must implement {@link BidirectionalProblem} and its reverse
+ * problem should provide reverse actions for all actions of the original
+ * problem.
+ */
+public class BidirectionalBreadthFirstSearch implements SearchForActions, SearchForStates {
+
+	public static final String METRIC_NODES_EXPANDED = "nodesExpanded";
+	public static final String METRIC_QUEUE_SIZE = "queueSize";
+	public static final String METRIC_MAX_QUEUE_SIZE = "maxQueueSize";
+	public static final String METRIC_PATH_COST = "pathCost";
+
+	private final static int ORG_P_IDX = 0;
+	private final static int REV_P_IDX = 1;
+
+	private final NodeExpander nodeExpander;
+	private final Metrics metrics = new Metrics();
+
+	/**
+	 * Controls whether all actions of the reverse problem are tested to be
+	 * reversible. See {@link #setReverseActionTestEnabled(boolean)}.
+	 */
+	private boolean isReverseActionTestEnabled = true;
+
+	// index 0: original problem, index 1: reverse problem
+	private final List<Map<Object, Node>> reached = new ArrayList<Map<Object, Node>>(2);
+	private final LongHashSet[] reachedHashes = new LongHashSet[2];
+
+	public BidirectionalBreadthFirstSearch() {
+		this(new NodeExpander());
+	}
+
+	public BidirectionalBreadthFirstSearch(NodeExpander nodeExpander) {
+		this.nodeExpander = nodeExpander;
+		for (int i = 0; i < 2; i++) {
+			reached.add(new HashMap<Object, Node>());
+			reachedHashes[i] = new LongHashSet();
+		}
+	}
+
+	@Override
+	public List<Action> findActions(Problem p) {
+		Node node = findNode(p);
+		return node == null ? SearchUtils.failure() : SearchUtils.getSequenceOfActions(node);
+	}
+
+	@Override
+	public Object findState(Problem p) {
+		Node node = findNode(p);
+		return node == null ? null : node.getState();
+	}
+
+	/**
+	 * Searches from both ends until the frontiers meet and returns a node of
+	 * the original problem whose path leads from the initial state to the goal
+	 * state, or null if the two searches cannot be connected.
+	 */
+	public Node findNode(Problem problem) {
+		assert (problem instanceof BidirectionalProblem);
+
+		nodeExpander.useParentLinks(true); // bidirectional search needs parents!
+		clearInstrumentation();
+		Problem[] problems = new Problem[2];
+		problems[ORG_P_IDX] = ((BidirectionalProblem) problem).getOriginalProblem();
+		problems[REV_P_IDX] = ((BidirectionalProblem) problem).getReverseProblem();
+
+		List<List<Node>> frontiers = new ArrayList<List<Node>>(2);
+		for (int i = 0; i < 2; i++) {
+			Node root = nodeExpander.createRootNode(problems[i].getInitialState());
+			reached.get(i).clear();
+			reachedHashes[i].clear();
+			reached.get(i).put(root.getState(), root);
+			reachedHashes[i].add(root.getState().hashCode());
+			List<Node> frontier = new ArrayList<Node>();
+			frontier.add(root);
+			frontiers.add(frontier);
+		}
+		Node orgRoot = frontiers.get(ORG_P_IDX).get(0);
+		Node revRoot = frontiers.get(REV_P_IDX).get(0);
+		if (orgRoot.getState().equals(revRoot.getState()))
+			return getSolution(problems[ORG_P_IDX], orgRoot, revRoot);
+
+		while (!frontiers.get(ORG_P_IDX).isEmpty() && !frontiers.get(REV_P_IDX).isEmpty()
+				&& !CancelableThread.currIsCanceled()) {
+			// expand a full layer of the smaller frontier
+			int dir = frontiers.get(ORG_P_IDX).size() <= frontiers.get(REV_P_IDX).size() ? ORG_P_IDX : REV_P_IDX;
+			int other = 1 - dir;
+			Map<Object, Node> ownReached = reached.get(dir);
+			Map<Object, Node> otherReached = reached.get(other);
+			List<Node> nextLayer = new ArrayList<Node>();
+			Node bestOwn = null;
+			Node bestOther = null;
+			for (Node node : frontiers.get(dir)) {
+				for (Node child : nodeExpander.expand(node, problems[dir])) {
+					if (dir == REV_P_IDX && isReverseActionTestEnabled
+							&& getReverseAction(problems[ORG_P_IDX], child) == null)
+						continue;
+					Object state = child.getState();
+					int hash = state.hashCode();
+					if (reachedHashes[other].contains(hash)) {
+						Node otherNode = otherReached.get(state);
+						if (otherNode != null && (bestOwn == null || child.getPathCost()
+								+ otherNode.getPathCost() < bestOwn.getPathCost() + bestOther.getPathCost())) {
+							bestOwn = child;
+							bestOther = otherNode;
+						}
+					}
+					if (!ownReached.containsKey(state)) {
+						ownReached.put(state, child);
+						reachedHashes[dir].add(hash);
+						nextLayer.add(child);
+					}
+				}
+			}
+			frontiers.set(dir, nextLayer);
+			updateMetrics(frontiers.get(ORG_P_IDX).size() + frontiers.get(REV_P_IDX).size());
+			if (bestOwn != null) {
+				Node result = dir == ORG_P_IDX ? getSolution(problems[ORG_P_IDX], bestOwn, bestOther)
+						: getSolution(problems[ORG_P_IDX], bestOther, bestOwn);
+				if (result != null)
+					return result;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Enables a check for all actions offered by the reverse problem whether
+	 * there exists a corresponding action of the original problem. Default
+	 * value is true.
+	 */
+	public void setReverseActionTestEnabled(boolean state) {
+		isReverseActionTestEnabled = state;
+	}
+
+	@Override
+	public NodeExpander getNodeExpander() {
+		return nodeExpander;
+	}
+
+	/**
+	 * Returns all the search metrics.
+	 */
+	@Override
+	public Metrics getMetrics() {
+		metrics.set(METRIC_NODES_EXPANDED, nodeExpander.getNumOfExpandCalls());
+		return metrics;
+	}
+
+	/**
+	 * Sets all metrics to zero.
+	 */
+	private void clearInstrumentation() {
+		nodeExpander.resetCounter();
+		metrics.set(METRIC_NODES_EXPANDED, 0);
+		metrics.set(METRIC_QUEUE_SIZE, 0);
+		metrics.set(METRIC_MAX_QUEUE_SIZE, 0);
+		metrics.set(METRIC_PATH_COST, 0);
+	}
+
+	private void updateMetrics(int queueSize) {
+		metrics.set(METRIC_QUEUE_SIZE, queueSize);
+		int maxQSize = metrics.getInt(METRIC_MAX_QUEUE_SIZE);
+		if (queueSize > maxQSize) {
+			metrics.set(METRIC_MAX_QUEUE_SIZE, queueSize);
+		}
+	}
+
+	/**
+	 * Extends the path of <code>orgNode</code> by following the reverse
+	 * actions to the parents of <code>revNode</code>. Both nodes must be linked
+	 * to the same state.
+	 */
+	private Node getSolution(Problem orgP, Node orgNode, Node revNode) {
+		assert orgNode.getState().equals(revNode.getState());
+
+		while (revNode.getParent() != null) {
+			Action action = getReverseAction(orgP, revNode);
+			if (action != null) {
+				Object nextState = revNode.getParent().getState();
+				double stepCosts = orgP.getStepCostFunction().c(revNode.getState(), action, nextState);
+				orgNode = nodeExpander.createNode(nextState, orgNode, action, stepCosts);
+				revNode = revNode.getParent();
+			} else {
+				return null;
+			}
+		}
+		metrics.set(METRIC_PATH_COST, orgNode.getPathCost());
+		return orgNode;
+	}
+
+	/**
+	 * Returns the action which leads from the state of <code>node</code> to the
+	 * state of the node's parent, if such an action exists in problem
+	 * <code>orgP</code>.
+	 */
+	private Action getReverseAction(Problem orgP, Node node) {
+		Object currState = node.getState();
+		Object nextState = node.getParent().getState();
+
+		for (Action action : orgP.getActionsFunction().actions(currState)) {
+			Object aResult = orgP.getResultFunction().result(currState, action);
+			if (nextState.equals(aResult))
+				return action;
+		}
+		return null;
+	}
+}
@@ -1,11 +1,13 @@
 package csc4500.core.search.uninformed;
 
+import java.util.Arrays;
 import java.util.List;
 
 import csc4500.core.agent.Action;
 import csc4500.core.search.framework.Metrics;
 import csc4500.core.search.framework.Node;
 import csc4500.core.search.framework.NodeExpander;
+import csc4500.core.search.framework.PruningNodeExpander;
 import csc4500.core.search.framework.SearchForActions;
 import csc4500.core.search.framework.SearchForStates;
 import csc4500.core.search.framework.SearchUtils;
@@ -50,12 +52,21 @@ public class DepthLimitedSearch implements SearchForActions, SearchForStates {
 	public static final String METRIC_QUEUE_SIZE = "queueSize";
 	public static final String METRIC_MAX_QUEUE_SIZE = "maxQueueSize";
 	public static final String METRIC_EFFECTIVE_BRANCH_FACTOR = "effectiveBranchFactor";
+	public static final String METRIC_PRUNED_ACTIONS = "prunedActions";
 	public static final Node CUTOFF_NODE = new Node(null);
 
 
 	private final int limit;
 	private final NodeExpander nodeExpander;
 	private Metrics metrics = new Metrics();
+	// the node expander counter is not reset (IDS accumulates over DLS runs)
+	private int prunedAtStart;
+	private long nodesExpanded;
+	private int queueSize;
+	private int maxQueueSize;
+	// successor iterators of the nodes on the current path
+	private NodeExpander.Successors[] frames = new NodeExpander.Successors[16];
+	private boolean[] cutoffOccurred = new boolean[16];
 
 	public DepthLimitedSearch(int limit) {
 		this(limit, new NodeExpander());
@@ -94,84 +105,99 @@ public class DepthLimitedSearch implements SearchForActions, SearchForStates {
 	
 	public Node findNode(Problem p) {
 		clearInstrumentation();
-		// return RECURSIVE-DLS(MAKE-NODE(INITIAL-STATE[problem]), problem,
-		// limit)
-		return recursiveDLS(nodeExpander.createRootNode(p.getInitialState()), p, limit);
+		try {
+			// return RECURSIVE-DLS(MAKE-NODE(INITIAL-STATE[problem]), problem,
+			// limit)
+			Node result = iterativeDLS(nodeExpander.createRootNode(p.getInitialState()), p);
+			if (result != null && result != CUTOFF_NODE) {
+				metrics.set(METRIC_PATH_COST, result.getPathCost());
+				if (result.getPathCost() > 0)
+					metrics.set(METRIC_EFFECTIVE_BRANCH_FACTOR,
+							getEBF(nodeExpander.getNumOfExpandCalls(), result.getPathCost()));
+			}
+			return result;
+		} finally {
+			updateMetrics();
+		}
 	}
 
 	// function RECURSIVE-DLS(node, problem, limit) returns a solution, or
 	// failure/cutoff
 	
-	// In Java 8 the result type should be Optional<Node>!
 	/**
-	 * Returns a solution node, the {@link #CUTOFF_NODE}, or null (failure).
+	 * Simulates RECURSIVE-DLS with an explicit stack of successor iterators,
+	 * one for each node on the current path. The stack size is the depth of
+	 * the current node. Children are created one at a time, when they are
+	 * visited. Returns a solution node, the {@link #CUTOFF_NODE}, or null
+	 * (failure).
 	 */
-	private Node recursiveDLS(Node node, Problem problem, int limit) {
-		List<Node> storage;
-
-		
-		//2-7-22 Amended to calculate queue size
-		//2-8-22 Amended to properly calculate queue, max queue, and EBF in DLS
-
-		
-		// if problem.GOAL-TEST(node.STATE) then return SOLUTION(node)
-		if (SearchUtils.isGoalState(problem, node)) {
-			metrics.set(METRIC_PATH_COST, node.getPathCost());
-			metrics.set(METRIC_EFFECTIVE_BRANCH_FACTOR, getEBF(nodeExpander.getNumOfExpandCalls(), metrics.getDouble(METRIC_PATH_COST)));
-
-			return node;
-		} else if (0 == limit || CancelableThread.currIsCanceled()) {
-			//Code Nick added to decrement queue size
-			
-			// else if limit = 0 then return cutoff
-			return CUTOFF_NODE;
-		} else {
-			// else
-			// cutoff_occurred? <- false
-			boolean cutoff_occurred = false;
-			// for each action in problem.ACTIONS(node.STATE) do
-			metrics.set(METRIC_NODES_EXPANDED, metrics.getLong(METRIC_NODES_EXPANDED)+1);
-			
-			
-			storage = nodeExpander.expand(node, problem);
-			metrics.set(METRIC_QUEUE_SIZE, metrics.getInt(METRIC_QUEUE_SIZE) + storage.size());
-			
-			
-			if(metrics.getInt(METRIC_QUEUE_SIZE) >metrics.getInt(METRIC_MAX_QUEUE_SIZE) ) {
-				metrics.set(METRIC_MAX_QUEUE_SIZE, metrics.getInt(METRIC_QUEUE_SIZE));
-			}
-			
-			for (Node child: storage) {
-				
-				// child <- CHILD-NODE(problem, node, action)
-				// result <- RECURSIVE-DLS(child, problem, limit - 1)
-				Node result = recursiveDLS(child, problem, limit - 1);
-				metrics.set(METRIC_QUEUE_SIZE, metrics.getInt(METRIC_QUEUE_SIZE)-1);
-				// if result = cutoff then cutoff_occurred? <- true
-				if (result == CUTOFF_NODE) {
-					cutoff_occurred = true;
-					
-				} else if (result != null) {
-					// else if result != failure then return result
-					
-					
-					
-					return result;
+	private Node iterativeDLS(Node root, Problem problem) {
+		int depth = 0;
+		Node node = root;
+		try {
+			while (true) {
+				Node result;
+				// if problem.GOAL-TEST(node.STATE) then return SOLUTION(node)
+				if (SearchUtils.isGoalState(problem, node)) {
+					result = node;
+				} else if (depth == limit || CancelableThread.currIsCanceled()) {
+					// else if limit = 0 then return cutoff
+					result = CUTOFF_NODE;
+				} else {
+					// cutoff_occurred? <- false
+					// for each action in problem.ACTIONS(node.STATE) do
+					NodeExpander.Successors successors = nodeExpander.expandLazily(node, problem);
+					nodesExpanded++;
+					queueSize += successors.remaining();
+					if (queueSize > maxQueueSize)
+						maxQueueSize = queueSize;
+					if (successors.hasNext()) {
+						push(depth++, successors);
+						// child <- CHILD-NODE(problem, node, action)
+						node = successors.next();
+						continue;
+					}
+					result = null;
+				}
+				// return the result to the parent frames until a frame with
+				// further children is found
+				while (true) {
+					if (depth == 0)
+						return result;
+					queueSize--;
+					if (result == CUTOFF_NODE) {
+						// if result = cutoff then cutoff_occurred? <- true
+						cutoffOccurred[depth - 1] = true;
+					} else if (result != null) {
+						// else if result != failure then return result
+						frames[--depth] = null;
+						continue;
+					}
+					NodeExpander.Successors successors = frames[depth - 1];
+					if (successors.hasNext()) {
+						// result <- RECURSIVE-DLS(child, problem, limit - 1)
+						node = successors.next();
+						break;
+					}
+					// if cutoff_occurred? then return cutoff else return failure
+					result = cutoffOccurred[--depth] ? CUTOFF_NODE : null;
+					frames[depth] = null;
 				}
-				
-			}
-			
-			
-
-			// if cutoff_occurred? then return cutoff else return failure
-			if (cutoff_occurred) {
-				return CUTOFF_NODE;
-			} else {
-				return null;
 			}
+		} finally {
+			for (int i = 0; i < depth; i++)
+				frames[i] = null;
 		}
 	}
 
+	private void push(int depth, NodeExpander.Successors successors) {
+		if (depth == frames.length) {
+			frames = Arrays.copyOf(frames, 2 * depth);
+			cutoffOccurred = Arrays.copyOf(cutoffOccurred, 2 * depth);
+		}
+		frames[depth] = successors;
+		cutoffOccurred[depth] = false;
+	}
 
 	@Override
 	public NodeExpander getNodeExpander() {
@@ -183,7 +209,9 @@ public class DepthLimitedSearch implements SearchForActions, SearchForStates {
 	 */
 	@Override
 	public Metrics getMetrics() {
-		
+		if (nodeExpander instanceof PruningNodeExpander)
+			metrics.set(METRIC_PRUNED_ACTIONS,
+					((PruningNodeExpander) nodeExpander).getNumOfPrunedActions() - prunedAtStart);
 		return metrics;
 	}
 	
@@ -236,14 +264,23 @@ protected double getEBF(int numExpandCalls, double solnlength) {
 		return branch_factor_est;
 	}
 
+	private void updateMetrics() {
+		metrics.set(METRIC_NODES_EXPANDED, nodesExpanded);
+		metrics.set(METRIC_QUEUE_SIZE, queueSize);
+		metrics.set(METRIC_MAX_QUEUE_SIZE, maxQueueSize);
+	}
+
 	/**
 	 * Sets the nodes expanded and path cost metrics to zero.
 	 */
 	private void clearInstrumentation() {
-		metrics.set(METRIC_QUEUE_SIZE, 0);
-		metrics.set(METRIC_MAX_QUEUE_SIZE, 0);
-		metrics.set(METRIC_NODES_EXPANDED, 0);
+		nodesExpanded = 0;
+		queueSize = 0;
+		maxQueueSize = 0;
+		updateMetrics();
 		metrics.set(METRIC_PATH_COST, 0);
-
+		metrics.set(METRIC_EFFECTIVE_BRANCH_FACTOR, 0);
+		if (nodeExpander instanceof PruningNodeExpander)
+			prunedAtStart = ((PruningNodeExpander) nodeExpander).getNumOfPrunedActions();
 	}
-}
\ No newline at end of file
+}
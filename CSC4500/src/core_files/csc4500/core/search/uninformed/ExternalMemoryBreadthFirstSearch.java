@@ -0,0 +1,619 @@
+package csc4500.core.search.uninformed;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import csc4500.core.agent.Action;
+import csc4500.core.search.framework.Metrics;
+import csc4500.core.search.framework.Node;
+import csc4500.core.search.framework.NodeExpander;
+import csc4500.core.search.framework.SearchForActions;
+import csc4500.core.search.framework.SearchForStates;
+import csc4500.core.search.framework.SearchUtils;
+import csc4500.core.search.framework.problem.Problem;
+import csc4500.core.search.framework.problem.StateCodec;
+import csc4500.core.util.CancelableThread;
+
+/**
+ * External-memory breadth-first search with delayed duplicate detection
+ * (Korf). Each layer of the search is stored on disk as a sorted file of packed
+ * states (see {@link StateCodec}). The successors of a layer are collected in
+ * bounded in-memory buffers, which are sorted in parallel and spilled to run
+ * files. The runs are combined by a streaming k-way merge which removes
+ * duplicates and all states of the two previous layers. Layer and run files
+ * are read and written through small direct buffers, so run files can be
+ * deleted as soon as they have been merged. The heap consumption is bounded by
+ * the run buffer size, independently of the size of the state space.
+ *
+ * <br>
+ * Only the sorting of runs is parallel: a run is sorted and written by a
+ * background thread while the next run is filled. The merge runs in the
+ * calling thread on purpose. It reads all runs and the two previous layers
+ * strictly sequentially and writes one sorted layer file, so its cost is
+ * dominated by I/O, and the heap adds only about log k comparisons per state.
+ * Splitting the merge by key ranges would let several threads read different
+ * positions of the same files at the same time. On a single disk this turns
+ * streaming reads into seeks and needs an index of split points per run, while
+ * the partial layers would have to be concatenated afterwards.
+ *
+ * <br>
+ * Removing duplicates with respect to the previous two layers only is correct
+ * for state spaces with reversible actions (e.g. sliding tile puzzles). The
+ * same property is used to reconstruct the solution path: starting at the goal,
+ * a predecessor is searched in the previous layer file by binary search.
+ *
+ * <br>
+ * The search is resumable: after each completed layer, a progress file is
+ * written to the working directory. If resumption is enabled and a search for
+ * the same initial state is started again, it continues with the last completed
+ * layer. The progress file does not identify the goal test, so the states of
+ * the completed layers are tested again before the search continues.
+ */
+public class ExternalMemoryBreadthFirstSearch implements SearchForActions, SearchForStates {
+
+	public static final String METRIC_NODES_EXPANDED = "nodesExpanded";
+	public static final String METRIC_PATH_COST = "pathCost";
+	public static final String METRIC_LAYERS = "layers";
+	/** Prefix of the metrics which hold the number of states of each layer. */
+	public static final String METRIC_LAYER_SIZE = "layerSize";
+	public static final String METRIC_BYTES_READ = "bytesRead";
+	public static final String METRIC_BYTES_WRITTEN = "bytesWritten";
+
+	private static final String PROGRESS_FILE = "progress.properties";
+	private static final int DEFAULT_RUN_CAPACITY = 1 << 22;
+	private static final int IO_BUFFER_SIZE = 1 << 20;
+	// readers are opened for all run files at the same time
+	private static final int READ_BUFFER_SIZE = 1 << 16;
+
+	private final StateCodec codec;
+	private final File directory;
+	private final NodeExpander nodeExpander;
+	private final Metrics metrics = new Metrics();
+	private int runCapacity = DEFAULT_RUN_CAPACITY;
+	private boolean isResumeEnabled = false;
+
+	private long numExpandCalls;
+	private long bytesRead;
+	private long bytesWritten;
+	private List<Long> layerSizes = new ArrayList<Long>();
+
+	/**
+	 * Constructs a search which stores its layer and run files in the
+	 * specified directory.
+	 */
+	public ExternalMemoryBreadthFirstSearch(StateCodec codec, File directory) {
+		this(codec, directory, new NodeExpander());
+	}
+
+	public ExternalMemoryBreadthFirstSearch(StateCodec codec, File directory, NodeExpander nodeExpander) {
+		this.codec = codec;
+		this.directory = directory;
+		this.nodeExpander = nodeExpander;
+	}
+
+	/**
+	 * Sets the number of states which are buffered in memory before a sorted
+	 * run is written to disk.
+	 */
+	public void setRunCapacity(int runCapacity) {
+		this.runCapacity = runCapacity;
+	}
+
+	/**
+	 * Controls whether a search continues from the last completed layer of a
+	 * previous search for the same initial state. Default value is false.
+	 */
+	public void setResumeEnabled(boolean state) {
+		isResumeEnabled = state;
+	}
+
+	@Override
+	public List<Action> findActions(Problem p) {
+		nodeExpander.useParentLinks(true);
+		Node node = findNode(p);
+		return node == null ? SearchUtils.failure() : SearchUtils.getSequenceOfActions(node);
+	}
+
+	@Override
+	public Object findState(Problem p) {
+		long[] goal = findGoal(p);
+		return goal == null ? null : codec.decode(goal[1]);
+	}
+
+	/**
+	 * Returns a node referencing a goal state, whose path is reconstructed from
+	 * the layer files, or null if no goal state is reachable.
+	 */
+	public Node findNode(Problem p) {
+		long[] goal = findGoal(p);
+		if (goal == null)
+			return null;
+		try {
+			Node result = reconstructPath(p, (int) goal[0], goal[1]);
+			metrics.set(METRIC_PATH_COST, result.getPathCost());
+			return result;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public NodeExpander getNodeExpander() {
+		return nodeExpander;
+	}
+
+	/**
+	 * Returns all the search metrics.
+	 */
+	@Override
+	public Metrics getMetrics() {
+		metrics.set(METRIC_NODES_EXPANDED, numExpandCalls);
+		metrics.set(METRIC_BYTES_READ, bytesRead);
+		metrics.set(METRIC_BYTES_WRITTEN, bytesWritten);
+		metrics.set(METRIC_LAYERS, layerSizes.size());
+		for (int i = 0; i < layerSizes.size(); i++)
+			metrics.set(METRIC_LAYER_SIZE + i, layerSizes.get(i));
+		return metrics;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Runs the layered search and returns depth and packed state of the goal
+	 * found first, or null.
+	 */
+	private long[] findGoal(Problem p) {
+		clearInstrumentation();
+		ExecutorService spiller = Executors.newSingleThreadExecutor();
+		try {
+			directory.mkdirs();
+			long root = codec.encode(p.getInitialState());
+			int layer = isResumeEnabled ? loadProgress(root) : -1;
+			if (layer < 0) {
+				if (p.isGoalState(p.getInitialState()))
+					return new long[] { 0, root };
+				LayerWriter writer = new LayerWriter(getLayerFile(0));
+				writer.write(root);
+				writer.close();
+				layerSizes.add(1L);
+				layer = 0;
+				saveProgress(root, layer);
+			} else {
+				long[] goal = findGoalInLayers(p, layer);
+				if (goal != null)
+					return goal;
+			}
+			while (layerSizes.get(layer) > 0 && !CancelableThread.currIsCanceled()) {
+				List<File> runs = expandLayer(p, layer, spiller);
+				long[] goal = mergeRuns(p, runs, layer + 1);
+				for (File run : runs)
+					run.delete();
+				layer++;
+				saveProgress(root, layer);
+				if (goal != null)
+					return goal;
+			}
+			return null;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			spiller.shutdown();
+		}
+	}
+
+	/**
+	 * Generates all successors of the specified layer and writes them to
+	 * sorted run files. Sorting and writing is done by a background thread
+	 * while the next run is filled.
+	 */
+	private List<File> expandLayer(Problem p, int layer, ExecutorService spiller) throws IOException {
+		List<File> runs = new ArrayList<File>();
+		Future<?> pending = null;
+		long[] buffer = new long[runCapacity];
+		int size = 0;
+		LayerReader reader = new LayerReader(getLayerFile(layer));
+		try {
+			while (reader.hasNext()) {
+				Object state = codec.decode(reader.next());
+				numExpandCalls++;
+				for (Action action : p.getActionsFunction().actions(state)) {
+					buffer[size++] = codec.encode(p.getResultFunction().result(state, action));
+					if (size == buffer.length) {
+						waitFor(pending);
+						File run = new File(directory, "run-" + (layer + 1) + "-" + runs.size() + ".bin");
+						runs.add(run);
+						pending = spiller.submit(new RunSpiller(buffer, size, run));
+						buffer = new long[runCapacity];
+						size = 0;
+					}
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		waitFor(pending);
+		if (size > 0) {
+			File run = new File(directory, "run-" + (layer + 1) + "-" + runs.size() + ".bin");
+			runs.add(run);
+			new RunSpiller(buffer, size, run).run();
+		}
+		return runs;
+	}
+
+	/**
+	 * Merges the sorted runs into the next layer file, removing duplicates as
+	 * well as all states of the two previous layers. Each new state is tested
+	 * for being a goal.
+	 */
+	private long[] mergeRuns(Problem p, List<File> runs, int newLayer) throws IOException {
+		long[] goal = null;
+		int k = runs.size();
+		LayerReader[] readers = new LayerReader[k];
+		// heap of reader indices, ordered by the readers' current values
+		int[] heap = new int[k];
+		int heapSize = 0;
+		LayerReader prev = new LayerReader(getLayerFile(newLayer - 1));
+		LayerReader prevPrev = newLayer >= 2 ? new LayerReader(getLayerFile(newLayer - 2)) : null;
+		LayerWriter writer = new LayerWriter(getLayerFile(newLayer));
+		try {
+			for (int i = 0; i < k; i++) {
+				readers[i] = new LayerReader(runs.get(i));
+				if (readers[i].hasNext()) {
+					readers[i].next();
+					heap[heapSize++] = i;
+					siftUp(heap, heapSize - 1, readers);
+				}
+			}
+			boolean first = true;
+			long last = 0;
+			while (heapSize > 0) {
+				int r = heap[0];
+				long state = readers[r].current();
+				if (readers[r].hasNext()) {
+					readers[r].next();
+				} else {
+					heap[0] = heap[--heapSize];
+				}
+				siftDown(heap, 0, heapSize, readers);
+
+				if (!first && state == last)
+					continue;
+				first = false;
+				last = state;
+				if (prev.skipTo(state) || prevPrev != null && prevPrev.skipTo(state))
+					continue;
+				writer.write(state);
+				if (goal == null && p.isGoalState(codec.decode(state)))
+					goal = new long[] { newLayer, state };
+			}
+		} finally {
+			for (LayerReader reader : readers)
+				if (reader != null)
+					reader.close();
+			prev.close();
+			if (prevPrev != null)
+				prevPrev.close();
+			writer.close();
+		}
+		layerSizes.add(writer.count);
+		return goal;
+	}
+
+	/**
+	 * Tests the states of the completed layers of a resumed search, which may
+	 * have been generated with another goal test.
+	 */
+	private long[] findGoalInLayers(Problem p, int lastLayer) throws IOException {
+		for (int d = 0; d <= lastLayer; d++) {
+			LayerReader reader = new LayerReader(getLayerFile(d));
+			try {
+				while (reader.hasNext()) {
+					long state = reader.next();
+					if (p.isGoalState(codec.decode(state)))
+						return new long[] { d, state };
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Walks back from the goal through the layer files. For each state, a
+	 * neighbor contained in the previous layer is searched, and the action
+	 * leading from that neighbor to the state is determined.
+	 */
+	private Node reconstructPath(Problem p, int depth, long goal) throws IOException {
+		Object[] states = new Object[depth + 1];
+		Action[] actions = new Action[depth + 1];
+		states[depth] = codec.decode(goal);
+		for (int d = depth; d > 0; d--) {
+			Object state = states[d];
+			FileChannel layer = FileChannel.open(getLayerFile(d - 1).toPath(), StandardOpenOption.READ);
+			try {
+				for (Action a : p.getActionsFunction().actions(state)) {
+					Object pred = p.getResultFunction().result(state, a);
+					if (containsState(layer, codec.encode(pred))) {
+						for (Action b : p.getActionsFunction().actions(pred)) {
+							if (state.equals(p.getResultFunction().result(pred, b))) {
+								states[d - 1] = pred;
+								actions[d] = b;
+								break;
+							}
+						}
+						if (states[d - 1] != null)
+							break;
+					}
+				}
+			} finally {
+				layer.close();
+			}
+			if (states[d - 1] == null)
+				throw new IllegalStateException("No predecessor found in layer " + (d - 1)
+						+ ". Are all actions reversible?");
+		}
+		Node node = nodeExpander.createRootNode(states[0]);
+		for (int d = 1; d <= depth; d++) {
+			double stepCost = p.getStepCostFunction().c(states[d - 1], actions[d], states[d]);
+			node = nodeExpander.createNode(states[d], node, actions[d], stepCost);
+		}
+		return node;
+	}
+
+	/** Binary search in a sorted layer file. */
+	private boolean containsState(FileChannel layer, long state) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(8);
+		long low = 0;
+		long high = layer.size() / 8 - 1;
+		while (low <= high) {
+			long mid = (low + high) >>> 1;
+			buffer.clear();
+			layer.read(buffer, mid * 8);
+			bytesRead += 8;
+			long value = buffer.getLong(0);
+			if (value < state)
+				low = mid + 1;
+			else if (value > state)
+				high = mid - 1;
+			else
+				return true;
+		}
+		return false;
+	}
+
+	private static void siftUp(int[] heap, int i, LayerReader[] readers) {
+		int r = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (readers[heap[parent]].current() <= readers[r].current())
+				break;
+			heap[i] = heap[parent];
+			i = parent;
+		}
+		heap[i] = r;
+	}
+
+	private static void siftDown(int[] heap, int i, int size, LayerReader[] readers) {
+		if (size == 0)
+			return;
+		int r = heap[i];
+		while (2 * i + 1 < size) {
+			int c = 2 * i + 1;
+			if (c + 1 < size && readers[heap[c + 1]].current() < readers[heap[c]].current())
+				c++;
+			if (readers[r].current() <= readers[heap[c]].current())
+				break;
+			heap[i] = heap[c];
+			i = c;
+		}
+		heap[i] = r;
+	}
+
+	private void waitFor(Future<?> future) throws IOException {
+		if (future != null) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while writing run file.", e);
+			} catch (ExecutionException e) {
+				throw new IOException("Writing run file failed.", e.getCause());
+			}
+		}
+	}
+
+	private File getLayerFile(int layer) {
+		return new File(directory, "layer-" + layer + ".bin");
+	}
+
+	/**
+	 * Reads the progress file and returns the last completed layer, or -1 if
+	 * the file does not exist or belongs to a search with another initial
+	 * state.
+	 */
+	private int loadProgress(long root) throws IOException {
+		File file = new File(directory, PROGRESS_FILE);
+		if (!file.exists())
+			return -1;
+		Properties progress = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+			progress.load(in);
+		} finally {
+			in.close();
+		}
+		if (Long.parseLong(progress.getProperty("root")) != root)
+			return -1;
+		int layer = Integer.parseInt(progress.getProperty("lastLayer"));
+		for (int i = 0; i <= layer; i++)
+			layerSizes.add(Long.parseLong(progress.getProperty("layerSize" + i)));
+		return layer;
+	}
+
+	private void saveProgress(long root, int layer) throws IOException {
+		Properties progress = new Properties();
+		progress.setProperty("root", Long.toString(root));
+		progress.setProperty("lastLayer", Integer.toString(layer));
+		for (int i = 0; i < layerSizes.size(); i++)
+			progress.setProperty("layerSize" + i, Long.toString(layerSizes.get(i)));
+		File tmp = new File(directory, PROGRESS_FILE + ".tmp");
+		OutputStream out = new FileOutputStream(tmp);
+		try {
+			progress.store(out, "External-memory BFS progress");
+		} finally {
+			out.close();
+		}
+		File file = new File(directory, PROGRESS_FILE);
+		file.delete();
+		tmp.renameTo(file);
+	}
+
+	private void clearInstrumentation() {
+		numExpandCalls = 0;
+		bytesRead = 0;
+		bytesWritten = 0;
+		layerSizes = new ArrayList<Long>();
+		metrics.set(METRIC_PATH_COST, 0);
+	}
+
+	/** Sorts a buffer in parallel and writes it to a run file. */
+	private class RunSpiller implements Runnable {
+		private final long[] buffer;
+		private final int size;
+		private final File file;
+
+		RunSpiller(long[] buffer, int size, File file) {
+			this.buffer = buffer;
+			this.size = size;
+			this.file = file;
+		}
+
+		@Override
+		public void run() {
+			Arrays.parallelSort(buffer, 0, size);
+			try {
+				LayerWriter writer = new LayerWriter(file);
+				try {
+					for (int i = 0; i < size; i++)
+						writer.write(buffer[i]);
+				} finally {
+					writer.close();
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/** Writes packed states sequentially to a file. */
+	private class LayerWriter {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(IO_BUFFER_SIZE);
+		long count;
+
+		LayerWriter(File file) throws IOException {
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+		}
+
+		void write(long state) throws IOException {
+			if (!buffer.hasRemaining())
+				flush();
+			buffer.putLong(state);
+			count++;
+		}
+
+		void close() throws IOException {
+			flush();
+			channel.close();
+		}
+
+		private void flush() throws IOException {
+			buffer.flip();
+			synchronized (ExternalMemoryBreadthFirstSearch.this) {
+				bytesWritten += buffer.remaining();
+			}
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * Reads a sorted file of packed states sequentially. No mappings are kept,
+	 * so the file can be deleted on all platforms after the reader has been
+	 * closed.
+	 */
+	private class LayerReader {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+		private final long count;
+		private long position; // index of the next state
+		private long current;
+
+		LayerReader(File file) throws IOException {
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			count = channel.size() / 8;
+			buffer.flip();
+		}
+
+		boolean hasNext() {
+			return position < count;
+		}
+
+		long next() throws IOException {
+			if (buffer.remaining() < 8) {
+				buffer.compact();
+				while (buffer.hasRemaining() && channel.read(buffer) != -1)
+					;
+				buffer.flip();
+			}
+			current = buffer.getLong();
+			position++;
+			bytesRead += 8;
+			return current;
+		}
+
+		long current() {
+			return current;
+		}
+
+		/**
+		 * Advances to the first value which is not smaller than the specified
+		 * state and checks whether it equals the state. Requires that the
+		 * specified states are passed in ascending order.
+		 */
+		boolean skipTo(long state) throws IOException {
+			if (position > 0 && current >= state)
+				return current == state;
+			while (hasNext()) {
+				if (next() >= state)
+					return current == state;
+			}
+			return false;
+		}
+
+		void close() throws IOException {
+			channel.close();
+		}
+	}
+}
@@ -6,6 +6,7 @@ import csc4500.core.agent.Action;
 import csc4500.core.search.framework.Metrics;
 import csc4500.core.search.framework.Node;
 import csc4500.core.search.framework.NodeExpander;
+import csc4500.core.search.framework.PruningNodeExpander;
 import csc4500.core.search.framework.SearchForActions;
 import csc4500.core.search.framework.SearchForStates;
 import csc4500.core.search.framework.SearchUtils;
@@ -39,6 +40,7 @@ public class IterativeDeepeningSearch implements SearchForActions, SearchForStat
 	public static final String METRIC_MAX_QUEUE_SIZE = "maxQueueSize";
 	public static final String METRIC_PATH_COST = "pathCost";
 	public static final String METRIC_EFFECTIVE_BRANCH_FACTOR = "effectiveBranchFactor";
+	public static final String METRIC_PRUNED_ACTIONS = "prunedActions";
 
 	private final NodeExpander nodeExpander;
 	private final Metrics metrics;
@@ -92,6 +94,8 @@ public class IterativeDeepeningSearch implements SearchForActions, SearchForStat
 	
 	@Override
 	public Metrics getMetrics() {
+		if (nodeExpander instanceof PruningNodeExpander)
+			metrics.set(METRIC_PRUNED_ACTIONS, ((PruningNodeExpander) nodeExpander).getNumOfPrunedActions());
 		return metrics;
 	}
 	
@@ -116,52 +120,7 @@ public class IterativeDeepeningSearch implements SearchForActions, SearchForStat
 	}
 	
 protected double getEBF(int numExpandCalls, double solnlength) {
-		
-		double tolerance = 0.01; 
-		double delta = 0.01; 
-		double powerSum = 0.0;
-		double error = 0.0;
-		double last_error_sign = -1; 
-		double limit = numExpandCalls;
-		double branch_factor_est = 1.0;
-		
-		
-		
-		do {
-			powerSum = 0; 
-			for (int i=0; i<= solnlength; i++) {
-					
-				powerSum += Math.pow(branch_factor_est, (double)i);
-						
-				}
-				
-				error = powerSum - limit; 	
-				
-			if(error >0) {
-				branch_factor_est -= delta; 
-				
-				if(Math.signum(error) != last_error_sign) {
-					last_error_sign = Math.signum(error);
-					delta = delta/2.0; 
-				}
-			}
-			else {
-				branch_factor_est += delta; 
-								
-								if(Math.signum(error) != last_error_sign) {
-									last_error_sign = Math.signum(error);
-									delta = delta/2.0; 
-								}
-				
-			}
-		}
-				
-			while (Math.abs(error)> tolerance); 
-		
-		
-		
-		
-		return branch_factor_est;
+		return SearchUtils.getEBF(numExpandCalls, solnlength);
 	}
 
 	//
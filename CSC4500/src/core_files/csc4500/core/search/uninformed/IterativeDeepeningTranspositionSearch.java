@@ -0,0 +1,229 @@
+package csc4500.core.search.uninformed;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import csc4500.core.agent.Action;
+import csc4500.core.search.framework.Metrics;
+import csc4500.core.search.framework.Node;
+import csc4500.core.search.framework.NodeExpander;
+import csc4500.core.search.framework.SearchForActions;
+import csc4500.core.search.framework.SearchForStates;
+import csc4500.core.search.framework.SearchUtils;
+import csc4500.core.search.framework.TranspositionTable;
+import csc4500.core.search.framework.problem.Problem;
+import csc4500.core.util.CancelableThread;
+
+/**
+ * Iterative deepening search with duplicate pruning. Like
+ * {@link IterativeDeepeningSearch}, it repeatedly applies depth-limited search
+ * with increasing limits, but:
+ * <ul>
+ * <li>successors whose states are already on the current path are skipped
+ * (path-based cycle check, this also removes immediate back-and-forth
+ * moves),</li>
+ * <li>after a subtree has been searched without success, its root state is
+ * recorded in a {@link TranspositionTable} together with the remaining depth.
+ * Transpositions reached later with the same or a lower remaining depth are not
+ * searched again. The table is kept across iterations, so its memory
+ * consumption is bounded by its capacity.</li>
+ * </ul>
+ * On puzzle graphs, this reduces the number of expanded nodes by orders of
+ * magnitude.
+ *
+ * <br>
+ * Failure information is path-dependent if a successor was skipped because
+ * its state is on the path above the subtree root: a goal might be reachable
+ * through that state, which is still being searched. Such results are not used
+ * in the current iteration. They are collected (up to the table capacity) and
+ * stored when the iteration has failed, because then all states of the path
+ * have been searched without success. So the returned solutions are still the
+ * shallowest ones.
+ */
+public class IterativeDeepeningTranspositionSearch implements SearchForActions, SearchForStates {
+	public static final String METRIC_NODES_EXPANDED = "nodesExpanded";
+	public static final String METRIC_QUEUE_SIZE = "queueSize";
+	public static final String METRIC_MAX_QUEUE_SIZE = "maxQueueSize";
+	public static final String METRIC_PATH_COST = "pathCost";
+	public static final String METRIC_EFFECTIVE_BRANCH_FACTOR = "effectiveBranchFactor";
+	public static final String METRIC_TABLE_HITS = "tableHits";
+	public static final String METRIC_CYCLES_PRUNED = "cyclesPruned";
+	public static final String METRIC_TABLE_SIZE = "tableSize";
+
+	private static final int DEFAULT_TABLE_CAPACITY = 1 << 20;
+
+	private final NodeExpander nodeExpander;
+	private final TranspositionTable table;
+	private final Metrics metrics = new Metrics();
+	// states on the current path with their depths
+	private final Map<Object, Integer> path = new HashMap<Object, Integer>();
+	// smallest depth of a path state skipped in the subtree searched last
+	private int lowestPathReference;
+	// path-dependent results of the current iteration and their depth limits
+	private final List<Object> pendingStates = new ArrayList<Object>();
+	private final List<Integer> pendingLimits = new ArrayList<Integer>();
+
+	private int queueSize;
+	private int maxQueueSize;
+	private long tableHits;
+	private long cyclesPruned;
+
+	public IterativeDeepeningTranspositionSearch() {
+		this(DEFAULT_TABLE_CAPACITY);
+	}
+
+	/**
+	 * Constructs a search with a transposition table of the specified capacity.
+	 */
+	public IterativeDeepeningTranspositionSearch(int tableCapacity) {
+		this(tableCapacity, new NodeExpander());
+	}
+
+	public IterativeDeepeningTranspositionSearch(int tableCapacity, NodeExpander nodeExpander) {
+		this.nodeExpander = nodeExpander;
+		this.table = new TranspositionTable(tableCapacity);
+	}
+
+	@Override
+	public List<Action> findActions(Problem p) {
+		nodeExpander.useParentLinks(true);
+		Node node = findNode(p);
+		return node == null ? SearchUtils.failure() : SearchUtils.getSequenceOfActions(node);
+	}
+
+	@Override
+	public Object findState(Problem p) {
+		nodeExpander.useParentLinks(false);
+		Node node = findNode(p);
+		return node == null ? null : node.getState();
+	}
+
+	public Node findNode(Problem p) {
+		clearInstrumentation();
+		table.clear();
+		try {
+			for (int limit = 0; !CancelableThread.currIsCanceled(); limit++) {
+				path.clear();
+				pendingStates.clear();
+				pendingLimits.clear();
+				queueSize = 0;
+				Node result = recursiveDLS(nodeExpander.createRootNode(p.getInitialState()), p, limit, 0);
+				if (result != DepthLimitedSearch.CUTOFF_NODE) {
+					if (result != null) {
+						metrics.set(METRIC_PATH_COST, result.getPathCost());
+						if (result.getPathCost() > 0)
+							metrics.set(METRIC_EFFECTIVE_BRANCH_FACTOR,
+									SearchUtils.getEBF(nodeExpander.getNumOfExpandCalls(), result.getPathCost()));
+					}
+					return result;
+				}
+				if (!CancelableThread.currIsCanceled())
+					for (int i = 0; i < pendingStates.size(); i++)
+						table.store(pendingStates.get(i), pendingLimits.get(i));
+			}
+			return null;
+		} finally {
+			pendingStates.clear();
+			pendingLimits.clear();
+			updateMetrics();
+		}
+	}
+
+	@Override
+	public NodeExpander getNodeExpander() {
+		return nodeExpander;
+	}
+
+	@Override
+	public Metrics getMetrics() {
+		return metrics;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns a solution node, the {@link DepthLimitedSearch#CUTOFF_NODE}, or
+	 * null (failure). Sets the smallest depth of a path state which was
+	 * skipped in the subtree.
+	 */
+	private Node recursiveDLS(Node node, Problem problem, int limit, int depth) {
+		lowestPathReference = Integer.MAX_VALUE;
+		if (SearchUtils.isGoalState(problem, node))
+			return node;
+		if (limit == 0 || CancelableThread.currIsCanceled())
+			return DepthLimitedSearch.CUTOFF_NODE;
+		Object state = node.getState();
+		int searchedDepth = table.getDepth(state);
+		if (searchedDepth >= limit) {
+			tableHits++;
+			return searchedDepth == TranspositionTable.EXHAUSTED ? null : DepthLimitedSearch.CUTOFF_NODE;
+		}
+
+		boolean cutoffOccurred = false;
+		int lowest = Integer.MAX_VALUE;
+		path.put(state, depth);
+		List<Node> children = nodeExpander.expand(node, problem);
+		queueSize += children.size();
+		if (queueSize > maxQueueSize)
+			maxQueueSize = queueSize;
+		int remaining = children.size();
+		try {
+			for (Node child : children) {
+				remaining--;
+				queueSize--;
+				Integer pathDepth = path.get(child.getState());
+				if (pathDepth != null) {
+					cyclesPruned++;
+					lowest = Math.min(lowest, pathDepth);
+				} else {
+					Node result = recursiveDLS(child, problem, limit - 1, depth + 1);
+					lowest = Math.min(lowest, lowestPathReference);
+					if (result == DepthLimitedSearch.CUTOFF_NODE)
+						cutoffOccurred = true;
+					else if (result != null)
+						return result;
+				}
+			}
+		} finally {
+			queueSize -= remaining;
+			path.remove(state);
+		}
+		if (lowest >= depth) {
+			// cycles back into the subtree do not depend on the path
+			table.store(state, cutoffOccurred ? limit : TranspositionTable.EXHAUSTED);
+		} else if (pendingStates.size() < table.capacity()) {
+			// only valid up to the limit, as the path states may be cut off
+			pendingStates.add(state);
+			pendingLimits.add(limit);
+		}
+		lowestPathReference = lowest;
+		return cutoffOccurred ? DepthLimitedSearch.CUTOFF_NODE : null;
+	}
+
+	private void updateMetrics() {
+		metrics.set(METRIC_NODES_EXPANDED, nodeExpander.getNumOfExpandCalls());
+		metrics.set(METRIC_QUEUE_SIZE, queueSize);
+		metrics.set(METRIC_MAX_QUEUE_SIZE, maxQueueSize);
+		metrics.set(METRIC_TABLE_HITS, tableHits);
+		metrics.set(METRIC_CYCLES_PRUNED, cyclesPruned);
+		metrics.set(METRIC_TABLE_SIZE, table.size());
+	}
+
+	/**
+	 * Sets all metrics to zero.
+	 */
+	private void clearInstrumentation() {
+		nodeExpander.resetCounter();
+		queueSize = 0;
+		maxQueueSize = 0;
+		tableHits = 0;
+		cyclesPruned = 0;
+		metrics.set(METRIC_PATH_COST, 0);
+		metrics.set(METRIC_EFFECTIVE_BRANCH_FACTOR, 0);
+		updateMetrics();
+	}
+}
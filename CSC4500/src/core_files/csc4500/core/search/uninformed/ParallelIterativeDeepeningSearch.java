@@ -0,0 +1,327 @@
+package csc4500.core.search.uninformed;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleBinaryOperator;
+
+import csc4500.core.agent.Action;
+import csc4500.core.search.framework.Metrics;
+import csc4500.core.search.framework.Node;
+import csc4500.core.search.framework.NodeExpander;
+import csc4500.core.search.framework.SearchForActions;
+import csc4500.core.search.framework.SearchForStates;
+import csc4500.core.search.framework.SearchUtils;
+import csc4500.core.search.framework.evalfunc.HeuristicFunction;
+import csc4500.core.search.framework.problem.Problem;
+import csc4500.core.util.CancelableThread;
+
+/**
+ * Parallel depth-first iterative deepening. Without heuristic function, this
+ * is iterative deepening search (the bound limits the depth); with heuristic
+ * function, it is IDA* (the bound limits f(n) = g(n) + h(n), and the next bound
+ * is the smallest f-value which exceeded the current one).
+ *
+ * <br>
+ * In each iteration, the root is expanded breadth-first until a frontier of at
+ * least {@link #setSplitSize(int) splitSize} subtrees has been generated. The
+ * subtrees are then searched depth-first as fork/join tasks; idle workers
+ * steal tasks from busy ones, so unbalanced subtrees do not matter. The
+ * candidates for the next bound are collected in a striped accumulator and
+ * merged after all workers have finished. Any solution found under the current
+ * bound has minimal depth (IDS) or minimal cost (IDA* with admissible
+ * heuristic), so all sibling tasks are stopped as soon as one worker succeeds.
+ *
+ * <br>
+ * Node expansion is performed concurrently, so the problem's functions and the
+ * heuristic must be thread-safe. Expansions are counted, but node listeners of
+ * the node expander are not informed. Successors whose states are already on
+ * the current path are skipped.
+ */
+public class ParallelIterativeDeepeningSearch implements SearchForActions, SearchForStates {
+	public static final String METRIC_NODES_EXPANDED = "nodesExpanded";
+	public static final String METRIC_PATH_COST = "pathCost";
+	public static final String METRIC_EFFECTIVE_BRANCH_FACTOR = "effectiveBranchFactor";
+	public static final String METRIC_ITERATIONS = "iterations";
+	public static final String METRIC_BOUND = "bound";
+	public static final String METRIC_SUBTREES = "subtrees";
+
+	private static final int DEFAULT_SPLIT_SIZE = 2000;
+
+	private final HeuristicFunction hf;
+	private final NodeExpander nodeExpander;
+	private final ForkJoinPool pool;
+	private final Metrics metrics = new Metrics();
+	private int splitSize = DEFAULT_SPLIT_SIZE;
+
+	// state of the current iteration, shared by all workers
+	private Problem problem;
+	private double bound;
+	private Thread caller;
+	private final AtomicReference<Node> solution = new AtomicReference<Node>();
+	private final LongAdder numExpandCalls = new LongAdder();
+	private DoubleAccumulator nextBound;
+	private int frontierDepth;
+
+	/** Constructs a parallel iterative deepening search. */
+	public ParallelIterativeDeepeningSearch() {
+		this(null);
+	}
+
+	/**
+	 * Constructs a parallel IDA* search with the specified heuristic.
+	 */
+	public ParallelIterativeDeepeningSearch(HeuristicFunction hf) {
+		this(hf, ForkJoinPool.commonPool(), new NodeExpander());
+	}
+
+	/**
+	 * Constructs a search.
+	 *
+	 * @param hf
+	 *            a heuristic function for IDA*, or null for iterative
+	 *            deepening search
+	 * @param pool
+	 *            the pool which executes the subtree searches
+	 * @param nodeExpander
+	 *            the node expander to be used for node creation
+	 */
+	public ParallelIterativeDeepeningSearch(HeuristicFunction hf, ForkJoinPool pool, NodeExpander nodeExpander) {
+		this.hf = hf;
+		this.pool = pool;
+		this.nodeExpander = nodeExpander;
+	}
+
+	/**
+	 * Sets the minimal number of subtrees which are generated before the
+	 * parallel search starts. Default value is 2000.
+	 */
+	public void setSplitSize(int splitSize) {
+		this.splitSize = splitSize;
+	}
+
+	@Override
+	public List<Action> findActions(Problem p) {
+		nodeExpander.useParentLinks(true);
+		Node node = findNode(p);
+		return node == null ? SearchUtils.failure() : SearchUtils.getSequenceOfActions(node);
+	}
+
+	@Override
+	public Object findState(Problem p) {
+		nodeExpander.useParentLinks(false);
+		Node node = findNode(p);
+		return node == null ? null : node.getState();
+	}
+
+	/**
+	 * Returns a solution node, or null if no solution exists or the search
+	 * was canceled.
+	 */
+	public Node findNode(Problem p) {
+		clearInstrumentation();
+		problem = p;
+		caller = Thread.currentThread();
+		Node root = nodeExpander.createRootNode(p.getInitialState());
+		bound = f(root, 0);
+		while (bound < Double.POSITIVE_INFINITY && !CancelableThread.currIsCanceled()) {
+			metrics.incrementInt(METRIC_ITERATIONS);
+			metrics.set(METRIC_BOUND, bound);
+			solution.set(null);
+			nextBound = new DoubleAccumulator(new DoubleBinaryOperator() {
+				@Override
+				public double applyAsDouble(double left, double right) {
+					return Math.min(left, right);
+				}
+			}, Double.POSITIVE_INFINITY);
+
+			List<Node> frontier = createFrontier(root);
+			if (solution.get() == null && !frontier.isEmpty()) {
+				metrics.set(METRIC_SUBTREES, frontier.size());
+				pool.invoke(new SubtreeSearch(frontier, frontierDepth, 0, frontier.size()));
+			}
+			Node result = solution.get();
+			if (result != null) {
+				metrics.set(METRIC_NODES_EXPANDED, numExpandCalls.sum());
+				metrics.set(METRIC_PATH_COST, result.getPathCost());
+				if (result.getPathCost() > 0)
+					metrics.set(METRIC_EFFECTIVE_BRANCH_FACTOR,
+							SearchUtils.getEBF(numExpandCalls.sum(), result.getPathCost()));
+				return result;
+			}
+			bound = nextBound.get();
+		}
+		metrics.set(METRIC_NODES_EXPANDED, numExpandCalls.sum());
+		return null;
+	}
+
+	@Override
+	public NodeExpander getNodeExpander() {
+		return nodeExpander;
+	}
+
+	@Override
+	public Metrics getMetrics() {
+		return metrics;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Expands the tree breadth-first under the current bound until the
+	 * frontier contains enough subtrees. If a goal is found on the way, it is
+	 * stored as solution.
+	 */
+	private List<Node> createFrontier(Node root) {
+		List<Node> frontier = new ArrayList<Node>();
+		frontier.add(root);
+		frontierDepth = 0;
+		if (SearchUtils.isGoalState(problem, root)) {
+			solution.set(root);
+			return frontier;
+		}
+		// nodes at the depth bound are left to the subtree searches
+		while (!frontier.isEmpty() && frontier.size() < splitSize && (hf != null || frontierDepth < bound)) {
+			List<Node> next = new ArrayList<Node>();
+			for (Node node : frontier) {
+				for (Node child : expand(node, frontierDepth)) {
+					if (SearchUtils.isGoalState(problem, child)) {
+						solution.set(child);
+						return next;
+					}
+					next.add(child);
+				}
+			}
+			frontier = next;
+			frontierDepth++;
+		}
+		return frontier;
+	}
+
+	/**
+	 * Returns the successors of the node which are not on the path and whose
+	 * f-values do not exceed the bound, or null if the node itself is at the
+	 * bound (f-values of cut off nodes contribute to the next bound).
+	 */
+	private List<Node> expand(Node node, int depth) {
+		if (hf == null && depth >= bound)
+			return null;
+		numExpandCalls.increment();
+		List<Node> result = new ArrayList<Node>();
+		Object state = node.getState();
+		for (Action action : problem.getActionsFunction().actions(state)) {
+			Object succState = problem.getResultFunction().result(state, action);
+			if (isOnPath(node, succState))
+				continue;
+			double stepCost = problem.getStepCostFunction().c(state, action, succState);
+			Node child = nodeExpander.createNode(succState, node, action, stepCost);
+			double f = f(child, depth + 1);
+			if (f > bound)
+				nextBound.accumulate(f);
+			else
+				result.add(child);
+		}
+		return result;
+	}
+
+	/**
+	 * Searches the subtree below the node depth-first. Returns true if the
+	 * search can go on (no solution found, not canceled).
+	 */
+	private boolean depthFirstSearch(Node node, int depth, Set<Object> path) {
+		if (solution.get() != null || caller instanceof CancelableThread && ((CancelableThread) caller).isCanceled())
+			return false;
+		if (SearchUtils.isGoalState(problem, node)) {
+			solution.compareAndSet(null, node);
+			return false;
+		}
+		List<Node> children = expand(node, depth);
+		if (children == null) {
+			nextBound.accumulate(bound + 1);
+			return true;
+		}
+		path.add(node.getState());
+		try {
+			for (Node child : children) {
+				if (path.contains(child.getState()))
+					continue;
+				if (!depthFirstSearch(child, depth + 1, path))
+					return false;
+			}
+		} finally {
+			path.remove(node.getState());
+		}
+		return true;
+	}
+
+	/**
+	 * Checks the direct ancestors of a node (if parent links are available).
+	 * Deeper cycles are detected by the path sets of the workers.
+	 */
+	private boolean isOnPath(Node node, Object state) {
+		for (int i = 0; node != null && i < 2; i++, node = node.getParent())
+			if (node.getState().equals(state))
+				return true;
+		return false;
+	}
+
+	/** Depth for iterative deepening, g + h for IDA*. */
+	private double f(Node node, int depth) {
+		if (hf == null)
+			return depth;
+		return node.getPathCost() + hf.h(node.getState());
+	}
+
+	/**
+	 * Fork/join task for a range of frontier nodes. Ranges are split in halves
+	 * until single subtrees remain, which gives the pool enough tasks to
+	 * balance the load by work stealing.
+	 */
+	private class SubtreeSearch extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final List<Node> frontier;
+		private final int depth;
+		private final int from;
+		private final int to;
+
+		SubtreeSearch(List<Node> frontier, int depth, int from, int to) {
+			this.frontier = frontier;
+			this.depth = depth;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (solution.get() != null)
+				return;
+			if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new SubtreeSearch(frontier, depth, from, mid), new SubtreeSearch(frontier, depth, mid, to));
+			} else {
+				depthFirstSearch(frontier.get(from), depth, new HashSet<Object>());
+			}
+		}
+	}
+
+	/**
+	 * Sets all metrics to zero.
+	 */
+	private void clearInstrumentation() {
+		numExpandCalls.reset();
+		metrics.set(METRIC_NODES_EXPANDED, 0);
+		metrics.set(METRIC_PATH_COST, 0);
+		metrics.set(METRIC_EFFECTIVE_BRANCH_FACTOR, 0);
+		metrics.set(METRIC_ITERATIONS, 0);
+		metrics.set(METRIC_BOUND, 0);
+		metrics.set(METRIC_SUBTREES, 0);
+	}
+}
@@ -1,5 +1,7 @@
 package csc4500.core.util;
 
+import java.util.Collection;
+
 /**
  * Implements a thread with an additional flag indicating cancellation.
  * 
@@ -43,4 +45,29 @@ public class CancelableThread extends Thread {
 	public void cancel() {
 		isCanceled = true;
 	}
+
+	/**
+	 * Cancels all threads and waits until they have terminated. Interrupts of
+	 * the current thread do not shorten the wait; the interrupt flag is set
+	 * again afterwards.
+	 * 
+	 * @param threads
+	 *            the threads to be stopped
+	 */
+	public static void cancelAndJoin(Collection<? extends CancelableThread> threads) {
+		for (CancelableThread thread : threads)
+			thread.cancel();
+		boolean interrupted = false;
+		for (CancelableThread thread : threads) {
+			while (thread.isAlive()) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
 }
@@ -0,0 +1,111 @@
+package csc4500.core.util.datastructure;
+
+import java.util.Arrays;
+
+/**
+ * A set of primitive long values, implemented by open addressing with linear
+ * probing. In contrast to a <code>HashSet&lt;Long&gt;</code>, neither adding
+ * nor looking up values allocates objects. This makes the structure well suited
+ * for storing hash codes or packed representations of search states.
+ */
+public class LongHashSet {
+
+	private static final int MIN_CAPACITY = 16;
+	private static final double MAX_LOAD_FACTOR = 0.5;
+
+	private long[] keys;
+	// marks slots in use (0 is a legal key and cannot serve as empty marker)
+	private boolean[] used;
+	private int size;
+	private int mask;
+
+	public LongHashSet() {
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * Constructs a set which can hold the specified number of values without
+	 * being resized.
+	 */
+	public LongHashSet(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity * MAX_LOAD_FACTOR < expectedSize)
+			capacity <<= 1;
+		allocate(capacity);
+	}
+
+	/**
+	 * Adds the specified value to the set.
+	 *
+	 * @return true if the set did not already contain the value.
+	 */
+	public boolean add(long key) {
+		int i = indexFor(key);
+		while (used[i]) {
+			if (keys[i] == key)
+				return false;
+			i = (i + 1) & mask;
+		}
+		used[i] = true;
+		keys[i] = key;
+		if (++size > keys.length * MAX_LOAD_FACTOR)
+			rehash(keys.length << 1);
+		return true;
+	}
+
+	public boolean contains(long key) {
+		int i = indexFor(key);
+		while (used[i]) {
+			if (keys[i] == key)
+				return true;
+			i = (i + 1) & mask;
+		}
+		return false;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(used, false);
+		size = 0;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		used = new boolean[capacity];
+		mask = capacity - 1;
+	}
+
+	private void rehash(int newCapacity) {
+		long[] oldKeys = keys;
+		boolean[] oldUsed = used;
+		allocate(newCapacity);
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldUsed[j]) {
+				int i = indexFor(oldKeys[j]);
+				while (used[i])
+					i = (i + 1) & mask;
+				used[i] = true;
+				keys[i] = oldKeys[j];
+			}
+		}
+	}
+
+	/** Spreads the bits of the key (variant of the MurmurHash3 finalizer). */
+	private int indexFor(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int) key & mask;
+	}
+}
@@ -4,6 +4,7 @@
 import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
+import java.util.Random;
 
 import csc4500.core.agent.Action;
 import csc4500.core.environment.eightpuzzle.BidirectionalEightPuzzleProblem;
@@ -12,6 +13,14 @@ import csc4500.core.environment.eightpuzzle.EightPuzzleFunctionFactory;
 import csc4500.core.environment.eightpuzzle.EightPuzzleGoalTest;
 import csc4500.core.environment.eightpuzzle.ManhattanHeuristicFunction;
 import csc4500.core.environment.eightpuzzle.MisplacedTilleHeuristicFunction;
+import csc4500.core.search.csp.Assignment;
+import csc4500.core.search.csp.CSP;
+import csc4500.core.search.csp.CSPStateListener;
+import csc4500.core.search.csp.ImprovedBacktrackingStrategy;
+import csc4500.core.search.csp.MinConflictsStrategy;
+import csc4500.core.search.csp.PortfolioStrategy;
+import csc4500.core.search.csp.examples.NQueensCSP;
+import csc4500.core.search.framework.HeuristicNodeExpander;
 import csc4500.core.search.framework.SearchAgent;
 import csc4500.core.search.framework.SearchForActions;
 import csc4500.core.search.framework.evalfunc.HeuristicFunction;
@@ -183,6 +192,118 @@ public class CSC4500Project {
 
 	}
 
+	// Compares the pairwise model of N-Queens with the model which uses one
+	// AllDifferent constraint for the rows
+	private static void nQueensAllDifferentDemo(int size) {
+		System.out.println("\nNQueensDemo pairwise vs. AllDifferent (" + size + " queens) -->");
+		for (ImprovedBacktrackingStrategy.Inference inference : new ImprovedBacktrackingStrategy.Inference[] {
+				ImprovedBacktrackingStrategy.Inference.FORWARD_CHECKING, ImprovedBacktrackingStrategy.Inference.AC2001 }) {
+			for (boolean useAllDifferent : new boolean[] { false, true }) {
+				CSP csp = new NQueensCSP(size, useAllDifferent);
+				ImprovedBacktrackingStrategy strategy = new ImprovedBacktrackingStrategy(true, true, false, false);
+				strategy.setInference(inference);
+				final int[] assignments = new int[1];
+				strategy.addCSPStateListener(new CSPStateListener() {
+					@Override
+					public void stateChanged(Assignment assignment, CSP csp) {
+						assignments[0]++;
+					}
+
+					@Override
+					public void stateChanged(CSP csp) {
+					}
+				});
+				long start = System.currentTimeMillis();
+				Assignment solution = strategy.solve(csp);
+				long time = System.currentTimeMillis() - start;
+				System.out.println(inference + (useAllDifferent ? " AllDifferent" : " pairwise") + " : constraints="
+						+ csp.getConstraints().size() + " assignments=" + assignments[0] + " time=" + time + "ms solved="
+						+ (solution != null && solution.isSolution(csp)));
+			}
+		}
+	}
+
+	// Runs backtracking and min-conflicts with different seeds concurrently on
+	// N-Queens and reports which of them was fastest
+	private static void nQueensPortfolioDemo(int size) {
+		System.out.println("\nNQueensDemo portfolio (" + size + " queens) -->");
+		ImprovedBacktrackingStrategy mac = new ImprovedBacktrackingStrategy(true, true, false, false);
+		mac.setInference(ImprovedBacktrackingStrategy.Inference.AC2001);
+		ImprovedBacktrackingStrategy fc = new ImprovedBacktrackingStrategy(true, false, false, true);
+		fc.setInference(ImprovedBacktrackingStrategy.Inference.FORWARD_CHECKING);
+		PortfolioStrategy portfolio = new PortfolioStrategy();
+		portfolio.addStrategy("MRV+DEG+AC2001", mac);
+		portfolio.addStrategy("MRV+LCV+FC", fc);
+		for (int seed = 1; seed <= 4; seed++)
+			portfolio.addStrategy("MinConflicts-" + seed, new MinConflictsStrategy(10000, new Random(seed)));
+		CSP csp = new NQueensCSP(size);
+		Assignment solution = portfolio.solve(csp);
+		System.out.println("winner=" + portfolio.getWinner() + " " + portfolio.getMetrics() + " solved="
+				+ (solution != null && solution.isSolution(csp)));
+	}
+
+	// Compares per-call and batched evaluation of the Manhattan heuristic on
+	// random boards, and A* with and without the HeuristicNodeExpander on the
+	// given boards. Each comparison runs three times, so that the later rounds
+	// show the timings after JIT compilation.
+	private static void eightPuzzleBatchHeuristicDemo(int numOfBoards, EightPuzzleBoard... puzzleBoards) {
+		System.out.println("\nEightPuzzleDemo batched heuristic evaluation (" + numOfBoards + " random boards) -->");
+		ManhattanHeuristicFunction hf = new ManhattanHeuristicFunction();
+		Random random = new Random(1);
+		Action[] moves = { EightPuzzleBoard.LEFT, EightPuzzleBoard.RIGHT, EightPuzzleBoard.UP, EightPuzzleBoard.DOWN };
+		Object[] states = new Object[numOfBoards];
+		for (int i = 0; i < numOfBoards; i++) {
+			// random walks from the goal only reach solvable boards
+			EightPuzzleBoard board = new EightPuzzleBoard(new int[] { 0, 1, 2, 3, 4, 5, 6, 7, 8 });
+			for (int m = 0; m < 50; m++) {
+				Action move = moves[random.nextInt(moves.length)];
+				if (board.canMoveGap(move)) {
+					if (move == EightPuzzleBoard.LEFT)
+						board.moveGapLeft();
+					else if (move == EightPuzzleBoard.RIGHT)
+						board.moveGapRight();
+					else if (move == EightPuzzleBoard.UP)
+						board.moveGapUp();
+					else
+						board.moveGapDown();
+				}
+			}
+			states[i] = board;
+		}
+		double[] values = new double[numOfBoards];
+		for (int round = 1; round <= 3; round++) {
+			long start = System.nanoTime();
+			double perCallSum = 0;
+			for (int i = 0; i < numOfBoards; i++)
+				perCallSum += hf.h(states[i]);
+			long perCallTime = System.nanoTime() - start;
+			start = System.nanoTime();
+			hf.h(states, numOfBoards, values);
+			double batchSum = 0;
+			for (int i = 0; i < numOfBoards; i++)
+				batchSum += values[i];
+			long batchTime = System.nanoTime() - start;
+			System.out.println("round " + round + " : per-call=" + perCallTime / 1000000.0 + "ms batch="
+					+ batchTime / 1000000.0 + "ms same values=" + (perCallSum == batchSum));
+		}
+		for (EightPuzzleBoard puzzleBoard : puzzleBoards) {
+			for (int round = 1; round <= 3; round++) {
+				Problem problem = new Problem(puzzleBoard, EightPuzzleFunctionFactory.getActionsFunction(),
+						EightPuzzleFunctionFactory.getResultFunction(), new EightPuzzleGoalTest());
+				long start = System.nanoTime();
+				List<Action> plainActions = new AStarSearch(new GraphSearch(), hf).findActions(problem);
+				long plainTime = System.nanoTime() - start;
+				start = System.nanoTime();
+				List<Action> batchActions = new AStarSearch(new GraphSearch(new HeuristicNodeExpander(hf)), hf)
+						.findActions(problem);
+				long batchTime = System.nanoTime() - start;
+				System.out.println("AStar round " + round + " : depth=" + plainActions.size() + " plain="
+						+ plainTime / 1000000.0 + "ms batch=" + batchTime / 1000000.0 + "ms same solution="
+						+ plainActions.equals(batchActions));
+			}
+		}
+	}
+
 	private static void printInstrumentation(Properties properties) {
 		Iterator<Object> keys = properties.keySet().iterator();
 		while (keys.hasNext()) {